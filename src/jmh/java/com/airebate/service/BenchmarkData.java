@@ -0,0 +1,95 @@
+package com.airebate.service;
+
+import ch.qos.logback.classic.Level;
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.model.BillingResult;
+import com.airebate.model.Currency;
+import com.airebate.model.Customer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试数据
+ * 按固定随机种子生成历史账单，保证同一规模下每次运行的输入一致
+ */
+public final class BenchmarkData {
+
+    public static final Currency CURRENCY = Currency.USD;
+    public static final LocalDate RECOMMENDATION_DATE = LocalDate.of(2024, 6, 1);
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 关闭日志输出，基准只测量计算本身（如无法提取JSON时每次调用都会记录告警）
+     */
+    public static void quietLogging() {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+            .setLevel(Level.OFF);
+    }
+
+    public static Customer customer() {
+        Customer customer = new Customer("BENCH_001", "基准测试客户", CURRENCY);
+        customer.setId(1L);
+        customer.setRiskLevel(1.2);
+        customer.setTradingVolume(25000.0);
+        return customer;
+    }
+
+    /**
+     * 生成指定行数的历史账单，日期分布在推荐日期之前的一年内，约5%的可选字段为空
+     */
+    public static List<BillingResult> history(Customer customer, int rows) {
+        Random random = new Random(42);
+        List<BillingResult> history = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            BillingResult result = new BillingResult(customer, CURRENCY,
+                RECOMMENDATION_DATE.minusDays(1 + random.nextInt(365)),
+                decimal(1000 + random.nextDouble() * 99000, 2), 1 + random.nextInt(500));
+            result.setMarketVolatility(random.nextInt(20) == 0 ? null : decimal(random.nextDouble(), 4));
+            result.setLiquidityScore(random.nextInt(20) == 0 ? null : decimal(1 + random.nextDouble() * 9, 2));
+            result.setProfitMargin(random.nextInt(20) == 0 ? null : decimal(random.nextDouble() * 0.1, 4));
+            history.add(result);
+        }
+        return history;
+    }
+
+    /**
+     * 按默认配置创建推荐引擎，LLM关闭，推荐全部走传统算法，指标记录到内存注册表
+     */
+    public static AIRecommendationEngine engine() {
+        AIRecommendationEngine engine = new AIRecommendationEngine();
+        ReflectionTestUtils.setField(engine, "defaultSpreadRange", 0.1);
+        ReflectionTestUtils.setField(engine, "minSpread", 0.01);
+        ReflectionTestUtils.setField(engine, "maxSpread", 0.5);
+        ReflectionTestUtils.setField(engine, "learningRate", 0.01);
+        ReflectionTestUtils.setField(engine, "volatilityWeight", 0.3);
+        ReflectionTestUtils.setField(engine, "volumeWeight", 0.4);
+        ReflectionTestUtils.setField(engine, "historyWeight", 0.3);
+        ReflectionTestUtils.setField(engine, "llmEnabled", false);
+        ReflectionTestUtils.setField(engine, "fallbackEnabled", true);
+        ReflectionTestUtils.setField(engine, "metrics", new RecommendationMetrics(new SimpleMeterRegistry()));
+        return engine;
+    }
+
+    /**
+     * 由历史账单构建与线上一致的LLM推荐请求
+     */
+    public static LLMRecommendationRequest llmRequest(int rows) {
+        Customer customer = customer();
+        BillingFeatureVector features = BillingFeatureVector.extract(history(customer, rows));
+        return engine().buildLLMRequest(customer, CURRENCY, RECOMMENDATION_DATE, features);
+    }
+
+    private static BigDecimal decimal(double value, int scale) {
+        return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP);
+    }
+}
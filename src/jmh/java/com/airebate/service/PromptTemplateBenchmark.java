@@ -0,0 +1,42 @@
+package com.airebate.service;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示词模板基准：按场景选择模板生成完整提示词，以及生成精简模式的数据块
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptTemplateBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int historySize;
+
+    private final PromptTemplateService promptTemplateService = new PromptTemplateService();
+    private LLMRecommendationRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.quietLogging();
+        request = BenchmarkData.llmRequest(historySize);
+        ReflectionTestUtils.setField(promptTemplateService, "maxPromptTokens", 400);
+    }
+
+    @Benchmark
+    public String generatePromptByScenario() {
+        return promptTemplateService.generatePromptByScenario(request);
+    }
+
+    @Benchmark
+    public PromptTemplateService.CompactPrompt generateCompactPrompt() {
+        return promptTemplateService.generateCompactPrompt(request);
+    }
+}
@@ -0,0 +1,57 @@
+package com.airebate.service;
+
+import com.airebate.model.BillingResult;
+import com.airebate.model.Customer;
+import com.airebate.model.RebateSpreadRecommendation;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推荐引擎基准：特征提取、传统算法推荐，以及从历史账单到推荐的完整计算（LLM关闭）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecommendationEngineBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int historySize;
+
+    private AIRecommendationEngine engine;
+    private Customer customer;
+    private List<BillingResult> history;
+    private BillingFeatureVector features;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.quietLogging();
+        engine = BenchmarkData.engine();
+        customer = BenchmarkData.customer();
+        history = BenchmarkData.history(customer, historySize);
+        features = BillingFeatureVector.extract(history);
+    }
+
+    @Benchmark
+    public BillingFeatureVector extractFeatures() {
+        return BillingFeatureVector.extract(history);
+    }
+
+    @Benchmark
+    public RebateSpreadRecommendation generateTraditionalRecommendation() {
+        RebateSpreadRecommendation recommendation = new RebateSpreadRecommendation(
+            customer, BenchmarkData.CURRENCY, BenchmarkData.RECOMMENDATION_DATE, BigDecimal.ZERO);
+        engine.generateTraditionalRecommendation(recommendation, customer, BenchmarkData.CURRENCY, features);
+        return recommendation;
+    }
+
+    @Benchmark
+    public RebateSpreadRecommendation generateRecommendationFromHistory() {
+        return engine.generateRecommendation(customer, BenchmarkData.CURRENCY, BenchmarkData.RECOMMENDATION_DATE, history);
+    }
+}
@@ -0,0 +1,41 @@
+package com.airebate.service;
+
+import com.airebate.dto.RecommendationResponse;
+import com.airebate.model.Customer;
+import com.airebate.model.RebateSpreadRecommendation;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推荐响应转换基准：推荐实体转换为API响应
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecommendationResponseBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int historySize;
+
+    private final RebateSpreadService rebateSpreadService = new RebateSpreadService();
+    private RebateSpreadRecommendation recommendation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.quietLogging();
+        Customer customer = BenchmarkData.customer();
+        recommendation = BenchmarkData.engine().generateRecommendation(customer, BenchmarkData.CURRENCY,
+            BenchmarkData.RECOMMENDATION_DATE, BenchmarkData.history(customer, historySize));
+        recommendation.setId(1L);
+    }
+
+    @Benchmark
+    public RecommendationResponse convertToResponse() {
+        return rebateSpreadService.convertToResponse(recommendation);
+    }
+}
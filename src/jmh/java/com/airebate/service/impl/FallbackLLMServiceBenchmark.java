@@ -0,0 +1,37 @@
+package com.airebate.service.impl;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.dto.LLMRecommendationResponse;
+import com.airebate.service.BenchmarkData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回退LLM服务基准：传统算法生成LLM格式的推荐响应
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FallbackLLMServiceBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int historySize;
+
+    private final FallbackLLMService fallbackService = new FallbackLLMService();
+    private LLMRecommendationRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.quietLogging();
+        request = BenchmarkData.llmRequest(historySize);
+    }
+
+    @Benchmark
+    public LLMRecommendationResponse generateRecommendation() {
+        return fallbackService.generateRecommendation(request);
+    }
+}
@@ -0,0 +1,61 @@
+package com.airebate.service.impl;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.dto.LLMRecommendationResponse;
+import com.airebate.service.BenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LLM响应解析基准：用流式解析器从模型输出中提取JSON并绑定为推荐响应，以及含范围限制、回退处理的完整解析
+ * 输出格式分别为```json代码块、夹在说明文字中的JSON对象、无法提取JSON的纯文本
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LLMResponseParsingBenchmark {
+
+    private static final String RECOMMENDATION_JSON = """
+        {
+            "recommendedSpread": 0.125,
+            "confidenceScore": 0.82,
+            "reasoning": "客户近30天交易量稳定增长，平均利润率高于同类客户，市场波动处于中低水平，可适当收窄spread以巩固合作。",
+            "riskAssessment": "客户风险等级中等，历史违约记录为零，流动性评分良好。",
+            "marketAnalysis": "美元近期波动率回落，流动性充足，短期内预计维持区间震荡。",
+            "keyFactors": ["交易量增长", "利润率", "市场波动率", "流动性评分"]
+        }""";
+
+    @Param({"FENCED", "EMBEDDED", "PLAIN_TEXT"})
+    private String format;
+
+    private final LocalLLMService localLLMService = new LocalLLMService();
+    private LLMRecommendationRequest request;
+    private String output;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.quietLogging();
+        ReflectionTestUtils.setField(localLLMService, "model", "llama3");
+        request = BenchmarkData.llmRequest(1000);
+        output = switch (format) {
+            case "FENCED" -> "根据提供的数据，我的分析如下：\n```json\n" + RECOMMENDATION_JSON + "\n```\n以上建议仅供参考。";
+            case "EMBEDDED" -> "根据提供的数据，推荐结果为 " + RECOMMENDATION_JSON + " 以上建议仅供参考。";
+            default -> "建议将spread设置为0.125左右，置信度约0.8，主要考虑交易量增长和市场波动率。";
+        };
+    }
+
+    @Benchmark
+    public LLMRecommendationResponse extractRecommendation() {
+        return RecommendationJsonExtractor.extract(output);
+    }
+
+    @Benchmark
+    public LLMRecommendationResponse parseResponse() {
+        return localLLMService.parseResponse(output, request);
+    }
+}
@@ -4,7 +4,10 @@ import com.airebate.model.BillingResult;
 import com.airebate.model.Currency;
 import com.airebate.model.Customer;
 import com.airebate.repository.BillingResultRepository;
+import com.airebate.repository.BillingDailyRollupRepository;
 import com.airebate.repository.CustomerRepository;
+import com.airebate.service.BillingIngestionService;
+import com.airebate.service.BillingRollupService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,6 +33,15 @@ public class DataInitializer implements CommandLineRunner {
     
     @Autowired
     private BillingResultRepository billingResultRepository;
+    
+    @Autowired
+    private BillingDailyRollupRepository rollupRepository;
+    
+    @Autowired
+    private BillingRollupService billingRollupService;
+    
+    @Autowired
+    private BillingIngestionService billingIngestionService;
 
     @Override
     public void run(String... args) throws Exception {
@@ -40,18 +52,25 @@ public class DataInitializer implements CommandLineRunner {
         } else {
             logger.info("数据库中已存在数据，跳过初始化");
         }
+        
+        // 已有账单但尚未生成日汇总时（示例数据或升级前的历史数据）从原始账单回填
+        if (rollupRepository.count() == 0 && billingResultRepository.count() > 0) {
+            billingRollupService.rebuildAll();
+        }
     }
 
     private void initializeSampleData() {
         // 创建示例客户
         List<Customer> customers = createSampleCustomers();
         
-        // 为每个客户创建账单数据
+        // 为每个客户创建账单数据，统一批量写入
+        List<BillingResult> billingResults = new ArrayList<>();
         for (Customer customer : customers) {
-            createBillingDataForCustomer(customer);
+            createBillingDataForCustomer(customer, billingResults);
         }
+        billingIngestionService.ingest(billingResults);
         
-        logger.info("创建了 {} 个客户和相应的账单数据", customers.size());
+        logger.info("创建了 {} 个客户和 {} 条账单数据", customers.size(), billingResults.size());
     }
 
     private List<Customer> createSampleCustomers() {
@@ -61,36 +80,36 @@ public class DataInitializer implements CommandLineRunner {
         Customer customer1 = new Customer("US_BANK_001", "美国第一银行", Currency.USD);
         customer1.setRiskLevel(0.8);
         customer1.setTradingVolume(150000.0);
-        customers.add(customerRepository.save(customer1));
+        customers.add(customer1);
         
         // 客户2：欧洲投资银行
         Customer customer2 = new Customer("EU_INVEST_002", "欧洲投资银行", Currency.EUR);
         customer2.setRiskLevel(0.9);
         customer2.setTradingVolume(200000.0);
-        customers.add(customerRepository.save(customer2));
+        customers.add(customer2);
         
         // 客户3：日本证券公司
         Customer customer3 = new Customer("JP_SEC_003", "日本证券株式会社", Currency.JPY);
         customer3.setRiskLevel(1.2);
         customer3.setTradingVolume(80000.0);
-        customers.add(customerRepository.save(customer3));
+        customers.add(customer3);
         
         // 客户4：英国金融集团
         Customer customer4 = new Customer("UK_FIN_004", "英国金融集团", Currency.GBP);
         customer4.setRiskLevel(1.0);
         customer4.setTradingVolume(120000.0);
-        customers.add(customerRepository.save(customer4));
+        customers.add(customer4);
         
         // 客户5：中国国际银行
         Customer customer5 = new Customer("CN_INTL_005", "中国国际银行", Currency.CNY);
         customer5.setRiskLevel(1.1);
         customer5.setTradingVolume(300000.0);
-        customers.add(customerRepository.save(customer5));
+        customers.add(customer5);
         
-        return customers;
+        return customerRepository.saveAll(customers);
     }
 
-    private void createBillingDataForCustomer(Customer customer) {
+    private void createBillingDataForCustomer(Customer customer, List<BillingResult> billingResults) {
         LocalDate startDate = LocalDate.now().minusDays(60); // 创建60天的历史数据
         
         for (int day = 0; day < 60; day++) {
@@ -100,13 +119,12 @@ public class DataInitializer implements CommandLineRunner {
             int recordsPerDay = 1 + (int)(Math.random() * 3);
             
             for (int i = 0; i < recordsPerDay; i++) {
-                BillingResult billingResult = createSampleBillingResult(customer, billingDate);
-                billingResultRepository.save(billingResult);
+                billingResults.add(createSampleBillingResult(customer, billingDate));
             }
         }
         
         // 为客户创建其他货币的数据
-        createCrossCurrencyData(customer);
+        createCrossCurrencyData(customer, billingResults);
     }
 
     private BillingResult createSampleBillingResult(Customer customer, LocalDate billingDate) {
@@ -135,7 +153,7 @@ public class DataInitializer implements CommandLineRunner {
         return billingResult;
     }
 
-    private void createCrossCurrencyData(Customer customer) {
+    private void createCrossCurrencyData(Customer customer, List<BillingResult> billingResults) {
         Currency[] otherCurrencies = getOtherCurrencies(customer.getPrimaryCurrency());
         
         for (Currency currency : otherCurrencies) {
@@ -160,7 +178,7 @@ public class DataInitializer implements CommandLineRunner {
                 billingResult.setLiquidityScore(BigDecimal.valueOf(2 + Math.random() * 8));
                 billingResult.setProfitMargin(BigDecimal.valueOf(0.015 + Math.random() * 0.065));
                 
-                billingResultRepository.save(billingResult);
+                billingResults.add(billingResult);
             }
         }
     }
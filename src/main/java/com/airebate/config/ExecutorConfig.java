@@ -0,0 +1,64 @@
+package com.airebate.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+/**
+ * 线程池配置
+ * 批量推荐时用于将推荐生成任务分发到多个CPU核心并行执行。
+ * 启用虚拟线程（spring.threads.virtual.enabled，需要JDK 21）时，推荐生成和阻塞调用改为在虚拟线程上执行
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${ai.rebate.batch.parallelism:0}")
+    private int parallelism;
+
+    @Value("${ai.rebate.batch.virtual-concurrency:256}")
+    private int virtualConcurrency;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Bean(name = "recommendationExecutor")
+    public TaskExecutor recommendationExecutor() {
+        if (virtualThreads) {
+            // 每个任务一个虚拟线程，等待LLM响应时不占用平台线程；并发数上限保护下游LLM服务
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("recommendation-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(virtualConcurrency);
+            return executor;
+        }
+
+        // 未配置时使用CPU核心数
+        int poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setThreadNamePrefix("recommendation-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 异步推荐链路中执行阻塞调用（数据库读写事务）的调度器
+     * 默认使用Reactor的弹性线程池，启用虚拟线程时每个任务一个虚拟线程
+     */
+    @Bean(name = "blockingScheduler", destroyMethod = "dispose")
+    public Scheduler blockingScheduler() {
+        if (virtualThreads) {
+            return Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "blocking-virtual");
+        }
+        return Schedulers.boundedElastic();
+    }
+}
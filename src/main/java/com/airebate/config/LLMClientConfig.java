@@ -0,0 +1,75 @@
+package com.airebate.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * LLM HTTP客户端配置
+ * 所有LLM服务共享同一个连接池，并按各自配置应用连接超时和读取超时。
+ * 连接池开启指标，活跃/等待连接数以 reactor.netty.connection.provider.* 发布，name标签为 llm-pool
+ */
+@Configuration
+public class LLMClientConfig {
+
+    @Value("${ai.llm.http.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${ai.llm.http.pending-acquire-timeout:10000}")
+    private long pendingAcquireTimeout;
+
+    @Value("${ai.llm.http.max-idle-time:30000}")
+    private long maxIdleTime;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider llmConnectionProvider() {
+        return ConnectionProvider.builder("llm-pool")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeout))
+                .maxIdleTime(Duration.ofMillis(maxIdleTime))
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public LLMWebClientFactory llmWebClientFactory(ConnectionProvider llmConnectionProvider,
+                                                   WebClient.Builder webClientBuilder) {
+        return new LLMWebClientFactory(llmConnectionProvider, webClientBuilder);
+    }
+
+    /**
+     * WebClient工厂
+     * 基于共享连接池为每个LLM服务创建带超时设置的客户端
+     */
+    public static class LLMWebClientFactory {
+
+        private static final int MAX_IN_MEMORY_SIZE = 2 * 1024 * 1024;
+
+        private final ConnectionProvider connectionProvider;
+        private final WebClient.Builder webClientBuilder;
+
+        public LLMWebClientFactory(ConnectionProvider connectionProvider, WebClient.Builder webClientBuilder) {
+            this.connectionProvider = connectionProvider;
+            this.webClientBuilder = webClientBuilder;
+        }
+
+        public WebClient create(String baseUrl, int connectTimeoutMillis, int readTimeoutMillis) {
+            HttpClient httpClient = HttpClient.create(connectionProvider)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                    .responseTimeout(Duration.ofMillis(readTimeoutMillis));
+
+            return webClientBuilder.clone()
+                    .baseUrl(baseUrl)
+                    .clientConnector(new ReactorClientHttpConnector(httpClient))
+                    .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(MAX_IN_MEMORY_SIZE))
+                    .build();
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package com.airebate.config;
 
 import com.airebate.service.RebateSpreadService;
+import com.airebate.service.RecommendationPrecomputeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
+import java.time.LocalDate;
+
 /**
  * 定时任务配置
  */
@@ -20,6 +24,12 @@ public class SchedulingConfig {
     @Autowired
     private RebateSpreadService rebateSpreadService;
 
+    @Autowired
+    private RecommendationPrecomputeService precomputeService;
+
+    @Value("${ai.rebate.precompute.enabled:true}")
+    private boolean precomputeEnabled;
+
     /**
      * 每天凌晨2点清理过期推荐
      */
@@ -34,6 +44,38 @@ public class SchedulingConfig {
         }
     }
 
+    /**
+     * 业务时间前预计算当天推荐，预计算在后台线程执行
+     */
+    @Scheduled(cron = "${ai.rebate.precompute.cron:0 0 5 * * ?}")
+    public void precomputeRecommendations() {
+        if (!precomputeEnabled) {
+            return;
+        }
+        logger.info("开始执行定时推荐预计算任务");
+        try {
+            precomputeService.startPrecompute(LocalDate.now());
+        } catch (Exception e) {
+            logger.error("启动推荐预计算任务失败", e);
+        }
+    }
+
+    /**
+     * 当天预计算中断（如应用重启）时从检查点恢复
+     */
+    @Scheduled(fixedDelayString = "${ai.rebate.precompute.resume-interval:600000}",
+               initialDelayString = "${ai.rebate.precompute.resume-interval:600000}")
+    public void resumePrecompute() {
+        if (!precomputeEnabled) {
+            return;
+        }
+        try {
+            precomputeService.resumeIfUnfinished(LocalDate.now());
+        } catch (Exception e) {
+            logger.warn("恢复推荐预计算任务失败", e);
+        }
+    }
+
     /**
      * 每小时打印系统统计信息
      */
@@ -1,10 +1,15 @@
 package com.airebate.controller;
 
+import com.airebate.dto.BillingImportSummary;
 import com.airebate.model.BillingResult;
 import com.airebate.model.Currency;
 import com.airebate.model.Customer;
 import com.airebate.repository.BillingResultRepository;
 import com.airebate.repository.CustomerRepository;
+import com.airebate.service.BillingImportService;
+import com.airebate.service.BillingIngestionService;
+import com.airebate.service.BillingRollupService;
+import com.airebate.service.RecommendationCache;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -12,11 +17,14 @@ import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,6 +44,18 @@ public class DataManagementController {
     
     @Autowired
     private BillingResultRepository billingResultRepository;
+    
+    @Autowired
+    private BillingIngestionService billingIngestionService;
+    
+    @Autowired
+    private BillingRollupService billingRollupService;
+
+    @Autowired
+    private BillingImportService billingImportService;
+    
+    @Autowired
+    private RecommendationCache recommendationCache;
 
     // ====== 客户管理 ======
     
@@ -92,6 +112,7 @@ public class DataManagementController {
         customer.setTradingVolume(customerUpdate.getTradingVolume());
         
         Customer savedCustomer = customerRepository.save(customer);
+        recommendationCache.invalidateCustomers(List.of(savedCustomer.getId()));
         return ResponseEntity.ok(savedCustomer);
     }
 
@@ -101,7 +122,7 @@ public class DataManagementController {
     @PostMapping("/billing-results")
     public ResponseEntity<BillingResult> createBillingResult(@Valid @RequestBody BillingResult billingResult) {
         try {
-            BillingResult savedResult = billingResultRepository.save(billingResult);
+            BillingResult savedResult = billingIngestionService.ingest(List.of(billingResult)).get(0);
             logger.info("创建账单记录成功，ID: {}", savedResult.getId());
             return ResponseEntity.ok(savedResult);
         } catch (Exception e) {
@@ -110,12 +131,12 @@ public class DataManagementController {
         }
     }
 
-    @Operation(summary = "批量添加账单记录", description = "批量导入客户账单数据")
+    @Operation(summary = "批量添加账单记录", description = "批量导入客户账单数据，请求和响应整体加载到内存；大文件请使用流式导入接口")
     @PostMapping("/billing-results/batch")
     public ResponseEntity<List<BillingResult>> createBillingResultsBatch(
             @Valid @RequestBody List<BillingResult> billingResults) {
         try {
-            List<BillingResult> savedResults = billingResultRepository.saveAll(billingResults);
+            List<BillingResult> savedResults = billingIngestionService.ingest(billingResults);
             logger.info("批量创建账单记录成功，数量: {}", savedResults.size());
             return ResponseEntity.ok(savedResults);
         } catch (Exception e) {
@@ -124,6 +145,34 @@ public class DataManagementController {
         }
     }
 
+    @Operation(summary = "流式导入账单记录",
+               description = "从请求体逐行解析NDJSON或CSV（首行为表头）并按块写入，返回导入结果和错误行；" +
+                             "格式由format参数或Content-Type（application/x-ndjson、text/csv）决定")
+    @PostMapping("/billing-results/import")
+    public ResponseEntity<BillingImportSummary> importBillingResults(
+            InputStream body,
+            @Parameter(description = "导入格式: ndjson, csv")
+            @RequestParam(required = false) String format,
+            @Parameter(description = "导入ID，用于查询进度，不指定时自动生成")
+            @RequestParam(required = false) String importId,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType) {
+        
+        BillingImportSummary summary = billingImportService.importStream(body, resolveImportFormat(format, contentType),
+                                                                         importId);
+        if ("FAILED".equals(summary.getStatus())) {
+            return ResponseEntity.status(500).body(summary);
+        }
+        return ResponseEntity.ok(summary);
+    }
+
+    @Operation(summary = "查询账单导入进度", description = "查询进行中或最近完成的流式导入的进度和结果")
+    @GetMapping("/billing-results/import/{importId}")
+    public ResponseEntity<BillingImportSummary> getImportProgress(@PathVariable String importId) {
+        return billingImportService.getProgress(importId)
+                                   .map(ResponseEntity::ok)
+                                   .orElse(ResponseEntity.notFound().build());
+    }
+
     @Operation(summary = "查询客户账单记录", description = "获取指定客户的账单数据")
     @GetMapping("/billing-results/customer/{customerCode}")
     public ResponseEntity<List<BillingResult>> getBillingResultsByCustomer(
@@ -142,7 +191,7 @@ public class DataManagementController {
         if (currency != null) {
             results = billingResultRepository.findByCustomerAndCurrency(customer, currency);
         } else {
-            results = customer.getBillingResults();
+            results = billingResultRepository.findByCustomer(customer);
         }
         
         if (limit != null && limit > 0) {
@@ -152,6 +201,26 @@ public class DataManagementController {
         return ResponseEntity.ok(results);
     }
 
+    @Operation(summary = "重建账单日汇总", description = "从原始账单重建日汇总，用于历史数据回填；不指定客户时重建全部客户")
+    @PostMapping("/billing-rollups/rebuild")
+    public ResponseEntity<String> rebuildBillingRollups(
+            @Parameter(description = "客户代码")
+            @RequestParam(required = false) String customerCode) {
+        
+        if (customerCode == null) {
+            int rollupCount = billingRollupService.rebuildAll();
+            return ResponseEntity.ok(String.format("重建了 %d 条账单日汇总", rollupCount));
+        }
+        
+        Optional<Customer> customerOpt = customerRepository.findByCustomerCode(customerCode);
+        if (customerOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        int rollupCount = billingRollupService.rebuild(customerOpt.get());
+        return ResponseEntity.ok(String.format("为客户 %s 重建了 %d 条账单日汇总", customerCode, rollupCount));
+    }
+
     @Operation(summary = "快速创建测试客户", description = "创建预设的测试客户，用于演示")
     @PostMapping("/customers/demo")
     public ResponseEntity<Customer> createDemoCustomer(
@@ -196,12 +265,29 @@ public class DataManagementController {
 
     // ====== 辅助方法 ======
     
+    private BillingImportService.Format resolveImportFormat(String format, String contentType) {
+        if (format != null) {
+            try {
+                return BillingImportService.Format.valueOf(format.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的导入格式: " + format);
+            }
+        }
+        if (contentType != null && contentType.toLowerCase().contains("csv")) {
+            return BillingImportService.Format.CSV;
+        }
+        if (contentType != null && contentType.toLowerCase().contains("json")) {
+            return BillingImportService.Format.NDJSON;
+        }
+        throw new IllegalArgumentException("无法确定导入格式，请指定format参数或Content-Type");
+    }
+    
     private void createSampleBillingData(Customer customer, Currency currency) {
         createSampleBillingData(customer, currency, 30);
     }
     
     private int createSampleBillingData(Customer customer, Currency currency, int days) {
-        int createdCount = 0;
+        List<BillingResult> billingResults = new ArrayList<>();
         LocalDate startDate = LocalDate.now().minusDays(days);
         
         for (int i = 0; i < days; i++) {
@@ -223,11 +309,11 @@ public class DataManagementController {
                 billingResult.setLiquidityScore(BigDecimal.valueOf(1 + Math.random() * 9));
                 billingResult.setProfitMargin(BigDecimal.valueOf(0.01 + Math.random() * 0.1));
                 
-                billingResultRepository.save(billingResult);
-                createdCount++;
+                billingResults.add(billingResult);
             }
         }
         
+        int createdCount = billingIngestionService.ingest(billingResults).size();
         logger.info("为客户 {} 生成了 {} 条示例数据", customer.getCustomerCode(), createdCount);
         return createdCount;
     }
@@ -3,9 +3,11 @@ package com.airebate.controller;
 import com.airebate.dto.RecommendationRequest;
 import com.airebate.dto.RecommendationResponse;
 import com.airebate.model.Currency;
+import com.airebate.model.PrecomputeCheckpoint;
 import com.airebate.model.RebateSpreadRecommendation;
 import com.airebate.service.LLMServiceManager;
 import com.airebate.service.RebateSpreadService;
+import com.airebate.service.RecommendationPrecomputeService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -16,6 +18,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -40,27 +43,43 @@ public class RebateRecommendationController {
     @Autowired
     private LLMServiceManager llmServiceManager;
 
+    @Autowired
+    private RecommendationPrecomputeService precomputeService;
+
     @Operation(summary = "获取智能推荐", description = "根据客户代码、货币类型和查询日期获取AI生成的rebate spread推荐")
     @PostMapping("/recommend")
-    public ResponseEntity<RecommendationResponse> getRecommendation(
+    public Mono<ResponseEntity<RecommendationResponse>> getRecommendation(
             @Valid @RequestBody RecommendationRequest request) {
         
         logger.info("收到推荐请求: {}", request.getCustomerCode());
         
-        RecommendationResponse response = rebateSpreadService.getRecommendation(request);
+        // 异步处理，等待LLM响应期间释放Servlet线程
+        return rebateSpreadService.getRecommendationAsync(request)
+            .map(response -> {
+                if ("ERROR".equals(response.getStatus())) {
+                    return ResponseEntity.badRequest().body(response);
+                } else if ("WARNING".equals(response.getStatus())) {
+                    return ResponseEntity.ok().body(response);
+                }
+                
+                return ResponseEntity.ok(response);
+            });
+    }
+
+    @Operation(summary = "批量获取推荐", description = "一次调用为多个客户/货币组合生成推荐，按请求顺序返回每项的推荐结果和状态")
+    @PostMapping("/batch")
+    public ResponseEntity<List<RecommendationResponse>> getRecommendations(
+            @RequestBody List<RecommendationRequest> requests) {
         
-        if ("ERROR".equals(response.getStatus())) {
-            return ResponseEntity.badRequest().body(response);
-        } else if ("WARNING".equals(response.getStatus())) {
-            return ResponseEntity.ok().body(response);
-        }
+        logger.info("收到批量推荐请求，数量: {}", requests.size());
         
-        return ResponseEntity.ok(response);
+        List<RecommendationResponse> responses = rebateSpreadService.getRecommendations(requests);
+        return ResponseEntity.ok(responses);
     }
 
     @Operation(summary = "获取推荐（GET方式）", description = "通过GET参数获取推荐，便于简单调用")
     @GetMapping("/recommend")
-    public ResponseEntity<RecommendationResponse> getRecommendationByParams(
+    public Mono<ResponseEntity<RecommendationResponse>> getRecommendationByParams(
             @Parameter(description = "客户代码", required = true)
             @RequestParam String customerCode,
             
@@ -71,10 +90,14 @@ public class RebateRecommendationController {
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate queryDate,
             
             @Parameter(description = "历史数据天数范围，默认30天")
-            @RequestParam(defaultValue = "30") Integer daysRange) {
+            @RequestParam(defaultValue = "30") Integer daysRange,
+            
+            @Parameter(description = "延迟预算（毫秒），LLM来不及在预算内完成时改用传统算法")
+            @RequestParam(required = false) Long timeoutMillis) {
         
         RecommendationRequest request = new RecommendationRequest(customerCode, currency, queryDate);
         request.setDaysRange(daysRange);
+        request.setTimeoutMillis(timeoutMillis);
         
         return getRecommendation(request);
     }
@@ -127,6 +150,27 @@ public class RebateRecommendationController {
         }
     }
 
+    @Operation(summary = "推荐预计算", description = "在后台为近期有账单的客户/货币组合预先生成指定日期的推荐，未完成的预计算从检查点继续")
+    @PostMapping("/precompute")
+    public ResponseEntity<String> startPrecompute(
+            @Parameter(description = "推荐日期，默认当天")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        LocalDate runDate = date != null ? date : LocalDate.now();
+        if (!precomputeService.startPrecompute(runDate)) {
+            return ResponseEntity.status(409).body("推荐预计算正在执行");
+        }
+        return ResponseEntity.accepted().body("推荐预计算已启动: " + runDate);
+    }
+
+    @Operation(summary = "推荐预计算进度", description = "查询指定日期推荐预计算的检查点")
+    @GetMapping("/precompute/{date}")
+    public ResponseEntity<PrecomputeCheckpoint> getPrecomputeProgress(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return precomputeService.getCheckpoint(date)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
     @Operation(summary = "LLM服务状态", description = "检查LLM服务的可用性和状态")
     @GetMapping("/llm/status")
     public ResponseEntity<?> getLLMStatus() {
@@ -138,6 +182,8 @@ public class RebateRecommendationController {
             status.put("llmEnabled", hasAvailableService);
             status.put("availableServices", serviceStatuses.size());
             status.put("services", serviceStatuses);
+            status.put("routingMode", llmServiceManager.getRoutingMode());
+            status.put("cache", llmServiceManager.getCacheStats());
             status.put("timestamp", LocalDateTime.now());
             
             return ResponseEntity.ok(status);
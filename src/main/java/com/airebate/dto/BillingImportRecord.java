@@ -0,0 +1,102 @@
+package com.airebate.dto;
+
+import com.airebate.model.Currency;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 账单导入记录DTO
+ * 流式导入时NDJSON的一行或CSV的一行，客户以客户代码引用
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BillingImportRecord {
+
+    @NotBlank(message = "客户代码不能为空")
+    private String customerCode;
+
+    @NotNull(message = "货币类型不能为空")
+    private Currency currency;
+
+    private LocalDate billingDate;
+
+    @NotNull(message = "交易金额不能为空")
+    private BigDecimal transactionAmount;
+
+    @NotNull(message = "交易量不能为空")
+    private Integer transactionVolume;
+
+    private BigDecimal marketVolatility;
+    private BigDecimal liquidityScore;
+    private BigDecimal profitMargin;
+
+    // 构造函数
+    public BillingImportRecord() {}
+
+    // Getters and Setters
+    public String getCustomerCode() {
+        return customerCode;
+    }
+
+    public void setCustomerCode(String customerCode) {
+        this.customerCode = customerCode;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(Currency currency) {
+        this.currency = currency;
+    }
+
+    public LocalDate getBillingDate() {
+        return billingDate;
+    }
+
+    public void setBillingDate(LocalDate billingDate) {
+        this.billingDate = billingDate;
+    }
+
+    public BigDecimal getTransactionAmount() {
+        return transactionAmount;
+    }
+
+    public void setTransactionAmount(BigDecimal transactionAmount) {
+        this.transactionAmount = transactionAmount;
+    }
+
+    public Integer getTransactionVolume() {
+        return transactionVolume;
+    }
+
+    public void setTransactionVolume(Integer transactionVolume) {
+        this.transactionVolume = transactionVolume;
+    }
+
+    public BigDecimal getMarketVolatility() {
+        return marketVolatility;
+    }
+
+    public void setMarketVolatility(BigDecimal marketVolatility) {
+        this.marketVolatility = marketVolatility;
+    }
+
+    public BigDecimal getLiquidityScore() {
+        return liquidityScore;
+    }
+
+    public void setLiquidityScore(BigDecimal liquidityScore) {
+        this.liquidityScore = liquidityScore;
+    }
+
+    public BigDecimal getProfitMargin() {
+        return profitMargin;
+    }
+
+    public void setProfitMargin(BigDecimal profitMargin) {
+        this.profitMargin = profitMargin;
+    }
+}
@@ -0,0 +1,123 @@
+package com.airebate.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 账单流式导入进度与结果DTO
+ * 导入过程中由导入线程更新，可同时通过进度查询接口读取
+ */
+public class BillingImportSummary {
+
+    private final String importId;
+    private final String format;
+
+    private volatile String status; // RUNNING, COMPLETED, FAILED
+    private volatile String message;
+
+    private volatile long linesRead;
+    private volatile long importedCount;
+    private volatile long failedCount;
+
+    // 只保留前若干条错误明细，避免错误行过多时占用内存
+    private final List<ImportError> errors = new CopyOnWriteArrayList<>();
+    private volatile boolean errorsTruncated;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private final LocalDateTime startedAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private volatile LocalDateTime finishedAt;
+
+    /**
+     * 错误行
+     */
+    public record ImportError(long line, String message) {}
+
+    public BillingImportSummary(String importId, String format) {
+        this.importId = importId;
+        this.format = format;
+        this.status = "RUNNING";
+        this.startedAt = LocalDateTime.now();
+    }
+
+    /**
+     * 记录一条错误，超过上限时只计数
+     */
+    public void addError(long line, String message, int maxErrors) {
+        if (errors.size() < maxErrors) {
+            errors.add(new ImportError(line, message));
+        } else {
+            errorsTruncated = true;
+        }
+    }
+
+    public void complete(String status, String message) {
+        this.status = status;
+        this.message = message;
+        this.finishedAt = LocalDateTime.now();
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    // Getters and Setters
+    public String getImportId() {
+        return importId;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public void setLinesRead(long linesRead) {
+        this.linesRead = linesRead;
+    }
+
+    public long getImportedCount() {
+        return importedCount;
+    }
+
+    public void setImportedCount(long importedCount) {
+        this.importedCount = importedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public void setFailedCount(long failedCount) {
+        this.failedCount = failedCount;
+    }
+
+    public List<ImportError> getErrors() {
+        return List.copyOf(errors);
+    }
+
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+}
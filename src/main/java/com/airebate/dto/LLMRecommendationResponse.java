@@ -1,7 +1,12 @@
 package com.airebate.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import reactor.core.publisher.Mono;
+
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,6 +26,10 @@ public class LLMRecommendationResponse {
     private String modelUsed;
     private boolean success;
     private String errorMessage;
+    // 模型输出无法解析，推荐值为服务给出的默认值
+    private boolean parseFallback;
+    // 流式调用在数值字段出现后提前返回时，输出结束后发出完整解析的响应（含推荐理由等文字字段）
+    private Mono<LLMRecommendationResponse> completion;
     
     // 可选的替代推荐
     private List<AlternativeRecommendation> alternatives;
@@ -46,6 +55,27 @@ public class LLMRecommendationResponse {
         return response;
     }
 
+    /**
+     * 复制响应，不包含completion；缓存返回给其他请求时使用，避免共享可变状态
+     */
+    public LLMRecommendationResponse copy() {
+        LLMRecommendationResponse copy = new LLMRecommendationResponse();
+        copy.setRecommendedSpread(recommendedSpread);
+        copy.setConfidenceScore(confidenceScore);
+        copy.setReasoning(reasoning);
+        copy.setRiskAssessment(riskAssessment);
+        copy.setMarketAnalysis(marketAnalysis);
+        copy.setKeyFactors(keyFactors != null ? new ArrayList<>(keyFactors) : null);
+        copy.setAdditionalInsights(additionalInsights != null ? new LinkedHashMap<>(additionalInsights) : null);
+        copy.setGeneratedAt(generatedAt);
+        copy.setModelUsed(modelUsed);
+        copy.setSuccess(success);
+        copy.setErrorMessage(errorMessage);
+        copy.setParseFallback(parseFallback);
+        copy.setAlternatives(alternatives != null ? new ArrayList<>(alternatives) : null);
+        return copy;
+    }
+
     // 内部类：替代推荐
     public static class AlternativeRecommendation {
         private BigDecimal spread;
@@ -175,6 +205,23 @@ public class LLMRecommendationResponse {
         this.errorMessage = errorMessage;
     }
 
+    public boolean isParseFallback() {
+        return parseFallback;
+    }
+
+    public void setParseFallback(boolean parseFallback) {
+        this.parseFallback = parseFallback;
+    }
+
+    @JsonIgnore
+    public Mono<LLMRecommendationResponse> getCompletion() {
+        return completion;
+    }
+
+    public void setCompletion(Mono<LLMRecommendationResponse> completion) {
+        this.completion = completion;
+    }
+
     public List<AlternativeRecommendation> getAlternatives() {
         return alternatives;
     }
@@ -3,6 +3,7 @@ package com.airebate.dto;
 import com.airebate.model.Currency;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import java.time.LocalDate;
 
 /**
@@ -21,6 +22,10 @@ public class RecommendationRequest {
     
     private Integer daysRange = 30; // 历史数据天数范围，默认30天
 
+    // 可选的延迟预算（毫秒），仅单个推荐接口使用：LLM来不及在预算内完成时改用传统算法
+    @Positive(message = "延迟预算必须大于0")
+    private Long timeoutMillis;
+
     // 构造函数
     public RecommendationRequest() {}
 
@@ -62,4 +67,12 @@ public class RecommendationRequest {
     public void setDaysRange(Integer daysRange) {
         this.daysRange = daysRange;
     }
+
+    public Long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(Long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
 }
@@ -0,0 +1,246 @@
+package com.airebate.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 账单日汇总实体类
+ * 按客户、货币和账单日期预聚合账单数据，写入账单时增量更新，
+ * 推荐引擎据此计算历史特征，无需加载全部原始账单
+ */
+@Entity
+@Table(name = "billing_daily_rollups",
+       uniqueConstraints = @UniqueConstraint(name = "uk_rollup_customer_currency_date",
+                                             columnNames = {"customer_id", "currency", "billing_date"}),
+       // 预计算任务按日期查找近期有账单的客户/货币组合
+       indexes = @Index(name = "idx_rollup_billing_date", columnList = "billing_date"))
+public class BillingDailyRollup {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "rollup_seq")
+    @SequenceGenerator(name = "rollup_seq", sequenceName = "billing_daily_rollups_seq", allocationSize = 50)
+    private Long id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "customer_id", nullable = false)
+    private Customer customer;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "currency", nullable = false)
+    private Currency currency;
+    
+    @Column(name = "billing_date", nullable = false)
+    private LocalDate billingDate;
+    
+    // 当日账单记录数
+    @Column(name = "row_count", nullable = false)
+    private long rowCount;
+    
+    // 交易金额
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name = "count", column = @Column(name = "amount_count", nullable = false)),
+        @AttributeOverride(name = "sum", column = @Column(name = "amount_sum", nullable = false)),
+        @AttributeOverride(name = "sumOfSquares", column = @Column(name = "amount_sum_sq", nullable = false)),
+        @AttributeOverride(name = "min", column = @Column(name = "amount_min")),
+        @AttributeOverride(name = "max", column = @Column(name = "amount_max"))
+    })
+    private BillingFieldAggregate transactionAmount = new BillingFieldAggregate();
+    
+    // 交易量
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name = "count", column = @Column(name = "volume_count", nullable = false)),
+        @AttributeOverride(name = "sum", column = @Column(name = "volume_sum", nullable = false)),
+        @AttributeOverride(name = "sumOfSquares", column = @Column(name = "volume_sum_sq", nullable = false)),
+        @AttributeOverride(name = "min", column = @Column(name = "volume_min")),
+        @AttributeOverride(name = "max", column = @Column(name = "volume_max"))
+    })
+    private BillingFieldAggregate transactionVolume = new BillingFieldAggregate();
+    
+    // 市场波动率
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name = "count", column = @Column(name = "volatility_count", nullable = false)),
+        @AttributeOverride(name = "sum", column = @Column(name = "volatility_sum", nullable = false)),
+        @AttributeOverride(name = "sumOfSquares", column = @Column(name = "volatility_sum_sq", nullable = false)),
+        @AttributeOverride(name = "min", column = @Column(name = "volatility_min")),
+        @AttributeOverride(name = "max", column = @Column(name = "volatility_max"))
+    })
+    private BillingFieldAggregate marketVolatility = new BillingFieldAggregate();
+    
+    // 流动性评分
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name = "count", column = @Column(name = "liquidity_count", nullable = false)),
+        @AttributeOverride(name = "sum", column = @Column(name = "liquidity_sum", nullable = false)),
+        @AttributeOverride(name = "sumOfSquares", column = @Column(name = "liquidity_sum_sq", nullable = false)),
+        @AttributeOverride(name = "min", column = @Column(name = "liquidity_min")),
+        @AttributeOverride(name = "max", column = @Column(name = "liquidity_max"))
+    })
+    private BillingFieldAggregate liquidityScore = new BillingFieldAggregate();
+    
+    // 利润率
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name = "count", column = @Column(name = "margin_count", nullable = false)),
+        @AttributeOverride(name = "sum", column = @Column(name = "margin_sum", nullable = false)),
+        @AttributeOverride(name = "sumOfSquares", column = @Column(name = "margin_sum_sq", nullable = false)),
+        @AttributeOverride(name = "min", column = @Column(name = "margin_min")),
+        @AttributeOverride(name = "max", column = @Column(name = "margin_max"))
+    })
+    private BillingFieldAggregate profitMargin = new BillingFieldAggregate();
+    
+    // 市场波动率，缺失时以交易金额代替
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name = "count", column = @Column(name = "volatility_or_amount_count", nullable = false)),
+        @AttributeOverride(name = "sum", column = @Column(name = "volatility_or_amount_sum", nullable = false)),
+        @AttributeOverride(name = "sumOfSquares", column = @Column(name = "volatility_or_amount_sum_sq", nullable = false)),
+        @AttributeOverride(name = "min", column = @Column(name = "volatility_or_amount_min")),
+        @AttributeOverride(name = "max", column = @Column(name = "volatility_or_amount_max"))
+    })
+    private BillingFieldAggregate volatilityOrAmount = new BillingFieldAggregate();
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // 构造函数
+    public BillingDailyRollup() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public BillingDailyRollup(Customer customer, Currency currency, LocalDate billingDate) {
+        this();
+        this.customer = customer;
+        this.currency = currency;
+        this.billingDate = billingDate;
+    }
+
+    /**
+     * 累加一条账单记录
+     */
+    public void add(BillingResult billingResult) {
+        rowCount++;
+        transactionAmount.add(billingResult.getTransactionAmount());
+        transactionVolume.add(billingResult.getTransactionVolume());
+        marketVolatility.add(billingResult.getMarketVolatility());
+        liquidityScore.add(billingResult.getLiquidityScore());
+        profitMargin.add(billingResult.getProfitMargin());
+        volatilityOrAmount.add(billingResult.getMarketVolatility() != null ? 
+                               billingResult.getMarketVolatility() : billingResult.getTransactionAmount());
+        updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * 合并同一客户、货币和日期的另一组汇总
+     */
+    public void merge(BillingDailyRollup other) {
+        rowCount += other.rowCount;
+        transactionAmount.merge(other.transactionAmount);
+        transactionVolume.merge(other.transactionVolume);
+        marketVolatility.merge(other.marketVolatility);
+        liquidityScore.merge(other.liquidityScore);
+        profitMargin.merge(other.profitMargin);
+        volatilityOrAmount.merge(other.volatilityOrAmount);
+        updatedAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(Customer customer) {
+        this.customer = customer;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(Currency currency) {
+        this.currency = currency;
+    }
+
+    public LocalDate getBillingDate() {
+        return billingDate;
+    }
+
+    public void setBillingDate(LocalDate billingDate) {
+        this.billingDate = billingDate;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public BillingFieldAggregate getTransactionAmount() {
+        return transactionAmount;
+    }
+
+    public void setTransactionAmount(BillingFieldAggregate transactionAmount) {
+        this.transactionAmount = transactionAmount;
+    }
+
+    public BillingFieldAggregate getTransactionVolume() {
+        return transactionVolume;
+    }
+
+    public void setTransactionVolume(BillingFieldAggregate transactionVolume) {
+        this.transactionVolume = transactionVolume;
+    }
+
+    public BillingFieldAggregate getMarketVolatility() {
+        return marketVolatility;
+    }
+
+    public void setMarketVolatility(BillingFieldAggregate marketVolatility) {
+        this.marketVolatility = marketVolatility;
+    }
+
+    public BillingFieldAggregate getLiquidityScore() {
+        return liquidityScore;
+    }
+
+    public void setLiquidityScore(BillingFieldAggregate liquidityScore) {
+        this.liquidityScore = liquidityScore;
+    }
+
+    public BillingFieldAggregate getProfitMargin() {
+        return profitMargin;
+    }
+
+    public void setProfitMargin(BillingFieldAggregate profitMargin) {
+        this.profitMargin = profitMargin;
+    }
+
+    public BillingFieldAggregate getVolatilityOrAmount() {
+        return volatilityOrAmount;
+    }
+
+    public void setVolatilityOrAmount(BillingFieldAggregate volatilityOrAmount) {
+        this.volatilityOrAmount = volatilityOrAmount;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
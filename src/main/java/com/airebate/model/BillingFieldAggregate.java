@@ -0,0 +1,100 @@
+package com.airebate.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+/**
+ * 单个账单字段的聚合统计
+ * 记录非空值的数量、和、平方和以及最小/最大值，可增量累加
+ */
+@Embeddable
+public class BillingFieldAggregate {
+
+    @Column(name = "value_count", nullable = false)
+    private long count;
+
+    @Column(name = "value_sum", nullable = false)
+    private double sum;
+
+    @Column(name = "value_sum_sq", nullable = false)
+    private double sumOfSquares;
+
+    @Column(name = "value_min")
+    private Double min;
+
+    @Column(name = "value_max")
+    private Double max;
+
+    public BillingFieldAggregate() {
+    }
+
+    /**
+     * 累加一个值，空值不计入
+     */
+    public void add(Number value) {
+        if (value == null) {
+            return;
+        }
+        double v = value.doubleValue();
+        count++;
+        sum += v;
+        sumOfSquares += v * v;
+        min = min == null ? v : Math.min(min, v);
+        max = max == null ? v : Math.max(max, v);
+    }
+
+    /**
+     * 合并另一组统计
+     */
+    public void merge(BillingFieldAggregate other) {
+        if (other == null || other.count == 0) {
+            return;
+        }
+        count += other.count;
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+        min = min == null ? other.min : Math.min(min, other.min);
+        max = max == null ? other.max : Math.max(max, other.max);
+    }
+
+    // Getters and Setters
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public void setSum(double sum) {
+        this.sum = sum;
+    }
+
+    public double getSumOfSquares() {
+        return sumOfSquares;
+    }
+
+    public void setSumOfSquares(double sumOfSquares) {
+        this.sumOfSquares = sumOfSquares;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public void setMin(Double min) {
+        this.min = min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public void setMax(Double max) {
+        this.max = max;
+    }
+}
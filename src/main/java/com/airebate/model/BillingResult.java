@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -12,11 +13,18 @@ import java.time.LocalDateTime;
  * 记录客户的动态账单数据
  */
 @Entity
-@Table(name = "billing_results")
+@Table(name = "billing_results", indexes = {
+    // 按客户、货币和日期范围查询历史账单
+    @Index(name = "idx_billing_customer_currency_date", columnList = "customer_id, currency, billing_date"),
+    // 按客户和日期范围查询（不限货币）
+    @Index(name = "idx_billing_customer_date", columnList = "customer_id, billing_date")
+})
 public class BillingResult {
     
+    // 使用序列生成主键以支持JDBC批量插入，导入量大，每次预分配较多主键
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "billing_result_seq")
+    @SequenceGenerator(name = "billing_result_seq", sequenceName = "billing_results_seq", allocationSize = 1000)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -146,4 +154,19 @@ public class BillingResult {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
+
+    /**
+     * 按列定义的小数位数规整数值，使增量维护的日汇总与数据库中保存的值一致
+     */
+    @PrePersist
+    public void prePersist() {
+        this.transactionAmount = scale(transactionAmount, 4);
+        this.marketVolatility = scale(marketVolatility, 6);
+        this.liquidityScore = scale(liquidityScore, 2);
+        this.profitMargin = scale(profitMargin, 4);
+    }
+
+    private static BigDecimal scale(BigDecimal value, int scale) {
+        return value == null ? null : value.setScale(scale, RoundingMode.HALF_UP);
+    }
 }
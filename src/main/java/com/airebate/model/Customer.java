@@ -13,8 +13,10 @@ import java.util.List;
 @Table(name = "customers")
 public class Customer {
     
+    // 使用序列生成主键，IDENTITY策略会使Hibernate无法进行JDBC批量插入
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_seq")
+    @SequenceGenerator(name = "customer_seq", sequenceName = "customers_seq", allocationSize = 50)
     private Long id;
     
     @NotBlank(message = "客户代码不能为空")
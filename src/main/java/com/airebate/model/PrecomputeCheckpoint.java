@@ -0,0 +1,173 @@
+package com.airebate.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 推荐预计算检查点实体类
+ * 每个推荐日期一条记录，客户/货币组合按固定顺序处理，每处理完一批记录最后一个组合，
+ * 任务中断后从该组合之后继续
+ */
+@Entity
+@Table(name = "precompute_checkpoints")
+public class PrecomputeCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "run_date", unique = true, nullable = false)
+    private LocalDate runDate;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status; // RUNNING, COMPLETED, FAILED
+
+    @Column(name = "total_pairs")
+    private int totalPairs;
+
+    @Column(name = "processed_pairs")
+    private int processedPairs;
+
+    @Column(name = "failed_pairs")
+    private int failedPairs;
+
+    // 最后一个已处理的客户/货币组合
+    @Column(name = "last_customer_code", length = 50)
+    private String lastCustomerCode;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "last_currency")
+    private Currency lastCurrency;
+
+    @Column(name = "message", length = 500)
+    private String message;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    // 构造函数
+    public PrecomputeCheckpoint() {
+    }
+
+    public PrecomputeCheckpoint(LocalDate runDate) {
+        this.runDate = runDate;
+        this.status = "RUNNING";
+        this.startedAt = LocalDateTime.now();
+        this.updatedAt = this.startedAt;
+    }
+
+    /**
+     * 判断客户/货币组合是否已在之前的批次中处理
+     */
+    public boolean isProcessed(String customerCode, Currency currency) {
+        if (lastCustomerCode == null) {
+            return false;
+        }
+        int compare = customerCode.compareTo(lastCustomerCode);
+        return compare < 0 || (compare == 0 && currency.name().compareTo(lastCurrency.name()) <= 0);
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDate getRunDate() {
+        return runDate;
+    }
+
+    public void setRunDate(LocalDate runDate) {
+        this.runDate = runDate;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getTotalPairs() {
+        return totalPairs;
+    }
+
+    public void setTotalPairs(int totalPairs) {
+        this.totalPairs = totalPairs;
+    }
+
+    public int getProcessedPairs() {
+        return processedPairs;
+    }
+
+    public void setProcessedPairs(int processedPairs) {
+        this.processedPairs = processedPairs;
+    }
+
+    public int getFailedPairs() {
+        return failedPairs;
+    }
+
+    public void setFailedPairs(int failedPairs) {
+        this.failedPairs = failedPairs;
+    }
+
+    public String getLastCustomerCode() {
+        return lastCustomerCode;
+    }
+
+    public void setLastCustomerCode(String lastCustomerCode) {
+        this.lastCustomerCode = lastCustomerCode;
+    }
+
+    public Currency getLastCurrency() {
+        return lastCurrency;
+    }
+
+    public void setLastCurrency(Currency lastCurrency) {
+        this.lastCurrency = lastCurrency;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
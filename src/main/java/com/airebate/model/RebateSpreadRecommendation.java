@@ -4,17 +4,30 @@ import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Rebate Spread推荐结果实体类
  * 存储AI生成的推荐数据
  */
 @Entity
-@Table(name = "rebate_spread_recommendations")
+@Table(name = "rebate_spread_recommendations", uniqueConstraints = {
+    // 每个客户/货币/日期只保留一条推荐，重新生成时替换原记录；同时用于查找有效推荐
+    @UniqueConstraint(name = "uk_recommendation_customer_currency_date",
+                      columnNames = {"customer_id", "currency", "recommendation_date"})
+}, indexes = {
+    // 批量查找和按日期范围查询（不限货币）
+    @Index(name = "idx_recommendation_customer_date", columnList = "customer_id, recommendation_date"),
+    // 清理过期推荐
+    @Index(name = "idx_recommendation_valid_until", columnList = "valid_until")
+})
 public class RebateSpreadRecommendation {
     
+    // 使用序列生成主键，IDENTITY策略会使Hibernate无法进行JDBC批量插入
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "recommendation_seq")
+    @SequenceGenerator(name = "recommendation_seq", sequenceName = "rebate_spread_recommendations_seq",
+                       allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -54,6 +67,10 @@ public class RebateSpreadRecommendation {
     
     @Column(name = "created_at")
     private LocalDateTime createdAt;
+    
+    // 流式LLM提前返回时尚未生成的推荐理由，保存后异步补充，不持久化
+    @Transient
+    private CompletableFuture<String> pendingReason;
 
     // 构造函数
     public RebateSpreadRecommendation() {
@@ -167,6 +184,14 @@ public class RebateSpreadRecommendation {
         this.validUntil = validUntil;
     }
 
+    public CompletableFuture<String> getPendingReason() {
+        return pendingReason;
+    }
+
+    public void setPendingReason(CompletableFuture<String> pendingReason) {
+        this.pendingReason = pendingReason;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -174,4 +199,19 @@ public class RebateSpreadRecommendation {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
+
+    /**
+     * 用新生成的推荐替换本记录的推荐结果，客户/货币/日期保持不变
+     */
+    public void replaceWith(RebateSpreadRecommendation other) {
+        this.recommendedSpread = other.recommendedSpread;
+        this.confidenceScore = other.confidenceScore;
+        this.riskAdjustment = other.riskAdjustment;
+        this.volatilityFactor = other.volatilityFactor;
+        this.volumeFactor = other.volumeFactor;
+        this.historicalPerformance = other.historicalPerformance;
+        this.recommendationReason = other.recommendationReason;
+        this.validUntil = other.validUntil;
+        this.createdAt = other.createdAt;
+    }
 }
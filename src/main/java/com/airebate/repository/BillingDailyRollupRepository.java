@@ -0,0 +1,73 @@
+package com.airebate.repository;
+
+import com.airebate.model.BillingDailyRollup;
+import com.airebate.model.Currency;
+import com.airebate.model.Customer;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 账单日汇总数据访问层
+ */
+@Repository
+public interface BillingDailyRollupRepository extends JpaRepository<BillingDailyRollup, Long> {
+    
+    /**
+     * 根据客户、货币和日期范围查找日汇总
+     */
+    @Query("SELECT r FROM BillingDailyRollup r WHERE r.customer = :customer " +
+           "AND r.currency = :currency " +
+           "AND r.billingDate BETWEEN :startDate AND :endDate")
+    List<BillingDailyRollup> findByCustomerAndCurrencyAndDateRange(
+        @Param("customer") Customer customer,
+        @Param("currency") Currency currency,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+    
+    /**
+     * 根据客户集合和日期范围批量查找日汇总
+     */
+    @Query("SELECT r FROM BillingDailyRollup r WHERE r.customer IN :customers " +
+           "AND r.billingDate BETWEEN :startDate AND :endDate")
+    List<BillingDailyRollup> findByCustomersAndDateRange(
+        @Param("customers") Collection<Customer> customers,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+    
+    /**
+     * 查找指定日期之后有账单的客户代码和货币组合，每项为 [customerCode, currency]
+     */
+    @Query("SELECT DISTINCT r.customer.customerCode, r.currency FROM BillingDailyRollup r " +
+           "WHERE r.billingDate >= :since")
+    List<Object[]> findActivePairs(@Param("since") LocalDate since);
+    
+    /**
+     * 加锁查找待增量更新的日汇总
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM BillingDailyRollup r WHERE r.customer.id IN :customerIds " +
+           "AND r.billingDate BETWEEN :startDate AND :endDate")
+    List<BillingDailyRollup> findForUpdate(
+        @Param("customerIds") Collection<Long> customerIds,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+    
+    /**
+     * 删除客户的全部日汇总
+     */
+    @Modifying
+    @Query("DELETE FROM BillingDailyRollup r WHERE r.customer = :customer")
+    int deleteByCustomer(@Param("customer") Customer customer);
+}
@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -17,6 +18,11 @@ import java.util.List;
 @Repository
 public interface BillingResultRepository extends JpaRepository<BillingResult, Long> {
     
+    /**
+     * 查找客户的全部账单结果
+     */
+    List<BillingResult> findByCustomer(Customer customer);
+    
     /**
      * 根据客户和货币查找账单结果
      */
@@ -48,6 +54,18 @@ public interface BillingResultRepository extends JpaRepository<BillingResult, Lo
         @Param("endDate") LocalDate endDate
     );
     
+    /**
+     * 根据客户集合和日期范围批量查找账单结果
+     */
+    @Query("SELECT br FROM BillingResult br WHERE br.customer IN :customers " +
+           "AND br.billingDate BETWEEN :startDate AND :endDate " +
+           "ORDER BY br.billingDate DESC")
+    List<BillingResult> findByCustomersAndDateRange(
+        @Param("customers") Collection<Customer> customers,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+    
     /**
      * 获取指定客户和货币的最新账单结果
      */
@@ -1,11 +1,15 @@
 package com.airebate.repository;
 
 import com.airebate.model.Customer;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -24,9 +28,21 @@ public interface CustomerRepository extends JpaRepository<Customer, Long> {
      */
     boolean existsByCustomerCode(String customerCode);
     
+    /**
+     * 根据客户代码集合批量查找客户
+     */
+    List<Customer> findByCustomerCodeIn(Collection<String> customerCodes);
+    
     /**
      * 根据客户代码查找客户及其账单结果
      */
     @Query("SELECT c FROM Customer c LEFT JOIN FETCH c.billingResults WHERE c.customerCode = :customerCode")
     Optional<Customer> findByCustomerCodeWithBillingResults(@Param("customerCode") String customerCode);
+    
+    /**
+     * 按ID顺序加锁客户，串行化同一客户日汇总的首次写入
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Customer c WHERE c.id IN :customerIds ORDER BY c.id")
+    List<Customer> findForUpdate(@Param("customerIds") Collection<Long> customerIds);
 }
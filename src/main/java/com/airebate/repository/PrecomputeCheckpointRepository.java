@@ -0,0 +1,20 @@
+package com.airebate.repository;
+
+import com.airebate.model.PrecomputeCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+/**
+ * 推荐预计算检查点数据访问层
+ */
+@Repository
+public interface PrecomputeCheckpointRepository extends JpaRepository<PrecomputeCheckpoint, Long> {
+
+    /**
+     * 根据推荐日期查找检查点
+     */
+    Optional<PrecomputeCheckpoint> findByRunDate(LocalDate runDate);
+}
@@ -4,12 +4,14 @@ import com.airebate.model.Currency;
 import com.airebate.model.Customer;
 import com.airebate.model.RebateSpreadRecommendation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,6 +36,41 @@ public interface RebateSpreadRecommendationRepository extends JpaRepository<Reba
         @Param("now") LocalDateTime now
     );
     
+    /**
+     * 批量查找客户集合在指定日期集合上的有效推荐记录
+     */
+    @Query("SELECT r FROM RebateSpreadRecommendation r WHERE r.customer IN :customers " +
+           "AND r.recommendationDate IN :dates " +
+           "AND r.validUntil > :now " +
+           "ORDER BY r.createdAt DESC")
+    List<RebateSpreadRecommendation> findValidRecommendations(
+        @Param("customers") Collection<Customer> customers,
+        @Param("dates") Collection<LocalDate> dates,
+        @Param("now") LocalDateTime now
+    );
+    
+    /**
+     * 查找客户/货币/日期的推荐记录（包括已过期的），用于替换写入
+     */
+    @Query("SELECT r FROM RebateSpreadRecommendation r WHERE r.customer = :customer " +
+           "AND r.currency = :currency " +
+           "AND r.recommendationDate = :date")
+    Optional<RebateSpreadRecommendation> findByCustomerAndCurrencyAndDate(
+        @Param("customer") Customer customer,
+        @Param("currency") Currency currency,
+        @Param("date") LocalDate date
+    );
+    
+    /**
+     * 批量查找客户集合在指定日期集合上的推荐记录（包括已过期的），用于替换写入
+     */
+    @Query("SELECT r FROM RebateSpreadRecommendation r WHERE r.customer IN :customers " +
+           "AND r.recommendationDate IN :dates")
+    List<RebateSpreadRecommendation> findByCustomersAndDates(
+        @Param("customers") Collection<Customer> customers,
+        @Param("dates") Collection<LocalDate> dates
+    );
+    
     /**
      * 根据客户和货币查找最新推荐
      */
@@ -60,6 +97,7 @@ public interface RebateSpreadRecommendationRepository extends JpaRepository<Reba
     /**
      * 清理过期的推荐记录
      */
+    @Modifying
     @Query("DELETE FROM RebateSpreadRecommendation r WHERE r.validUntil < :expiredTime")
     void deleteExpiredRecommendations(@Param("expiredTime") LocalDateTime expiredTime);
     
@@ -6,21 +6,26 @@ import com.airebate.model.BillingResult;
 import com.airebate.model.Currency;
 import com.airebate.model.Customer;
 import com.airebate.model.RebateSpreadRecommendation;
+import com.airebate.service.BillingFeatureVector.Field;
 import com.airebate.service.LLMServiceManager;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import com.airebate.service.RecommendationMetrics.GenerationOutcome;
+import com.airebate.service.RecommendationMetrics.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 /**
  * AI推荐引擎核心服务
@@ -31,9 +36,22 @@ public class AIRecommendationEngine {
     
     private static final Logger logger = LoggerFactory.getLogger(AIRecommendationEngine.class);
     
+    /**
+     * 流式LLM提前返回时的占位推荐理由，完整输出解析后替换
+     */
+    public static final String PENDING_LLM_REASON = "LLM推荐理由生成中";
+    
+    /**
+     * 流式LLM输出中断、完整输出无法解析或没有推荐理由时，替换占位内容的最终推荐理由
+     */
+    public static final String LLM_REASON_UNAVAILABLE = "推荐理由生成失败";
+    
     @Autowired
     private LLMServiceManager llmServiceManager;
     
+    @Autowired
+    private RecommendationMetrics metrics;
+    
     @Value("${ai.rebate.default-spread-range:0.1}")
     private double defaultSpreadRange;
     
@@ -61,60 +79,275 @@ public class AIRecommendationEngine {
     @Value("${ai.llm.fallback-enabled:true}")
     private boolean fallbackEnabled;
 
+    // 请求设置了截止时间时，为传统算法和保存推荐预留的时间（毫秒），LLM调用须在此之前完成
+    @Value("${ai.rebate.deadline.reserve:300}")
+    private long deadlineReserveMillis;
+
     /**
      * 生成智能推荐（新版本，支持LLM）
      */
     public RebateSpreadRecommendation generateRecommendation(Customer customer, Currency currency, 
                                                            LocalDate recommendationDate, 
                                                            List<BillingResult> historicalData) {
+        // 一次遍历提取历史数据特征，LLM和传统算法共用
+        return generateRecommendation(customer, currency, recommendationDate, 
+                                      BillingFeatureVector.extract(historicalData));
+    }
+
+    /**
+     * 基于历史特征向量生成智能推荐
+     */
+    public RebateSpreadRecommendation generateRecommendation(Customer customer, Currency currency, 
+                                                           LocalDate recommendationDate, 
+                                                           BillingFeatureVector features) {
+        return generateRecommendation(customer, currency, recommendationDate, features, null);
+    }
+
+    /**
+     * 基于历史特征向量生成智能推荐，deadline不为null时LLM调用与异步版本一样受截止时间限制，
+     * 剩余时间不足或超时时使用传统算法
+     */
+    public RebateSpreadRecommendation generateRecommendation(Customer customer, Currency currency, 
+                                                           LocalDate recommendationDate, 
+                                                           BillingFeatureVector features,
+                                                           RequestDeadline deadline) {
         logger.info("为客户 {} 生成 {} 货币在 {} 的推荐", 
                    customer.getCustomerCode(), currency, recommendationDate);
+        long start = System.nanoTime();
         
         // 创建推荐对象
         RebateSpreadRecommendation recommendation = new RebateSpreadRecommendation(
             customer, currency, recommendationDate, BigDecimal.ZERO);
         
+        GenerationOutcome outcome;
         try {
             // 优先尝试使用LLM推荐
             if (llmEnabled && llmServiceManager.hasAvailableService()) {
-                LLMRecommendationResponse llmResponse = generateLLMRecommendation(
-                    customer, currency, recommendationDate, historicalData);
+                LLMRecommendationRequest llmRequest = prepareLLMRequest(customer, currency, recommendationDate, features);
+                LLMRecommendationResponse llmResponse = deadline == null
+                    ? llmServiceManager.generateRecommendation(llmRequest)
+                    : withinDeadline(llmServiceManager.generateRecommendationAsync(llmRequest))
+                        .contextWrite(ctx -> ctx.put(RequestDeadline.CONTEXT_KEY, deadline))
+                        .block();
                 
-                if (llmResponse.isSuccess()) {
+                if (llmResponse != null && llmResponse.isSuccess()) {
                     logger.info("成功使用LLM生成推荐");
                     populateRecommendationFromLLM(recommendation, llmResponse);
+                    metrics.recordGeneration(currency, llmOutcome(llmResponse), start);
                     return recommendation;
-                } else {
+                } else if (llmResponse != null) {
                     logger.warn("LLM推荐失败: {}", llmResponse.getErrorMessage());
                 }
             }
             
             // 如果LLM不可用或失败，使用传统算法
-            if (fallbackEnabled) {
-                logger.info("使用传统算法生成推荐");
-                generateTraditionalRecommendation(recommendation, customer, currency, historicalData);
-            } else {
-                throw new RuntimeException("LLM服务不可用且传统算法回退已禁用");
-            }
+            completeWithoutLLM(recommendation, customer, currency, features);
+            outcome = GenerationOutcome.TRADITIONAL_FALLBACK;
             
         } catch (Exception e) {
-            logger.error("生成推荐时发生错误", e);
-            // 使用默认值
-            recommendation.setRecommendedSpread(BigDecimal.valueOf(defaultSpreadRange));
-            recommendation.setConfidenceScore(BigDecimal.valueOf(0.5));
-            recommendation.setRecommendationReason("使用默认推荐值，原因：" + e.getMessage());
+            applyDefaultRecommendation(recommendation, e);
+            outcome = GenerationOutcome.DEFAULT;
         }
         
         recommendation.setValidUntil(LocalDateTime.now().plusHours(24));
+        metrics.recordGeneration(currency, outcome, start);
         return recommendation;
     }
 
     /**
-     * 使用LLM生成推荐
+     * 异步生成智能推荐
+     * 推荐逻辑与同步版本一致，LLM调用通过非阻塞客户端完成
      */
-    private LLMRecommendationResponse generateLLMRecommendation(Customer customer, Currency currency,
-                                                              LocalDate recommendationDate,
-                                                              List<BillingResult> historicalData) {
+    public Mono<RebateSpreadRecommendation> generateRecommendationAsync(Customer customer, Currency currency,
+                                                                      LocalDate recommendationDate,
+                                                                      List<BillingResult> historicalData) {
+        return generateRecommendationAsync(customer, currency, recommendationDate, 
+                                           BillingFeatureVector.extract(historicalData));
+    }
+
+    /**
+     * 基于历史特征向量异步生成智能推荐
+     * Reactor上下文中有截止时间（RequestDeadline）时，LLM调用须在截止时间前预留的时间内完成，
+     * 剩余时间不足时不调用LLM，超时则取消调用，均改用传统算法
+     */
+    public Mono<RebateSpreadRecommendation> generateRecommendationAsync(Customer customer, Currency currency,
+                                                                      LocalDate recommendationDate,
+                                                                      BillingFeatureVector features) {
+        logger.info("为客户 {} 异步生成 {} 货币在 {} 的推荐", 
+                   customer.getCustomerCode(), currency, recommendationDate);
+        long start = System.nanoTime();
+        
+        RebateSpreadRecommendation recommendation = new RebateSpreadRecommendation(
+            customer, currency, recommendationDate, BigDecimal.ZERO);
+        
+        Mono<LLMRecommendationResponse> llmResponse = llmEnabled && llmServiceManager.hasAvailableService() ?
+            withinDeadline(Mono.defer(() -> llmServiceManager.generateRecommendationAsync(
+                prepareLLMRequest(customer, currency, recommendationDate, features)))) :
+            Mono.empty();
+        
+        return llmResponse
+            .filter(response -> {
+                if (!response.isSuccess()) {
+                    logger.warn("LLM推荐失败: {}", response.getErrorMessage());
+                }
+                return response.isSuccess();
+            })
+            .map(response -> {
+                logger.info("成功使用LLM生成推荐");
+                populateRecommendationFromLLM(recommendation, response);
+                metrics.recordGeneration(currency, llmOutcome(response), start);
+                return recommendation;
+            })
+            .switchIfEmpty(Mono.fromCallable(() -> {
+                completeWithoutLLM(recommendation, customer, currency, features);
+                recommendation.setValidUntil(LocalDateTime.now().plusHours(24));
+                metrics.recordGeneration(currency, GenerationOutcome.TRADITIONAL_FALLBACK, start);
+                return recommendation;
+            }))
+            .onErrorResume(e -> {
+                applyDefaultRecommendation(recommendation, e);
+                recommendation.setValidUntil(LocalDateTime.now().plusHours(24));
+                metrics.recordGeneration(currency, GenerationOutcome.DEFAULT, start);
+                return Mono.just(recommendation);
+            });
+    }
+
+    /**
+     * 按上下文中的截止时间限制LLM调用：LLM的截止时间为请求截止时间减去预留时间，并传递给LLM服务管理器；
+     * 剩余时间不足或超时时返回空，由调用方改用传统算法
+     */
+    private Mono<LLMRecommendationResponse> withinDeadline(Mono<LLMRecommendationResponse> llmCall) {
+        return Mono.deferContextual(context -> {
+            RequestDeadline deadline = RequestDeadline.from(context);
+            if (deadline == null) {
+                return llmCall;
+            }
+            RequestDeadline llmDeadline = deadline.minusMillis(deadlineReserveMillis);
+            long budget = llmDeadline.remainingMillis();
+            if (budget <= 0) {
+                logger.warn("剩余时间不足，跳过LLM推荐");
+                return Mono.empty();
+            }
+            return llmCall
+                .timeout(Duration.ofMillis(budget))
+                .onErrorResume(TimeoutException.class, e -> {
+                    logger.warn("LLM推荐在 {}ms 内未完成，已取消", budget);
+                    return Mono.empty();
+                })
+                .contextWrite(ctx -> ctx.put(RequestDeadline.CONTEXT_KEY, llmDeadline));
+        });
+    }
+
+    /**
+     * 批量生成任务：客户、货币、推荐日期及其历史特征
+     */
+    public record GenerationTask(Customer customer, Currency currency, LocalDate recommendationDate,
+                                 BillingFeatureVector features) {}
+
+    /**
+     * 批量异步生成智能推荐，返回列表与任务列表一一对应
+     * LLM请求通过一次批量调用完成，LLM失败的项单独使用传统算法
+     */
+    public Mono<List<RebateSpreadRecommendation>> generateRecommendationsAsync(List<GenerationTask> tasks) {
+        logger.info("批量异步生成 {} 个推荐", tasks.size());
+        long start = System.nanoTime();
+        
+        Mono<List<LLMRecommendationResponse>> llmResponses = llmEnabled && llmServiceManager.hasAvailableService() ?
+            Mono.defer(() -> llmServiceManager.generateRecommendationsAsync(tasks.stream()
+                    .map(task -> prepareLLMRequest(task.customer(), task.currency(),
+                                                   task.recommendationDate(), task.features()))
+                    .toList()))
+                .onErrorResume(e -> {
+                    logger.error("批量LLM推荐失败", e);
+                    return Mono.just(Collections.<LLMRecommendationResponse>nCopies(tasks.size(), null));
+                }) :
+            Mono.just(Collections.<LLMRecommendationResponse>nCopies(tasks.size(), null));
+        
+        return llmResponses.map(responses -> {
+            List<RebateSpreadRecommendation> recommendations = new ArrayList<>(tasks.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                recommendations.add(completeRecommendation(tasks.get(i), responses.get(i), start));
+            }
+            return recommendations;
+        });
+    }
+
+    /**
+     * 由LLM响应完成单个批量任务的推荐，响应为null或失败时使用传统算法
+     */
+    private RebateSpreadRecommendation completeRecommendation(GenerationTask task, LLMRecommendationResponse llmResponse,
+                                                              long startNanos) {
+        RebateSpreadRecommendation recommendation = new RebateSpreadRecommendation(
+            task.customer(), task.currency(), task.recommendationDate(), BigDecimal.ZERO);
+        if (llmResponse != null && llmResponse.isSuccess()) {
+            populateRecommendationFromLLM(recommendation, llmResponse);
+            metrics.recordGeneration(task.currency(), llmOutcome(llmResponse), startNanos);
+            return recommendation;
+        }
+        if (llmResponse != null) {
+            logger.warn("LLM推荐失败: {}", llmResponse.getErrorMessage());
+        }
+        
+        GenerationOutcome outcome;
+        try {
+            completeWithoutLLM(recommendation, task.customer(), task.currency(), task.features());
+            outcome = GenerationOutcome.TRADITIONAL_FALLBACK;
+        } catch (Exception e) {
+            applyDefaultRecommendation(recommendation, e);
+            outcome = GenerationOutcome.DEFAULT;
+        }
+        recommendation.setValidUntil(LocalDateTime.now().plusHours(24));
+        metrics.recordGeneration(task.currency(), outcome, startNanos);
+        return recommendation;
+    }
+
+    /**
+     * LLM不可用或失败时使用传统算法完成推荐
+     */
+    private void completeWithoutLLM(RebateSpreadRecommendation recommendation, Customer customer,
+                                    Currency currency, BillingFeatureVector features) {
+        if (fallbackEnabled) {
+            logger.info("使用传统算法生成推荐");
+            long start = System.nanoTime();
+            generateTraditionalRecommendation(recommendation, customer, currency, features);
+            metrics.recordStage(Stage.TRADITIONAL_ALGORITHM, currency, start);
+        } else {
+            throw new RuntimeException("LLM服务不可用且传统算法回退已禁用");
+        }
+    }
+
+    /**
+     * 发生错误时使用默认推荐值
+     */
+    private void applyDefaultRecommendation(RebateSpreadRecommendation recommendation, Throwable e) {
+        logger.error("生成推荐时发生错误", e);
+        recommendation.setRecommendedSpread(BigDecimal.valueOf(defaultSpreadRange));
+        recommendation.setConfidenceScore(BigDecimal.valueOf(0.5));
+        recommendation.setRecommendationReason("使用默认推荐值，原因：" + e.getMessage());
+    }
+
+    private static GenerationOutcome llmOutcome(LLMRecommendationResponse response) {
+        return response.isParseFallback() ? GenerationOutcome.PARSE_FALLBACK : GenerationOutcome.LLM_SUCCESS;
+    }
+
+    /**
+     * 构建LLM推荐请求并记录特征计算耗时
+     */
+    private LLMRecommendationRequest prepareLLMRequest(Customer customer, Currency currency,
+                                                       LocalDate recommendationDate,
+                                                       BillingFeatureVector features) {
+        long start = System.nanoTime();
+        LLMRecommendationRequest request = buildLLMRequest(customer, currency, recommendationDate, features);
+        metrics.recordStage(Stage.FEATURE_COMPUTATION, currency, start);
+        return request;
+    }
+
+    /**
+     * 构建LLM推荐请求
+     */
+    LLMRecommendationRequest buildLLMRequest(Customer customer, Currency currency,
+                                                     LocalDate recommendationDate,
+                                                     BillingFeatureVector features) {
         // 准备LLM请求数据
         LLMRecommendationRequest llmRequest = new LLMRecommendationRequest();
         llmRequest.setCustomerCode(customer.getCustomerCode());
@@ -123,7 +356,7 @@ public class AIRecommendationEngine {
         llmRequest.setRecommendationDate(recommendationDate);
         
         // 计算历史数据摘要
-        populateHistoricalDataSummary(llmRequest, historicalData);
+        populateHistoricalDataSummary(llmRequest, features);
         
         // 设置客户信息
         llmRequest.setCustomerRiskLevel(customer.getRiskLevel());
@@ -135,65 +368,35 @@ public class AIRecommendationEngine {
         llmRequest.setDefaultSpread(BigDecimal.valueOf(defaultSpreadRange));
         
         // 生成市场状况和客户特征描述
-        llmRequest.setMarketCondition(generateMarketConditionDescription(historicalData, currency));
+        llmRequest.setMarketCondition(generateMarketConditionDescription(features, currency));
         llmRequest.setCustomerProfile(generateCustomerProfileDescription(customer));
         
-        // 调用LLM服务
-        return llmServiceManager.generateRecommendation(llmRequest);
+        return llmRequest;
     }
 
     /**
      * 填充历史数据摘要
      */
-    private void populateHistoricalDataSummary(LLMRecommendationRequest request, List<BillingResult> historicalData) {
-        if (historicalData.isEmpty()) {
+    private void populateHistoricalDataSummary(LLMRecommendationRequest request, BillingFeatureVector features) {
+        if (features.isEmpty()) {
             return;
         }
         
-        // 计算平均值
-        double avgVolume = historicalData.stream()
-            .filter(data -> data.getTransactionVolume() != null)
-            .mapToDouble(data -> data.getTransactionVolume().doubleValue())
-            .average().orElse(0.0);
-        
-        double avgAmount = historicalData.stream()
-            .filter(data -> data.getTransactionAmount() != null)
-            .mapToDouble(data -> data.getTransactionAmount().doubleValue())
-            .average().orElse(0.0);
-        
-        double avgProfitMargin = historicalData.stream()
-            .filter(data -> data.getProfitMargin() != null)
-            .mapToDouble(data -> data.getProfitMargin().doubleValue())
-            .average().orElse(0.05);
-        
-        double avgLiquidity = historicalData.stream()
-            .filter(data -> data.getLiquidityScore() != null)
-            .mapToDouble(data -> data.getLiquidityScore().doubleValue())
-            .average().orElse(5.0);
-        
-        double avgVolatility = historicalData.stream()
-            .filter(data -> data.getMarketVolatility() != null)
-            .mapToDouble(data -> data.getMarketVolatility().doubleValue())
-            .average().orElse(0.5);
-        
-        request.setAvgTransactionVolume(BigDecimal.valueOf(avgVolume));
-        request.setAvgTransactionAmount(BigDecimal.valueOf(avgAmount));
-        request.setAvgProfitMargin(BigDecimal.valueOf(avgProfitMargin));
-        request.setAvgLiquidityScore(BigDecimal.valueOf(avgLiquidity));
-        request.setMarketVolatility(BigDecimal.valueOf(avgVolatility));
+        request.setAvgTransactionVolume(BigDecimal.valueOf(features.getMean(Field.TRANSACTION_VOLUME, 0.0)));
+        request.setAvgTransactionAmount(BigDecimal.valueOf(features.getMean(Field.TRANSACTION_AMOUNT, 0.0)));
+        request.setAvgProfitMargin(BigDecimal.valueOf(features.getMean(Field.PROFIT_MARGIN, 0.05)));
+        request.setAvgLiquidityScore(BigDecimal.valueOf(features.getMean(Field.LIQUIDITY_SCORE, 5.0)));
+        request.setMarketVolatility(BigDecimal.valueOf(features.getMean(Field.MARKET_VOLATILITY, 0.5)));
     }
 
     /**
      * 生成市场状况描述
      */
-    private String generateMarketConditionDescription(List<BillingResult> historicalData, Currency currency) {
+    private String generateMarketConditionDescription(BillingFeatureVector features, Currency currency) {
         StringBuilder description = new StringBuilder();
         
-        if (!historicalData.isEmpty()) {
-            double avgVolatility = historicalData.stream()
-                .filter(data -> data.getMarketVolatility() != null)
-                .mapToDouble(data -> data.getMarketVolatility().doubleValue())
-                .average().orElse(0.5);
+        if (!features.isEmpty()) {
+            double avgVolatility = features.getMean(Field.MARKET_VOLATILITY, 0.5);
             
             if (avgVolatility > 0.7) {
                 description.append("市场波动剧烈，");
@@ -262,6 +465,15 @@ public class AIRecommendationEngine {
         recommendation.setConfidenceScore(llmResponse.getConfidenceScore());
         recommendation.setRecommendationReason(llmResponse.getReasoning());
         
+        // 流式调用提前返回，推荐理由在输出结束后补充；完整输出解析回退时其推荐理由与已返回的推荐值无关，不使用
+        if (llmResponse.getCompletion() != null) {
+            recommendation.setRecommendationReason(PENDING_LLM_REASON);
+            recommendation.setPendingReason(llmResponse.getCompletion()
+                .filter(completed -> completed.isSuccess() && !completed.isParseFallback())
+                .mapNotNull(LLMRecommendationResponse::getReasoning)
+                .toFuture());
+        }
+        
         // 从LLM响应中解析传统字段（用于兼容性）
         recommendation.setVolatilityFactor(BigDecimal.valueOf(0.5)); // 默认值
         recommendation.setVolumeFactor(BigDecimal.valueOf(0.5));     // 默认值
@@ -274,13 +486,13 @@ public class AIRecommendationEngine {
     /**
      * 使用传统算法生成推荐
      */
-    private void generateTraditionalRecommendation(RebateSpreadRecommendation recommendation,
-                                                 Customer customer, Currency currency,
-                                                 List<BillingResult> historicalData) {
+    void generateTraditionalRecommendation(RebateSpreadRecommendation recommendation,
+                                           Customer customer, Currency currency,
+                                           BillingFeatureVector features) {
         // 计算各种因子
-        BigDecimal volatilityFactor = calculateVolatilityFactor(historicalData);
-        BigDecimal volumeFactor = calculateVolumeFactor(historicalData);
-        BigDecimal historicalPerformanceFactor = calculateHistoricalPerformanceFactor(historicalData);
+        BigDecimal volatilityFactor = calculateVolatilityFactor(features);
+        BigDecimal volumeFactor = calculateVolumeFactor(features);
+        BigDecimal historicalPerformanceFactor = calculateHistoricalPerformanceFactor(features);
         BigDecimal riskAdjustment = calculateRiskAdjustment(customer, currency);
         
         // 计算基础推荐spread
@@ -294,7 +506,7 @@ public class AIRecommendationEngine {
         BigDecimal finalSpread = constrainSpread(adjustedSpread);
         
         // 计算置信度
-        BigDecimal confidence = calculateConfidenceScore(historicalData, volatilityFactor);
+        BigDecimal confidence = calculateConfidenceScore(features, volatilityFactor);
         
         // 填充推荐数据
         recommendation.setRecommendedSpread(finalSpread);
@@ -312,27 +524,18 @@ public class AIRecommendationEngine {
     /**
      * 计算波动率因子
      */
-    private BigDecimal calculateVolatilityFactor(List<BillingResult> historicalData) {
-        if (historicalData.isEmpty()) {
+    private BigDecimal calculateVolatilityFactor(BillingFeatureVector features) {
+        if (features.isEmpty()) {
             return BigDecimal.valueOf(0.5); // 默认中等波动率
         }
         
-        DescriptiveStatistics stats = new DescriptiveStatistics();
-        
-        for (BillingResult result : historicalData) {
-            if (result.getMarketVolatility() != null) {
-                stats.addValue(result.getMarketVolatility().doubleValue());
-            } else if (result.getTransactionAmount() != null) {
-                // 如果没有市场波动率，使用交易金额的变化作为替代
-                stats.addValue(result.getTransactionAmount().doubleValue());
-            }
-        }
-        
-        if (stats.getN() == 0) {
+        // 如果没有市场波动率，使用交易金额的变化作为替代
+        if (features.getCount(Field.VOLATILITY_OR_AMOUNT) == 0) {
             return BigDecimal.valueOf(0.5);
         }
         
-        double volatility = stats.getStandardDeviation() / (stats.getMean() + 1);
+        double volatility = features.getStandardDeviation(Field.VOLATILITY_OR_AMOUNT) /
+            (features.getMean(Field.VOLATILITY_OR_AMOUNT, 0.0) + 1);
         
         // 标准化到0-1范围
         double normalizedVolatility = Math.min(1.0, Math.max(0.0, volatility));
@@ -343,17 +546,13 @@ public class AIRecommendationEngine {
     /**
      * 计算交易量因子
      */
-    private BigDecimal calculateVolumeFactor(List<BillingResult> historicalData) {
-        if (historicalData.isEmpty()) {
+    private BigDecimal calculateVolumeFactor(BillingFeatureVector features) {
+        if (features.isEmpty()) {
             return BigDecimal.valueOf(0.5);
         }
         
-        double totalVolume = historicalData.stream()
-            .mapToDouble(result -> result.getTransactionVolume() != null ? 
-                        result.getTransactionVolume().doubleValue() : 0.0)
-            .sum();
-        
-        double avgVolume = totalVolume / historicalData.size();
+        // 交易量为空的记录按0计入平均值
+        double avgVolume = features.getSum(Field.TRANSACTION_VOLUME) / features.getRowCount();
         
         // 标准化交易量因子 (高交易量 = 低spread)
         double volumeFactor = 1.0 - Math.min(1.0, avgVolume / 10000.0); // 假设10000为高交易量阈值
@@ -364,22 +563,13 @@ public class AIRecommendationEngine {
     /**
      * 计算历史表现因子
      */
-    private BigDecimal calculateHistoricalPerformanceFactor(List<BillingResult> historicalData) {
-        if (historicalData.isEmpty()) {
+    private BigDecimal calculateHistoricalPerformanceFactor(BillingFeatureVector features) {
+        if (features.isEmpty()) {
             return BigDecimal.valueOf(0.5);
         }
         
-        double avgProfitMargin = historicalData.stream()
-            .filter(result -> result.getProfitMargin() != null)
-            .mapToDouble(result -> result.getProfitMargin().doubleValue())
-            .average()
-            .orElse(0.05); // 默认5%利润率
-        
-        double avgLiquidityScore = historicalData.stream()
-            .filter(result -> result.getLiquidityScore() != null)
-            .mapToDouble(result -> result.getLiquidityScore().doubleValue())
-            .average()
-            .orElse(5.0); // 默认中等流动性评分
+        double avgProfitMargin = features.getMean(Field.PROFIT_MARGIN, 0.05); // 默认5%利润率
+        double avgLiquidityScore = features.getMean(Field.LIQUIDITY_SCORE, 5.0); // 默认中等流动性评分
         
         // 综合历史表现 (高利润率和高流动性 = 可以设置较高spread)
         double performanceFactor = (avgProfitMargin * 10 + avgLiquidityScore / 10) / 2;
@@ -454,8 +644,8 @@ public class AIRecommendationEngine {
     /**
      * 计算置信度评分
      */
-    private BigDecimal calculateConfidenceScore(List<BillingResult> historicalData, BigDecimal volatilityFactor) {
-        double dataQuality = Math.min(1.0, historicalData.size() / 30.0); // 30天数据为满分
+    private BigDecimal calculateConfidenceScore(BillingFeatureVector features, BigDecimal volatilityFactor) {
+        double dataQuality = Math.min(1.0, features.getRowCount() / 30.0); // 30天数据为满分
         double volatilityPenalty = 1.0 - volatilityFactor.doubleValue() * 0.3; // 高波动率降低置信度
         
         double confidence = dataQuality * volatilityPenalty;
@@ -0,0 +1,230 @@
+package com.airebate.service;
+
+import com.airebate.model.BillingDailyRollup;
+import com.airebate.model.BillingFieldAggregate;
+import com.airebate.model.BillingResult;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 账单历史数据特征向量
+ * 一次遍历计算推荐引擎和LLM请求所需的全部聚合指标（数量、均值、标准差、最小值、最大值、空值数），
+ * 各字段的统计量保存在按字段下标索引的基本类型数组中，遍历过程中不产生额外对象。
+ * 均值和方差使用Welford算法累加，两个特征向量可以合并，也可以由账单日汇总合并得到
+ */
+public final class BillingFeatureVector {
+
+    /**
+     * 统计字段
+     */
+    public enum Field {
+        TRANSACTION_VOLUME,
+        TRANSACTION_AMOUNT,
+        PROFIT_MARGIN,
+        LIQUIDITY_SCORE,
+        MARKET_VOLATILITY,
+        // 市场波动率，缺失时以交易金额代替（传统算法的波动率因子使用）
+        VOLATILITY_OR_AMOUNT
+    }
+
+    private static final int FIELD_COUNT = Field.values().length;
+
+    private long rowCount;
+    private final long[] counts = new long[FIELD_COUNT];
+    private final long[] nullCounts = new long[FIELD_COUNT];
+    private final double[] sums = new double[FIELD_COUNT];
+    private final double[] means = new double[FIELD_COUNT];
+    private final double[] m2 = new double[FIELD_COUNT];
+    private final double[] mins = new double[FIELD_COUNT];
+    private final double[] maxs = new double[FIELD_COUNT];
+
+    public BillingFeatureVector() {
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * 从账单历史数据提取特征向量
+     */
+    public static BillingFeatureVector extract(List<BillingResult> historicalData) {
+        BillingFeatureVector vector = new BillingFeatureVector();
+        for (int i = 0, size = historicalData.size(); i < size; i++) {
+            vector.add(historicalData.get(i));
+        }
+        return vector;
+    }
+
+    /**
+     * 从账单日汇总合并得到特征向量
+     */
+    public static BillingFeatureVector fromRollups(List<BillingDailyRollup> rollups) {
+        BillingFeatureVector vector = new BillingFeatureVector();
+        for (int i = 0, size = rollups.size(); i < size; i++) {
+            vector.add(rollups.get(i));
+        }
+        return vector;
+    }
+
+    /**
+     * 累加一条账单记录
+     */
+    public void add(BillingResult result) {
+        rowCount++;
+
+        Integer volume = result.getTransactionVolume();
+        if (volume != null) {
+            accept(Field.TRANSACTION_VOLUME, volume);
+        } else {
+            nullCounts[Field.TRANSACTION_VOLUME.ordinal()]++;
+        }
+
+        BigDecimal amount = result.getTransactionAmount();
+        acceptOrNull(Field.TRANSACTION_AMOUNT, amount);
+        acceptOrNull(Field.PROFIT_MARGIN, result.getProfitMargin());
+        acceptOrNull(Field.LIQUIDITY_SCORE, result.getLiquidityScore());
+
+        BigDecimal volatility = result.getMarketVolatility();
+        acceptOrNull(Field.MARKET_VOLATILITY, volatility);
+        acceptOrNull(Field.VOLATILITY_OR_AMOUNT, volatility != null ? volatility : amount);
+    }
+
+    /**
+     * 合并一条账单日汇总
+     */
+    public void add(BillingDailyRollup rollup) {
+        long rows = rollup.getRowCount();
+        rowCount += rows;
+        accept(Field.TRANSACTION_VOLUME, rollup.getTransactionVolume(), rows);
+        accept(Field.TRANSACTION_AMOUNT, rollup.getTransactionAmount(), rows);
+        accept(Field.PROFIT_MARGIN, rollup.getProfitMargin(), rows);
+        accept(Field.LIQUIDITY_SCORE, rollup.getLiquidityScore(), rows);
+        accept(Field.MARKET_VOLATILITY, rollup.getMarketVolatility(), rows);
+        accept(Field.VOLATILITY_OR_AMOUNT, rollup.getVolatilityOrAmount(), rows);
+    }
+
+    private void accept(Field field, BillingFieldAggregate aggregate, long rows) {
+        int i = field.ordinal();
+        long n = aggregate.getCount();
+        nullCounts[i] += rows - n;
+        if (n == 0) {
+            return;
+        }
+        double mean = aggregate.getSum() / n;
+        // 由平方和还原离差平方和，舍入误差可能产生极小的负数
+        double squaredDeviations = Math.max(0.0, aggregate.getSumOfSquares() - aggregate.getSum() * mean);
+        combine(i, n, mean, squaredDeviations, aggregate.getSum(), aggregate.getMin(), aggregate.getMax());
+    }
+
+    private void acceptOrNull(Field field, BigDecimal value) {
+        if (value != null) {
+            accept(field, value.doubleValue());
+        } else {
+            nullCounts[field.ordinal()]++;
+        }
+    }
+
+    private void accept(Field field, double value) {
+        int i = field.ordinal();
+        long n = ++counts[i];
+        double delta = value - means[i];
+        means[i] += delta / n;
+        m2[i] += delta * (value - means[i]);
+        sums[i] += value;
+        if (value < mins[i]) {
+            mins[i] = value;
+        }
+        if (value > maxs[i]) {
+            maxs[i] = value;
+        }
+    }
+
+    /**
+     * 合并另一个特征向量的统计量
+     */
+    public BillingFeatureVector merge(BillingFeatureVector other) {
+        rowCount += other.rowCount;
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            nullCounts[i] += other.nullCounts[i];
+            if (other.counts[i] > 0) {
+                combine(i, other.counts[i], other.means[i], other.m2[i], other.sums[i],
+                        other.mins[i], other.maxs[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 按并行方差算法合并一组统计量
+     */
+    private void combine(int i, long n2, double mean2, double m2b, double sum2, double min2, double max2) {
+        long n1 = counts[i];
+        long n = n1 + n2;
+        double delta = mean2 - means[i];
+        means[i] += delta * n2 / n;
+        m2[i] += m2b + delta * delta * ((double) n1 * n2 / n);
+        counts[i] = n;
+        sums[i] += sum2;
+        mins[i] = Math.min(mins[i], min2);
+        maxs[i] = Math.max(maxs[i], max2);
+    }
+
+    /**
+     * 参与统计的记录数（包括字段为空的记录）
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    /**
+     * 字段非空值的数量
+     */
+    public long getCount(Field field) {
+        return counts[field.ordinal()];
+    }
+
+    public long getNullCount(Field field) {
+        return nullCounts[field.ordinal()];
+    }
+
+    public double getSum(Field field) {
+        return sums[field.ordinal()];
+    }
+
+    /**
+     * 字段非空值的均值，没有非空值时返回默认值
+     */
+    public double getMean(Field field, double defaultValue) {
+        int i = field.ordinal();
+        return counts[i] == 0 ? defaultValue : means[i];
+    }
+
+    /**
+     * 字段非空值的样本标准差，少于两个值时返回0
+     */
+    public double getStandardDeviation(Field field) {
+        int i = field.ordinal();
+        return counts[i] < 2 ? 0.0 : Math.sqrt(m2[i] / (counts[i] - 1));
+    }
+
+    /**
+     * 字段最小值，没有非空值时返回NaN
+     */
+    public double getMin(Field field) {
+        int i = field.ordinal();
+        return counts[i] == 0 ? Double.NaN : mins[i];
+    }
+
+    /**
+     * 字段最大值，没有非空值时返回NaN
+     */
+    public double getMax(Field field) {
+        int i = field.ordinal();
+        return counts[i] == 0 ? Double.NaN : maxs[i];
+    }
+}
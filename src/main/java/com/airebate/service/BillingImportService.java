@@ -0,0 +1,348 @@
+package com.airebate.service;
+
+import com.airebate.dto.BillingImportRecord;
+import com.airebate.dto.BillingImportSummary;
+import com.airebate.model.BillingResult;
+import com.airebate.model.Customer;
+import com.airebate.repository.CustomerRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 账单流式导入服务
+ * 从输入流逐行解析NDJSON或CSV，校验后按块交给账单写入服务，每块在独立事务中提交。
+ * 写入当前块时不再读取输入流，由TCP流量控制对客户端形成背压，内存占用与文件大小无关。
+ * 进度按导入ID登记，导入过程中可以查询
+ */
+@Service
+public class BillingImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BillingImportService.class);
+
+    // CSV列名（规范化后）到导入记录字段名的映射
+    private static final Map<String, String> CSV_COLUMNS = new HashMap<>();
+
+    static {
+        for (String field : List.of("customerCode", "currency", "billingDate", "transactionAmount",
+                                    "transactionVolume", "marketVolatility", "liquidityScore", "profitMargin")) {
+            CSV_COLUMNS.put(normalizeColumn(field), field);
+        }
+    }
+
+    /**
+     * 导入文件格式
+     */
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    @Autowired
+    private BillingIngestionService billingIngestionService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Validator validator;
+
+    @Value("${ai.rebate.ingest.chunk-size:1000}")
+    private int chunkSize;
+
+    // 导入结果中保留的错误明细条数
+    @Value("${ai.rebate.ingest.max-reported-errors:100}")
+    private int maxReportedErrors;
+
+    // 保留的已完成导入记录数量，供进度查询
+    @Value("${ai.rebate.ingest.progress-retention:100}")
+    private int progressRetention;
+
+    private final Map<String, BillingImportSummary> imports = new ConcurrentHashMap<>();
+
+    /**
+     * 从输入流导入账单记录，返回导入结果
+     * 单行解析或校验失败只记录错误行，不影响其他行；某一块写入失败时该块全部记为失败
+     */
+    public BillingImportSummary importStream(InputStream inputStream, Format format, String importId) {
+        BillingImportSummary summary = register(importId, format);
+        long start = System.currentTimeMillis();
+        logger.info("开始导入账单数据，导入ID: {}, 格式: {}", summary.getImportId(), format);
+
+        ImportContext context = new ImportContext(summary);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String[] csvHeader = null;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                summary.setLinesRead(lineNumber);
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && csvHeader == null) {
+                    csvHeader = parseCsvHeader(line);
+                    continue;
+                }
+
+                BillingResult billingResult = parseLine(line, format, csvHeader, lineNumber, context);
+                if (billingResult != null) {
+                    context.add(billingResult, lineNumber);
+                    if (context.pending.size() >= chunkSize) {
+                        context.flush();
+                    }
+                }
+            }
+            context.flush();
+            summary.complete("COMPLETED", null);
+        } catch (IOException e) {
+            // 输入流中断时不写入未完成的块，已提交的块保留
+            logger.warn("读取导入数据失败，导入ID: {}", summary.getImportId(), e);
+            summary.complete("FAILED", "读取导入数据失败: " + e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("账单导入失败，导入ID: {}", summary.getImportId(), e);
+            summary.complete("FAILED", "账单导入失败: " + e.getMessage());
+        }
+
+        logger.info("账单导入结束，导入ID: {}, 状态: {}, 读取 {} 行, 成功 {} 条, 失败 {} 条, 耗时 {} ms",
+                   summary.getImportId(), summary.getStatus(), summary.getLinesRead(),
+                   summary.getImportedCount(), summary.getFailedCount(), System.currentTimeMillis() - start);
+        return summary;
+    }
+
+    /**
+     * 查询导入进度
+     */
+    public Optional<BillingImportSummary> getProgress(String importId) {
+        return Optional.ofNullable(imports.get(importId));
+    }
+
+    private BillingImportSummary register(String importId, Format format) {
+        String id = importId == null || importId.isBlank() ? UUID.randomUUID().toString() : importId;
+        BillingImportSummary summary = new BillingImportSummary(id, format.name());
+        BillingImportSummary previous = imports.putIfAbsent(id, summary);
+        if (previous != null) {
+            if (!previous.isFinished()) {
+                throw new IllegalArgumentException("导入任务正在进行中: " + id);
+            }
+            imports.put(id, summary);
+        }
+        evictFinished();
+        return summary;
+    }
+
+    /**
+     * 已完成的导入记录超过保留数量时，移除最早完成的记录
+     */
+    private void evictFinished() {
+        List<BillingImportSummary> finished = imports.values().stream()
+            .filter(BillingImportSummary::isFinished)
+            .sorted(Comparator.comparing(BillingImportSummary::getFinishedAt))
+            .toList();
+        for (int i = 0; i < finished.size() - progressRetention; i++) {
+            imports.remove(finished.get(i).getImportId(), finished.get(i));
+        }
+    }
+
+    /**
+     * 解析并校验一行数据，失败时记录错误并返回null
+     */
+    private BillingResult parseLine(String line, Format format, String[] csvHeader,
+                                    long lineNumber, ImportContext context) {
+        BillingImportRecord record;
+        try {
+            record = format == Format.CSV
+                ? objectMapper.convertValue(parseCsvRow(line, csvHeader), BillingImportRecord.class)
+                : objectMapper.readValue(line, BillingImportRecord.class);
+        } catch (JsonProcessingException e) {
+            context.reject(lineNumber, "解析失败: " + e.getOriginalMessage());
+            return null;
+        } catch (IllegalArgumentException e) {
+            context.reject(lineNumber, "解析失败: " + e.getMessage());
+            return null;
+        }
+
+        String violations = describeViolations(validator.validate(record));
+        if (violations != null) {
+            context.reject(lineNumber, violations);
+            return null;
+        }
+
+        Optional<Customer> customer = context.customers.computeIfAbsent(
+            record.getCustomerCode(), customerRepository::findByCustomerCode);
+        if (customer.isEmpty()) {
+            context.reject(lineNumber, "客户不存在: " + record.getCustomerCode());
+            return null;
+        }
+
+        BillingResult billingResult = new BillingResult(customer.get(), record.getCurrency(), record.getBillingDate(),
+                                                        record.getTransactionAmount(), record.getTransactionVolume());
+        billingResult.setMarketVolatility(record.getMarketVolatility());
+        billingResult.setLiquidityScore(record.getLiquidityScore());
+        billingResult.setProfitMargin(record.getProfitMargin());
+
+        // 复用实体上的校验规则
+        violations = describeViolations(validator.validate(billingResult));
+        if (violations != null) {
+            context.reject(lineNumber, violations);
+            return null;
+        }
+        return billingResult;
+    }
+
+    private static <T> String describeViolations(Set<ConstraintViolation<T>> violations) {
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+            .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+            .sorted()
+            .collect(Collectors.joining("; "));
+    }
+
+    /**
+     * 解析CSV表头，列名忽略大小写和下划线，如 customer_code 与 customerCode 等价
+     */
+    private static String[] parseCsvHeader(String line) {
+        List<String> columns = splitCsvLine(line);
+        String[] header = new String[columns.size()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = CSV_COLUMNS.get(normalizeColumn(columns.get(i)));
+        }
+        return header;
+    }
+
+    private static String normalizeColumn(String column) {
+        return column.trim().replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 将CSV行转换为字段名到值的映射，未知列和空值忽略
+     */
+    private static Map<String, String> parseCsvRow(String line, String[] header) {
+        List<String> values = splitCsvLine(line);
+        if (values.size() > header.length) {
+            throw new IllegalArgumentException("列数 " + values.size() + " 超过表头列数 " + header.length);
+        }
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i).trim();
+            if (header[i] != null && !value.isEmpty()) {
+                row.put(header[i], value);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * 拆分一行CSV，支持双引号包围的字段和转义的双引号（""），不支持跨行字段
+     */
+    private static List<String> splitCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString());
+        return values;
+    }
+
+    /**
+     * 单次导入的状态：待写入的块及其行号、客户缓存
+     */
+    private class ImportContext {
+
+        private final BillingImportSummary summary;
+        private final List<BillingResult> pending = new ArrayList<>();
+        private final List<Long> pendingLines = new ArrayList<>();
+        // 客户代码到客户的缓存，不存在的客户也缓存，避免重复查询
+        private final Map<String, Optional<Customer>> customers = new HashMap<>();
+        private long imported;
+        private long failed;
+
+        ImportContext(BillingImportSummary summary) {
+            this.summary = summary;
+        }
+
+        void add(BillingResult billingResult, long lineNumber) {
+            pending.add(billingResult);
+            pendingLines.add(lineNumber);
+        }
+
+        void reject(long lineNumber, String message) {
+            failed++;
+            summary.setFailedCount(failed);
+            summary.addError(lineNumber, message, maxReportedErrors);
+        }
+
+        /**
+         * 写入待写入的块，每块在独立事务中提交
+         */
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            try {
+                billingIngestionService.ingest(pending);
+                imported += pending.size();
+                summary.setImportedCount(imported);
+            } catch (RuntimeException e) {
+                logger.warn("账单数据块写入失败，第 {}-{} 行", pendingLines.get(0),
+                           pendingLines.get(pendingLines.size() - 1), e);
+                failed += pending.size();
+                summary.setFailedCount(failed);
+                summary.addError(pendingLines.get(0),
+                                 String.format("第 %d-%d 行所在数据块写入失败: %s", pendingLines.get(0),
+                                               pendingLines.get(pendingLines.size() - 1), e.getMessage()),
+                                 maxReportedErrors);
+            }
+            pending.clear();
+            pendingLines.clear();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.airebate.service;
+
+import com.airebate.model.BillingResult;
+import com.airebate.repository.BillingResultRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 账单数据写入服务
+ * 保存账单记录并在同一事务中增量更新账单日汇总。
+ * 记录按块写入：每块通过JDBC批量插入后flush并清空持久化上下文，大批量导入时内存占用保持平稳
+ */
+@Service
+public class BillingIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BillingIngestionService.class);
+
+    @Autowired
+    private BillingResultRepository billingResultRepository;
+
+    @Autowired
+    private BillingRollupService billingRollupService;
+
+    @Autowired
+    private RecommendationCache recommendationCache;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // 每块记录数，应为hibernate.jdbc.batch_size的整数倍
+    @Value("${ai.rebate.ingest.chunk-size:1000}")
+    private int chunkSize;
+
+    /**
+     * 保存账单记录，并使相关客户的近端缓存推荐失效
+     */
+    @Transactional
+    public List<BillingResult> ingest(List<BillingResult> billingResults) {
+        long start = System.currentTimeMillis();
+        List<BillingResult> saved = new ArrayList<>(billingResults.size());
+        for (int from = 0; from < billingResults.size(); from += chunkSize) {
+            List<BillingResult> chunk = billingResults.subList(from, Math.min(billingResults.size(), from + chunkSize));
+            saved.addAll(ingestChunk(chunk));
+        }
+        
+        Set<Long> customerIds = new HashSet<>();
+        for (BillingResult billingResult : saved) {
+            customerIds.add(billingResult.getCustomer().getId());
+        }
+        recommendationCache.invalidateCustomers(customerIds);
+
+        long elapsed = System.currentTimeMillis() - start;
+        if (saved.size() > chunkSize) {
+            logger.info("写入账单记录 {} 条，耗时 {} ms", saved.size(), elapsed);
+        } else {
+            logger.debug("写入账单记录 {} 条，耗时 {} ms", saved.size(), elapsed);
+        }
+        return saved;
+    }
+
+    /**
+     * 写入一块记录，需在事务中调用
+     */
+    private List<BillingResult> ingestChunk(List<BillingResult> chunk) {
+        List<BillingResult> saved = billingResultRepository.saveAll(chunk);
+        billingRollupService.applyIngested(saved);
+        entityManager.flush();
+        entityManager.clear();
+        return saved;
+    }
+}
@@ -0,0 +1,178 @@
+package com.airebate.service;
+
+import com.airebate.model.BillingDailyRollup;
+import com.airebate.model.BillingResult;
+import com.airebate.model.Currency;
+import com.airebate.model.Customer;
+import com.airebate.repository.BillingDailyRollupRepository;
+import com.airebate.repository.BillingResultRepository;
+import com.airebate.repository.CustomerRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 账单日汇总服务
+ * 写入账单时增量维护按客户/货币/日期预聚合的日汇总，并提供全量重建，
+ * 推荐时由日汇总合并得到历史特征向量
+ */
+@Service
+public class BillingRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BillingRollupService.class);
+
+    @Autowired
+    private BillingDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private BillingResultRepository billingResultRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${ai.rebate.batch.query-chunk-size:1000}")
+    private int queryChunkSize;
+
+    private TransactionTemplate writeTransaction;
+
+    @PostConstruct
+    public void initTransactionTemplate() {
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 将新写入的账单记录累加到日汇总
+     * 应与账单写入在同一事务中调用，已存在的日汇总加锁后更新，避免并发写入丢失。
+     * 日汇总行尚不存在时无行可锁，先按ID顺序锁定涉及的客户，同一客户的并发写入依次新增或更新，
+     * 不会因重复插入同一客户/货币/日期触发唯一约束而回滚整块
+     */
+    @Transactional
+    public void applyIngested(Collection<BillingResult> billingResults) {
+        if (billingResults.isEmpty()) {
+            return;
+        }
+
+        // 先在内存中按客户/货币/日期聚合本次新增的记录
+        Map<RollupKey, BillingDailyRollup> deltas = new LinkedHashMap<>();
+        Set<Long> customerIds = new TreeSet<>();
+        LocalDate startDate = null;
+        LocalDate endDate = null;
+        for (BillingResult billingResult : billingResults) {
+            RollupKey key = new RollupKey(billingResult.getCustomer().getId(),
+                                          billingResult.getCurrency(), billingResult.getBillingDate());
+            deltas.computeIfAbsent(key, k -> new BillingDailyRollup(
+                    billingResult.getCustomer(), billingResult.getCurrency(), billingResult.getBillingDate()))
+                  .add(billingResult);
+            customerIds.add(key.customerId());
+            startDate = startDate == null || key.date().isBefore(startDate) ? key.date() : startDate;
+            endDate = endDate == null || key.date().isAfter(endDate) ? key.date() : endDate;
+        }
+
+        Map<RollupKey, BillingDailyRollup> existing = new HashMap<>();
+        List<Long> ids = new ArrayList<>(customerIds);
+        for (int from = 0; from < ids.size(); from += queryChunkSize) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + queryChunkSize));
+            customerRepository.findForUpdate(chunk);
+            for (BillingDailyRollup rollup : rollupRepository.findForUpdate(chunk, startDate, endDate)) {
+                existing.put(keyOf(rollup), rollup);
+            }
+        }
+
+        List<BillingDailyRollup> created = new ArrayList<>();
+        for (Map.Entry<RollupKey, BillingDailyRollup> entry : deltas.entrySet()) {
+            BillingDailyRollup rollup = existing.get(entry.getKey());
+            if (rollup == null) {
+                created.add(entry.getValue());
+            } else {
+                rollup.merge(entry.getValue());
+            }
+        }
+        rollupRepository.saveAll(created);
+
+        logger.debug("账单日汇总增量更新: 新增 {} 条, 更新 {} 条", created.size(), deltas.size() - created.size());
+    }
+
+    /**
+     * 由日汇总计算客户在指定货币和日期范围内的历史特征
+     */
+    @Transactional(readOnly = true)
+    public BillingFeatureVector loadFeatures(Customer customer, Currency currency,
+                                             LocalDate startDate, LocalDate endDate) {
+        return BillingFeatureVector.fromRollups(
+            rollupRepository.findByCustomerAndCurrencyAndDateRange(customer, currency, startDate, endDate));
+    }
+
+    /**
+     * 批量查找客户集合在日期范围内的日汇总
+     */
+    @Transactional(readOnly = true)
+    public List<BillingDailyRollup> findRollups(Collection<Customer> customers,
+                                                LocalDate startDate, LocalDate endDate) {
+        return rollupRepository.findByCustomersAndDateRange(customers, startDate, endDate);
+    }
+
+    /**
+     * 从原始账单重建全部客户的日汇总，用于历史数据回填
+     * 每个客户在独立事务中重建，返回生成的日汇总数量
+     */
+    public int rebuildAll() {
+        logger.info("开始重建账单日汇总...");
+        int total = 0;
+        for (Customer customer : customerRepository.findAll()) {
+            total += rebuild(customer);
+        }
+        logger.info("账单日汇总重建完成，共 {} 条", total);
+        return total;
+    }
+
+    /**
+     * 从原始账单重建单个客户的日汇总
+     * 先锁定客户，与该客户的增量写入互斥
+     */
+    public int rebuild(Customer customer) {
+        Integer count = writeTransaction.execute(status -> {
+            customerRepository.findForUpdate(List.of(customer.getId()));
+            rollupRepository.deleteByCustomer(customer);
+
+            Map<RollupKey, BillingDailyRollup> rollups = new LinkedHashMap<>();
+            for (BillingResult billingResult : billingResultRepository.findByCustomer(customer)) {
+                rollups.computeIfAbsent(
+                        new RollupKey(customer.getId(), billingResult.getCurrency(), billingResult.getBillingDate()),
+                        key -> new BillingDailyRollup(customer, key.currency(), key.date()))
+                       .add(billingResult);
+            }
+            rollupRepository.saveAll(rollups.values());
+            return rollups.size();
+        });
+        logger.debug("客户 {} 的账单日汇总重建完成，共 {} 条", customer.getCustomerCode(), count);
+        return count == null ? 0 : count;
+    }
+
+    private static RollupKey keyOf(BillingDailyRollup rollup) {
+        return new RollupKey(rollup.getCustomer().getId(), rollup.getCurrency(), rollup.getBillingDate());
+    }
+
+    /**
+     * 客户/货币/日期组合键
+     */
+    private record RollupKey(Long customerId, Currency currency, LocalDate date) {}
+}
@@ -0,0 +1,278 @@
+package com.airebate.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个LLM服务提供商的健康状态
+ * 缓存后台探测的可达性结果，并根据最近调用的失败率和慢调用率维护熔断器状态
+ * （CLOSED → OPEN → HALF_OPEN → CLOSED/OPEN）
+ */
+public class LLMProviderHealth {
+
+    /**
+     * 熔断器状态
+     */
+    public enum CircuitState {
+        CLOSED,    // 正常放行
+        OPEN,      // 熔断中，拒绝调用
+        HALF_OPEN  // 试探中，只放行有限次调用
+    }
+
+    /**
+     * 熔断器参数
+     */
+    public static class Settings {
+        private final int windowSize;
+        private final int minimumCalls;
+        private final double failureRateThreshold;
+        private final long slowCallThresholdMillis;
+        private final double slowCallRateThreshold;
+        private final long openDurationMillis;
+        private final int halfOpenMaxCalls;
+
+        public Settings(int windowSize, int minimumCalls, double failureRateThreshold,
+                        long slowCallThresholdMillis, double slowCallRateThreshold,
+                        long openDurationMillis, int halfOpenMaxCalls) {
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallThresholdMillis = slowCallThresholdMillis;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.openDurationMillis = openDurationMillis;
+            this.halfOpenMaxCalls = halfOpenMaxCalls;
+        }
+    }
+
+    private final String provider;
+    private final Settings settings;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 后台探测结果，null表示尚未探测
+    private volatile Boolean reachable;
+    private volatile long lastProbeAt;
+
+    // 最近成功调用耗时的环形窗口，用于估算延迟分位数
+    private static final int LATENCY_WINDOW_SIZE = 100;
+    private final long[] latencies = new long[LATENCY_WINDOW_SIZE];
+    private int latencyCount;
+    private int latencyIndex;
+
+    // 最近调用结果的环形窗口
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int windowCount;
+    private int windowIndex;
+
+    private CircuitState state = CircuitState.CLOSED;
+    private long openedAt;
+    private int halfOpenInFlight;
+    private int halfOpenSucceeded;
+
+    public LLMProviderHealth(String provider, Settings settings) {
+        this.provider = provider;
+        this.settings = settings;
+        this.failures = new boolean[settings.windowSize];
+        this.slowCalls = new boolean[settings.windowSize];
+    }
+
+    /**
+     * 记录后台探测结果
+     */
+    public void recordProbe(boolean available) {
+        this.reachable = available;
+        this.lastProbeAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 服务当前是否可以接受调用（不占用半开状态的试探名额）
+     * 尚未探测时乐观地视为可达，由熔断器兜底
+     */
+    public boolean isAvailable() {
+        if (Boolean.FALSE.equals(reachable)) {
+            return false;
+        }
+        lock.lock();
+        try {
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> System.currentTimeMillis() - openedAt >= settings.openDurationMillis;
+                case HALF_OPEN -> halfOpenInFlight < settings.halfOpenMaxCalls;
+            };
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 调用前申请许可，半开状态下占用一个试探名额
+     */
+    public boolean tryAcquirePermission() {
+        lock.lock();
+        try {
+            if (state == CircuitState.OPEN) {
+                if (System.currentTimeMillis() - openedAt < settings.openDurationMillis) {
+                    return false;
+                }
+                transitionTo(CircuitState.HALF_OPEN);
+            }
+            if (state == CircuitState.HALF_OPEN) {
+                if (halfOpenInFlight >= settings.halfOpenMaxCalls) {
+                    return false;
+                }
+                halfOpenInFlight++;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录成功调用
+     */
+    public void recordSuccess(long latencyMillis) {
+        record(false, latencyMillis);
+        // 调用成功说明服务可达，不必等待下一次探测
+        this.reachable = true;
+    }
+
+    /**
+     * 记录失败调用
+     */
+    public void recordFailure(long latencyMillis) {
+        record(true, latencyMillis);
+    }
+
+    /**
+     * 调用被取消时释放半开状态的试探名额，不计入统计
+     */
+    public void releasePermission() {
+        lock.lock();
+        try {
+            if (state == CircuitState.HALF_OPEN && halfOpenInFlight > 0) {
+                halfOpenInFlight--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean failure, long latencyMillis) {
+        boolean slow = latencyMillis >= settings.slowCallThresholdMillis;
+        lock.lock();
+        try {
+            if (!failure) {
+                latencies[latencyIndex] = latencyMillis;
+                latencyIndex = (latencyIndex + 1) % LATENCY_WINDOW_SIZE;
+                latencyCount = Math.min(latencyCount + 1, LATENCY_WINDOW_SIZE);
+            }
+
+            if (state == CircuitState.HALF_OPEN) {
+                halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+                if (failure || slow) {
+                    transitionTo(CircuitState.OPEN);
+                } else if (++halfOpenSucceeded >= settings.halfOpenMaxCalls) {
+                    transitionTo(CircuitState.CLOSED);
+                }
+                return;
+            }
+
+            failures[windowIndex] = failure;
+            slowCalls[windowIndex] = slow;
+            windowIndex = (windowIndex + 1) % settings.windowSize;
+            windowCount = Math.min(windowCount + 1, settings.windowSize);
+
+            if (state == CircuitState.CLOSED && windowCount >= settings.minimumCalls
+                    && (failureRate() >= settings.failureRateThreshold
+                        || slowCallRate() >= settings.slowCallRateThreshold)) {
+                transitionTo(CircuitState.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void transitionTo(CircuitState newState) {
+        state = newState;
+        halfOpenInFlight = 0;
+        halfOpenSucceeded = 0;
+        if (newState == CircuitState.OPEN) {
+            openedAt = System.currentTimeMillis();
+        }
+        if (newState == CircuitState.CLOSED) {
+            windowCount = 0;
+            windowIndex = 0;
+        }
+    }
+
+    private double failureRate() {
+        return rate(failures);
+    }
+
+    private double slowCallRate() {
+        return rate(slowCalls);
+    }
+
+    private double rate(boolean[] outcomes) {
+        if (windowCount == 0) {
+            return 0.0;
+        }
+        int count = 0;
+        for (int i = 0; i < windowCount; i++) {
+            if (outcomes[i]) {
+                count++;
+            }
+        }
+        return (double) count / windowCount;
+    }
+
+    /**
+     * 最近成功调用耗时的分位数（毫秒），样本不足时返回-1
+     */
+    public long getLatencyPercentile(double percentile) {
+        long[] samples;
+        lock.lock();
+        try {
+            if (latencyCount < settings.minimumCalls) {
+                return -1;
+            }
+            samples = Arrays.copyOf(latencies, latencyCount);
+        } finally {
+            lock.unlock();
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile * samples.length) - 1;
+        return samples[Math.max(0, Math.min(samples.length - 1, index))];
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public Boolean getReachable() {
+        return reachable;
+    }
+
+    public long getLastProbeAt() {
+        return lastProbeAt;
+    }
+
+    public CircuitState getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getFailureRate() {
+        lock.lock();
+        try {
+            return failureRate();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
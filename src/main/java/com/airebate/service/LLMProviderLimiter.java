@@ -0,0 +1,351 @@
+package com.airebate.service;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个LLM服务提供商的准入控制
+ * 并发上限按AIMD自适应调整：调用成功且耗时不超过延迟阈值时加性增加（约每个上限数量的调用加1），
+ * 调用失败或过慢时乘性减小；另按每分钟请求数和token数两个令牌桶限速。
+ * 超过限制的调用排队等待，预计等待超过期限或队列已满时拒绝，由调用方转到其他服务或传统算法；
+ * 被拒绝或取消的调用归还预约的速率配额
+ */
+public class LLMProviderLimiter {
+
+    /**
+     * 准入控制参数
+     */
+    public static class Settings {
+        private final int initialLimit;
+        private final int minLimit;
+        private final int maxLimit;
+        private final long latencyThresholdMillis;
+        private final double backoffRatio;
+        private final long queueTimeoutMillis;
+        private final int maxQueueSize;
+
+        public Settings(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis,
+                        double backoffRatio, long queueTimeoutMillis, int maxQueueSize) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.latencyThresholdMillis = latencyThresholdMillis;
+            this.backoffRatio = backoffRatio;
+            this.queueTimeoutMillis = queueTimeoutMillis;
+            this.maxQueueSize = maxQueueSize;
+        }
+    }
+
+    private final String provider;
+    private final Settings settings;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 每分钟请求数和token数的令牌桶，null表示不限
+    private final TokenBucket requestBucket;
+    private final TokenBucket tokenBucket;
+
+    private double limit;
+    private int inFlight;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    // 等待令牌桶补充的调用数
+    private final AtomicInteger rateWaiting = new AtomicInteger();
+
+    /**
+     * @param requestsPerMinute 每分钟请求数上限，0表示不限
+     * @param tokensPerMinute 每分钟token数上限，0表示不限
+     */
+    public LLMProviderLimiter(String provider, Settings settings, double requestsPerMinute, double tokensPerMinute) {
+        this.provider = provider;
+        this.settings = settings;
+        this.limit = Math.max(settings.minLimit, Math.min(settings.maxLimit, settings.initialLimit));
+        long now = System.nanoTime();
+        this.requestBucket = requestsPerMinute > 0 ? new TokenBucket(requestsPerMinute, now) : null;
+        this.tokenBucket = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute, now) : null;
+    }
+
+    /**
+     * 申请一次调用的许可，许可可用时发出true，超过等待期限或队列已满时发出false。
+     * 发出true后调用方必须在调用结束时调用release；发出false或在发出前被取消时归还预约的速率配额
+     * @param tokens 本次调用预计消耗的token数
+     */
+    public Mono<Boolean> acquire(int tokens) {
+        return Mono.defer(() -> {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.queueTimeoutMillis);
+            long rateWaitNanos = reserveRate(tokens);
+            if (rateWaitNanos < 0) {
+                return Mono.just(false);
+            }
+            Mono<Boolean> slot;
+            if (rateWaitNanos == 0) {
+                slot = acquireSlot(deadline);
+            } else {
+                rateWaiting.incrementAndGet();
+                slot = Mono.delay(Duration.ofNanos(rateWaitNanos))
+                        .doFinally(signal -> rateWaiting.decrementAndGet())
+                        .then(acquireSlot(deadline));
+            }
+            AtomicBoolean settled = new AtomicBoolean();
+            return slot
+                    .doOnNext(admitted -> {
+                        if (settled.compareAndSet(false, true) && !admitted) {
+                            refundRate(tokens);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (settled.compareAndSet(false, true)) {
+                            refundRate(tokens);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 调用结束后归还并发许可，并放行队列中的等待者
+     */
+    public void release() {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            granted = grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+        granted.forEach(waiter -> waiter.sink.success(true));
+    }
+
+    /**
+     * 记录一次调用结果，调整并发上限
+     * 只有在并发量接近上限时才增加，避免低负载时上限无限增长
+     */
+    public void recordSample(boolean success, long latencyMillis) {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            if (success && latencyMillis <= settings.latencyThresholdMillis) {
+                if (inFlight * 2 >= limit) {
+                    limit = Math.min(settings.maxLimit, limit + 1.0 / limit);
+                }
+            } else {
+                limit = Math.max(settings.minLimit, limit * settings.backoffRatio);
+            }
+            granted = grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+        granted.forEach(waiter -> waiter.sink.success(true));
+    }
+
+    private Mono<Boolean> acquireSlot(long deadline) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            lock.lock();
+            try {
+                if (waiters.isEmpty() && inFlight < (int) limit) {
+                    inFlight++;
+                    waiter.granted = true;
+                } else if (waiters.size() >= settings.maxQueueSize) {
+                    waiter = null;
+                } else {
+                    waiters.add(waiter);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (waiter == null) {
+                sink.success(false);
+                return;
+            }
+            if (waiter.granted) {
+                sink.success(true);
+                return;
+            }
+
+            Waiter queued = waiter;
+            Disposable timer = Schedulers.parallel().schedule(() -> expire(queued),
+                    Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            sink.onDispose(timer);
+            sink.onCancel(() -> cancel(queued));
+        });
+    }
+
+    private void expire(Waiter waiter) {
+        boolean expired;
+        lock.lock();
+        try {
+            expired = waiters.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+        if (expired) {
+            waiter.sink.success(false);
+        }
+    }
+
+    /**
+     * 等待者被取消：仍在队列中时移除；已获得许可但尚未收到通知时归还许可
+     */
+    private void cancel(Waiter waiter) {
+        boolean release;
+        lock.lock();
+        try {
+            release = !waiters.remove(waiter) && waiter.granted;
+        } finally {
+            lock.unlock();
+        }
+        if (release) {
+            release();
+        }
+    }
+
+    /**
+     * 在持有锁时调用，按顺序放行并发量允许的等待者，返回需要在锁外通知的等待者
+     */
+    private List<Waiter> grantWaiters() {
+        List<Waiter> granted = new ArrayList<>();
+        while (!waiters.isEmpty() && inFlight < (int) limit) {
+            Waiter waiter = waiters.poll();
+            waiter.granted = true;
+            inFlight++;
+            granted.add(waiter);
+        }
+        return granted;
+    }
+
+    /**
+     * 从两个令牌桶预约本次调用的配额，返回需要等待的纳秒数；预计等待超过排队期限时不预约，返回-1
+     */
+    private long reserveRate(int tokens) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            long waitNanos = 0;
+            if (requestBucket != null) {
+                waitNanos = requestBucket.waitNanos(1, now);
+            }
+            if (tokenBucket != null) {
+                waitNanos = Math.max(waitNanos, tokenBucket.waitNanos(tokens, now));
+            }
+            if (waitNanos > TimeUnit.MILLISECONDS.toNanos(settings.queueTimeoutMillis)) {
+                return -1;
+            }
+            if (requestBucket != null) {
+                requestBucket.take(1);
+            }
+            if (tokenBucket != null) {
+                tokenBucket.take(tokens);
+            }
+            return waitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 归还未实际发出的调用预约的配额
+     */
+    private void refundRate(int tokens) {
+        lock.lock();
+        try {
+            if (requestBucket != null) {
+                requestBucket.refund(1);
+            }
+            if (tokenBucket != null) {
+                tokenBucket.refund(tokens);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 排队中的调用数：等待并发许可和等待令牌桶补充的调用
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiters.size() + rateWaiting.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+        private final MonoSink<Boolean> sink;
+        // 在持有锁时设置
+        private boolean granted;
+
+        private Waiter(MonoSink<Boolean> sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * 令牌桶：容量为一分钟的配额，按速率连续补充；预约后余量可以为负，之后的预约相应等待更久
+     */
+    private static final class TokenBucket {
+        private final double capacity;
+        private final double perNano;
+        private double available;
+        private long refilledAt;
+
+        private TokenBucket(double perMinute, long now) {
+            this.capacity = perMinute;
+            this.perNano = perMinute / TimeUnit.MINUTES.toNanos(1);
+            this.available = perMinute;
+            this.refilledAt = now;
+        }
+
+        /**
+         * 补充到当前时间，返回取得cost个令牌需要等待的纳秒数；cost超过容量时按容量计算
+         */
+        private long waitNanos(double cost, long now) {
+            available = Math.min(capacity, available + (now - refilledAt) * perNano);
+            refilledAt = now;
+            double needed = Math.min(cost, capacity) - available;
+            return needed <= 0 ? 0 : (long) Math.ceil(needed / perNano);
+        }
+
+        private void take(double cost) {
+            available -= Math.min(cost, capacity);
+        }
+
+        private void refund(double cost) {
+            available = Math.min(capacity, available + Math.min(cost, capacity));
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.airebate.service;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.dto.LLMRecommendationResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LLM响应语义缓存
+ * 缓存键由货币、风险等级区间和量化后的历史指标组成，不包含客户代码，
+ * 使特征相近的客户可以共享同一个LLM响应。容量有界，按LRU和TTL淘汰
+ */
+@Component
+public class LLMResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LLMResponseCache.class);
+
+    // 各指标的量化步长
+    private static final double VOLATILITY_STEP = 0.01;
+    private static final double LIQUIDITY_STEP = 0.5;
+    private static final double MARGIN_STEP = 0.005;
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final int maxSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, CacheEntry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public LLMResponseCache(@Value("${ai.llm.cache.enabled:true}") boolean enabled,
+                            @Value("${ai.llm.cache.ttl:3600}") long ttlSeconds,
+                            @Value("${ai.llm.cache.max-size:10000}") int maxSize,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxSize = maxSize;
+        // 访问顺序的LinkedHashMap，超出容量时淘汰最久未使用的条目
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > LLMResponseCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        FunctionCounter.builder("ai.llm.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("ai.llm.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("ai.llm.cache.evictions", evictions, AtomicLong::get)
+                .tag("cause", "size").register(meterRegistry);
+        FunctionCounter.builder("ai.llm.cache.evictions", expirations, AtomicLong::get)
+                .tag("cause", "expired").register(meterRegistry);
+        Gauge.builder("ai.llm.cache.size", this, LLMResponseCache::size).register(meterRegistry);
+
+        logger.info("LLM响应缓存: enabled={}, ttl={}s, maxSize={}", enabled, ttlSeconds, maxSize);
+    }
+
+    /**
+     * 查找缓存的响应，未命中或已过期时返回null；返回副本，各请求之间不共享响应对象
+     */
+    public LLMRecommendationResponse get(LLMRecommendationRequest request) {
+        if (!enabled) {
+            return null;
+        }
+
+        String key = buildKey(request);
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= now) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.response.copy();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 缓存成功的响应；输出无法解析时使用的默认值不缓存，避免特征相近的客户在TTL内都得到默认推荐。
+     * 流式调用提前返回的响应（completion不为null）尚不完整，不缓存，由调用方在输出结束后缓存完整的响应
+     */
+    public void put(LLMRecommendationRequest request, LLMRecommendationResponse response) {
+        if (!enabled || response == null || !response.isSuccess() || response.isParseFallback()
+                || response.getCompletion() != null) {
+            return;
+        }
+
+        String key = buildKey(request);
+        CacheEntry entry = new CacheEntry(response.copy(), System.currentTimeMillis() + ttlMillis);
+        lock.lock();
+        try {
+            entries.put(key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public CacheStats getStats() {
+        return new CacheStats(enabled, size(), maxSize, hits.get(), misses.get(),
+                              evictions.get(), expirations.get());
+    }
+
+    /**
+     * 构建语义缓存键
+     */
+    String buildKey(LLMRecommendationRequest request) {
+        return String.join("|",
+                String.valueOf(request.getCurrency()),
+                riskBucket(request.getCustomerRiskLevel()),
+                tradingVolumeBucket(request.getCustomerTradingVolume()),
+                quantize(request.getMarketVolatility(), VOLATILITY_STEP),
+                quantize(request.getAvgLiquidityScore(), LIQUIDITY_STEP),
+                quantize(request.getAvgProfitMargin(), MARGIN_STEP),
+                magnitudeBucket(request.getAvgTransactionVolume()),
+                String.valueOf(request.getMinSpread()),
+                String.valueOf(request.getMaxSpread()),
+                String.valueOf(request.getDefaultSpread()));
+    }
+
+    /**
+     * 风险等级区间，与客户特征描述的划分保持一致
+     */
+    private String riskBucket(Double riskLevel) {
+        if (riskLevel == null) {
+            return "risk:-";
+        }
+        if (riskLevel > 1.5) {
+            return "risk:high";
+        }
+        if (riskLevel < 0.8) {
+            return "risk:low";
+        }
+        return "risk:standard";
+    }
+
+    /**
+     * 客户交易量区间，与客户特征描述的划分保持一致
+     */
+    private String tradingVolumeBucket(Double tradingVolume) {
+        if (tradingVolume == null) {
+            return "tv:-";
+        }
+        if (tradingVolume > 50000) {
+            return "tv:high";
+        }
+        if (tradingVolume > 10000) {
+            return "tv:medium";
+        }
+        return "tv:low";
+    }
+
+    private String quantize(BigDecimal value, double step) {
+        if (value == null) {
+            return "-";
+        }
+        return String.valueOf(Math.round(value.doubleValue() / step));
+    }
+
+    /**
+     * 交易量按数量级（以2为底的对数）分桶
+     */
+    private String magnitudeBucket(BigDecimal value) {
+        if (value == null) {
+            return "-";
+        }
+        double v = value.doubleValue();
+        if (v <= 1) {
+            return "0";
+        }
+        return String.valueOf((int) Math.floor(Math.log(v) / Math.log(2)));
+    }
+
+    private static class CacheEntry {
+        private final LLMRecommendationResponse response;
+        private final long expiresAt;
+
+        private CacheEntry(LLMRecommendationResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public static class CacheStats {
+        private final boolean enabled;
+        private final int size;
+        private final int maxSize;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+
+        public CacheStats(boolean enabled, int size, int maxSize, long hits, long misses,
+                          long evictions, long expirations) {
+            this.enabled = enabled;
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getExpirations() {
+            return expirations;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+}
@@ -2,6 +2,11 @@ package com.airebate.service;
 
 import com.airebate.dto.LLMRecommendationRequest;
 import com.airebate.dto.LLMRecommendationResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
 
 /**
  * LLM (大语言模型) 服务接口
@@ -16,12 +21,45 @@ public interface LLMService {
      */
     LLMRecommendationResponse generateRecommendation(LLMRecommendationRequest request);
     
+    /**
+     * 异步生成AI推荐
+     * 默认实现在弹性线程池上执行同步调用，基于HTTP的实现应覆盖为非阻塞调用
+     * @param request LLM推荐请求
+     * @return LLM推荐响应
+     */
+    default Mono<LLMRecommendationResponse> generateRecommendationAsync(LLMRecommendationRequest request) {
+        return Mono.fromCallable(() -> generateRecommendation(request))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    /**
+     * 批量生成AI推荐，返回列表与请求列表一一对应
+     * 默认实现依次调用单个请求的异步接口；远程服务应覆盖为一次调用为多个客户推荐，
+     * 缺失或无效的结果单独回退为单个请求
+     * @param requests LLM推荐请求列表
+     * @return LLM推荐响应列表
+     */
+    default Mono<List<LLMRecommendationResponse>> generateRecommendationsAsync(List<LLMRecommendationRequest> requests) {
+        return Flux.fromIterable(requests)
+                .concatMap(this::generateRecommendationAsync)
+                .collectList();
+    }
+    
     /**
      * 检查LLM服务可用性
      * @return 是否可用
      */
     boolean isAvailable();
     
+    /**
+     * 是否为远程调用的模型服务
+     * 本地计算的服务调用成本低，其响应无需缓存，也不参与对冲和竞速请求
+     * @return 是否远程服务
+     */
+    default boolean isRemote() {
+        return true;
+    }
+    
     /**
      * 获取模型名称
      * @return 模型名称
@@ -33,4 +71,10 @@ public interface LLMService {
      * @return 提供商名称
      */
     String getProvider();
+    
+    /**
+     * 获取提供商配置键，与 ai.llm.provider 的取值对应
+     * @return 提供商配置键
+     */
+    String getProviderKey();
 }
@@ -5,14 +5,34 @@ import com.airebate.dto.LLMRecommendationResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 /**
  * LLM服务管理器
  * 负责管理多个LLM服务实例，提供服务选择和故障转移功能
+ * 支持三种路由模式：sequential（顺序故障转移）、hedged（主服务超过p95延迟未响应时
+ * 向备用服务发送对冲请求）、race（并发调用所有可用服务，取第一个成功响应）
+ * 远程服务的调用经过各自的准入控制（自适应并发上限和每分钟请求数、token数限制），
+ * 超限的调用排队等待，超过等待期限时视为该服务调用失败，转到下一个服务或由调用方使用传统算法
  */
 @Service
 public class LLMServiceManager {
@@ -25,18 +45,160 @@ public class LLMServiceManager {
     @Value("${ai.llm.fallback-enabled:true}")
     private boolean fallbackEnabled;
 
+    // 单个服务健康检查的超时时间，超时视为不可用
+    @Value("${ai.llm.health.probe-timeout:3000}")
+    private long probeTimeout;
+
+    @Value("${ai.llm.routing.hedge-delay-default:2000}")
+    private long hedgeDelayDefault;
+
+    @Value("${ai.llm.routing.hedge-delay-min:200}")
+    private long hedgeDelayMin;
+
+    @Value("${ai.llm.routing.hedge-delay-max:10000}")
+    private long hedgeDelayMax;
+
+    // 准入控制中每次调用预计消耗的token数（提示词与输出合计），批量调用按客户数累计
+    @Value("${ai.llm.limiter.estimated-tokens-per-request:1500}")
+    private int estimatedTokensPerRequest;
+
+    /**
+     * 路由模式
+     */
+    public enum RoutingMode {
+        SEQUENTIAL, // 主服务失败后依次尝试其他服务
+        HEDGED,     // 主服务超过延迟阈值未响应时并发调用备用服务
+        RACE        // 并发调用所有可用服务
+    }
+
+    // 对冲延迟取主服务最近成功调用的该分位数
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    // 有截止时间时，服务最近成功调用的该分位数耗时超过剩余时间则跳过该服务
+    private static final double DEADLINE_PERCENTILE = 0.5;
+
+    /**
+     * Reactor上下文键：值为true时表示后台任务发起的调用，调用远程服务前按服务提供商限速
+     */
+    public static final String BACKGROUND_CONTEXT_KEY = "ai.llm.background";
+
     private final List<LLMService> llmServices;
 
-    public LLMServiceManager(List<LLMService> llmServices) {
-        this.llmServices = llmServices;
-        logger.info("初始化LLM服务管理器，发现 {} 个服务实例", llmServices.size());
+    private final RoutingMode routingMode;
+
+    private final LLMResponseCache responseCache;
+
+    private final ProviderRateLimiter rateLimiter;
+
+    private final RecommendationMetrics metrics;
+
+    // 每个服务的健康状态和熔断器
+    private final Map<LLMService, LLMProviderHealth> healthByService = new IdentityHashMap<>();
+
+    // 是否有一轮健康检查正在进行
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    // 每个远程服务的准入控制，未启用时为空
+    private final Map<LLMService, LLMProviderLimiter> limiterByService = new IdentityHashMap<>();
+
+    public LLMServiceManager(List<LLMService> llmServices, LLMResponseCache responseCache,
+                             ProviderRateLimiter rateLimiter, RecommendationMetrics metrics, Environment environment,
+                             @Value("${ai.llm.provider:fallback}") String primaryProvider,
+                             @Value("${ai.llm.routing.mode:sequential}") String routingMode,
+                             @Value("${ai.llm.circuit-breaker.window-size:20}") int windowSize,
+                             @Value("${ai.llm.circuit-breaker.minimum-calls:5}") int minimumCalls,
+                             @Value("${ai.llm.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+                             @Value("${ai.llm.circuit-breaker.slow-call-threshold:20000}") long slowCallThreshold,
+                             @Value("${ai.llm.circuit-breaker.slow-call-rate-threshold:0.8}") double slowCallRateThreshold,
+                             @Value("${ai.llm.circuit-breaker.open-duration:30000}") long openDuration,
+                             @Value("${ai.llm.circuit-breaker.half-open-calls:2}") int halfOpenCalls,
+                             @Value("${ai.llm.limiter.enabled:true}") boolean limiterEnabled,
+                             @Value("${ai.llm.limiter.initial-limit:10}") int initialLimit,
+                             @Value("${ai.llm.limiter.min-limit:1}") int minLimit,
+                             @Value("${ai.llm.limiter.max-limit:50}") int maxLimit,
+                             @Value("${ai.llm.limiter.latency-threshold:10000}") long latencyThreshold,
+                             @Value("${ai.llm.limiter.backoff-ratio:0.9}") double backoffRatio,
+                             @Value("${ai.llm.limiter.queue-timeout:2000}") long queueTimeout,
+                             @Value("${ai.llm.limiter.max-queue-size:100}") int maxQueueSize) {
+        // 配置的主要服务排在最前，本地降级服务排在最后
+        List<LLMService> ordered = new ArrayList<>(llmServices);
+        ordered.sort(Comparator.comparingInt(service -> servicePriority(service, primaryProvider)));
+        this.llmServices = ordered;
+        this.responseCache = responseCache;
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+        this.routingMode = RoutingMode.valueOf(routingMode.trim().toUpperCase(Locale.ROOT));
+        logger.info("初始化LLM服务管理器，发现 {} 个服务实例，路由模式: {}", llmServices.size(), this.routingMode);
         
+        LLMProviderHealth.Settings settings = new LLMProviderHealth.Settings(
+                windowSize, minimumCalls, failureRateThreshold, slowCallThreshold,
+                slowCallRateThreshold, openDuration, halfOpenCalls);
+        
+        LLMProviderLimiter.Settings limiterSettings = new LLMProviderLimiter.Settings(
+                initialLimit, minLimit, maxLimit, latencyThreshold, backoffRatio, queueTimeout, maxQueueSize);
+
         // 记录所有可用的服务
-        for (LLMService service : llmServices) {
+        for (LLMService service : this.llmServices) {
             logger.info("注册LLM服务: {} - {}", service.getProvider(), service.getModelName());
+            healthByService.put(service, new LLMProviderHealth(service.getProvider(), settings));
+            if (limiterEnabled && service.isRemote()) {
+                // 每分钟请求数和token数按服务提供商配置，如 ai.llm.openai.requests-per-minute
+                String prefix = "ai.llm." + service.getProviderKey() + ".";
+                LLMProviderLimiter limiter = new LLMProviderLimiter(service.getProvider(), limiterSettings,
+                        environment.getProperty(prefix + "requests-per-minute", Double.class, 0.0),
+                        environment.getProperty(prefix + "tokens-per-minute", Double.class, 0.0));
+                limiterByService.put(service, limiter);
+                metrics.registerProviderLimiter(service.getProviderKey(), limiter);
+            }
         }
     }
 
+    private static int servicePriority(LLMService service, String primaryProvider) {
+        if (service.getProviderKey().equalsIgnoreCase(primaryProvider)) {
+            return 0;
+        }
+        return service.isRemote() ? 1 : 2;
+    }
+
+    /**
+     * 后台探测所有服务的可用性
+     * 请求路径只读取缓存的探测结果，不再同步发起健康检查。
+     * 探测在弹性线程池上并行执行，定时任务线程只负责发起，不会被无法连接的服务阻塞；
+     * 上一轮探测尚未结束时跳过本轮
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${ai.llm.health.probe-interval:15000}")
+    public void probeServices() {
+        if (!probing.compareAndSet(false, true)) {
+            logger.debug("上一轮LLM服务健康检查尚未结束，跳过本轮");
+            return;
+        }
+        probeAll().doFinally(signal -> probing.set(false)).subscribe();
+    }
+
+    /**
+     * 并行探测所有服务，每个服务的检查受超时时间限制，全部记录后完成
+     */
+    Mono<Void> probeAll() {
+        return Flux.fromIterable(llmServices)
+                .flatMap(service -> Mono.fromCallable(service::isAvailable)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .timeout(Duration.ofMillis(probeTimeout))
+                        .onErrorResume(e -> {
+                            logger.warn("LLM服务 {} 健康检查异常: {}", service.getProvider(), e.getMessage());
+                            return Mono.just(false);
+                        })
+                        .doOnNext(available -> recordProbe(service, available)))
+                .then();
+    }
+
+    private void recordProbe(LLMService service, boolean available) {
+        LLMProviderHealth health = healthByService.get(service);
+        if (!Boolean.valueOf(available).equals(health.getReachable())) {
+            logger.info("LLM服务 {} 可用性变化: {}", service.getProvider(), available ? "可用" : "不可用");
+        }
+        health.recordProbe(available);
+    }
+
     /**
      * 生成推荐
      * 优先使用配置的主要服务，失败时自动切换到其他可用服务
@@ -47,13 +209,26 @@ public class LLMServiceManager {
             return LLMRecommendationResponse.error("LLM服务已禁用");
         }
 
+        // 对冲和竞速模式需要并发调用，统一走异步调用链
+        if (routingMode != RoutingMode.SEQUENTIAL) {
+            return generateRecommendationAsync(request).block();
+        }
+
+        // 相似请求命中缓存时直接返回
+        LLMRecommendationResponse cached = responseCache.get(request);
+        if (cached != null) {
+            logger.info("命中LLM响应缓存，客户: {}", request.getCustomerCode());
+            return cached;
+        }
+
         // 尝试使用主要服务
         Optional<LLMService> primaryService = getPrimaryService();
         if (primaryService.isPresent()) {
             try {
-                LLMRecommendationResponse response = primaryService.get().generateRecommendation(request);
+                LLMRecommendationResponse response = invokeService(primaryService.get(), request);
                 if (response.isSuccess()) {
                     logger.info("主要LLM服务 {} 成功生成推荐", primaryService.get().getProvider());
+                    cacheResponse(primaryService.get(), request, response);
                     return response;
                 }
                 logger.warn("主要LLM服务返回失败响应: {}", response.getErrorMessage());
@@ -69,12 +244,13 @@ public class LLMServiceManager {
                     continue; // 跳过已经尝试过的主要服务
                 }
 
-                if (service.isAvailable()) {
+                if (isServiceAvailable(service)) {
                     try {
                         logger.info("尝试使用备用LLM服务: {}", service.getProvider());
-                        LLMRecommendationResponse response = service.generateRecommendation(request);
+                        LLMRecommendationResponse response = invokeService(service, request);
                         if (response.isSuccess()) {
                             logger.info("备用LLM服务 {} 成功生成推荐", service.getProvider());
+                            cacheResponse(service, request, response);
                             return response;
                         }
                     } catch (Exception e) {
@@ -89,12 +265,436 @@ public class LLMServiceManager {
         return LLMRecommendationResponse.error("所有LLM服务都不可用");
     }
 
+    /**
+     * 异步生成推荐
+     * 按配置的路由模式选择服务，整个调用链不占用调用线程
+     */
+    public Mono<LLMRecommendationResponse> generateRecommendationAsync(LLMRecommendationRequest request) {
+        if (!llmEnabled) {
+            logger.info("LLM服务已禁用，跳过LLM推荐");
+            return Mono.just(LLMRecommendationResponse.error("LLM服务已禁用"));
+        }
+
+        LLMRecommendationResponse cached = responseCache.get(request);
+        if (cached != null) {
+            logger.info("命中LLM响应缓存，客户: {}", request.getCustomerCode());
+            return Mono.just(cached);
+        }
+
+        return switch (routingMode) {
+            case HEDGED -> generateHedgedAsync(request);
+            case RACE -> generateRaceAsync(request);
+            case SEQUENTIAL -> generateSequentialAsync(request);
+        };
+    }
+
+    /**
+     * 批量生成推荐，返回列表与请求列表一一对应
+     * 命中缓存的项直接返回，其余由第一个可用的远程服务在一次调用中完成；
+     * 批量调用失败或其中失败的项，按路由模式单独生成（包括故障转移）
+     */
+    public Mono<List<LLMRecommendationResponse>> generateRecommendationsAsync(List<LLMRecommendationRequest> requests) {
+        if (!llmEnabled) {
+            logger.info("LLM服务已禁用，跳过LLM推荐");
+            return Mono.just(requests.stream().map(request -> LLMRecommendationResponse.error("LLM服务已禁用")).toList());
+        }
+
+        List<LLMRecommendationResponse> responses = new ArrayList<>(requests.size());
+        List<Integer> uncachedIndexes = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            LLMRecommendationResponse cached = responseCache.get(requests.get(i));
+            responses.add(cached);
+            if (cached == null) {
+                uncachedIndexes.add(i);
+            }
+        }
+
+        Optional<LLMService> primaryService = getPrimaryService();
+        if (uncachedIndexes.size() < 2 || primaryService.isEmpty() || !primaryService.get().isRemote()) {
+            return completeIndividually(requests, responses);
+        }
+
+        LLMService primary = primaryService.get();
+        List<LLMRecommendationRequest> uncached = uncachedIndexes.stream().map(requests::get).toList();
+        return callServiceBatchAsync(primary, uncached)
+                .flatMap(batch -> {
+                    int succeeded = 0;
+                    for (int i = 0; i < uncached.size(); i++) {
+                        LLMRecommendationResponse response = batch.get(i);
+                        if (response.isSuccess()) {
+                            cacheResponse(primary, uncached.get(i), response);
+                            responses.set(uncachedIndexes.get(i), response);
+                            succeeded++;
+                        }
+                    }
+                    logger.info("LLM服务 {} 批量生成推荐: 成功 {}/{}", primary.getProvider(), succeeded, uncached.size());
+                    return completeIndividually(requests, responses);
+                });
+    }
+
+    /**
+     * 对尚无响应的项逐个按路由模式生成
+     */
+    private Mono<List<LLMRecommendationResponse>> completeIndividually(List<LLMRecommendationRequest> requests,
+                                                                      List<LLMRecommendationResponse> responses) {
+        return Flux.range(0, requests.size())
+                .concatMap(i -> responses.get(i) != null ?
+                        Mono.just(responses.get(i)) : generateRecommendationAsync(requests.get(i)))
+                .collectList();
+    }
+
+    /**
+     * 顺序故障转移：与同步版本的尝试顺序一致
+     */
+    private Mono<LLMRecommendationResponse> generateSequentialAsync(LLMRecommendationRequest request) {
+        Optional<LLMService> primaryService = getPrimaryService();
+        if (primaryService.isEmpty()) {
+            return tryFallbackServicesAsync(request, attemptedSet(List.of()), 0);
+        }
+        LLMService primary = primaryService.get();
+        return callServiceAsync(primary, request)
+                .flatMap(response -> {
+                    if (response.isSuccess()) {
+                        logger.info("主要LLM服务 {} 成功生成推荐", primary.getProvider());
+                        cacheResponse(primary, request, response);
+                        return Mono.just(response);
+                    }
+                    logger.warn("主要LLM服务返回失败响应: {}", response.getErrorMessage());
+                    return tryFallbackServicesAsync(request, attemptedSet(List.of(primary)), 0);
+                });
+    }
+
+    /**
+     * 对冲请求：先调用主要服务，若超过对冲延迟仍未响应（或已失败），
+     * 再并发调用第二个远程服务，取先成功的响应并取消另一个调用
+     */
+    private Mono<LLMRecommendationResponse> generateHedgedAsync(LLMRecommendationRequest request) {
+        List<LLMService> candidates = availableRemoteServices();
+        if (candidates.size() < 2) {
+            return generateSequentialAsync(request);
+        }
+
+        LLMService primary = candidates.get(0);
+        LLMService secondary = candidates.get(1);
+        long delay = hedgeDelay(primary);
+
+        // 主要服务失败时立即触发对冲，不必等到延迟结束
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        Mono<LLMRecommendationResponse> primaryCall = callForSuccess(primary, request)
+                .doOnError(e -> primaryFailed.tryEmitEmpty());
+        Mono<LLMRecommendationResponse> hedgeCall = Mono.firstWithSignal(
+                        Mono.delay(Duration.ofMillis(delay)).then(), primaryFailed.asMono())
+                .then(Mono.defer(() -> {
+                    logger.info("LLM服务 {} 在 {}ms 内未成功响应，对冲调用 {}",
+                            primary.getProvider(), delay, secondary.getProvider());
+                    return callForSuccess(secondary, request);
+                }));
+
+        return Mono.firstWithValue(primaryCall, hedgeCall)
+                .onErrorResume(e -> tryFallbackServicesAsync(request, attemptedSet(candidates.subList(0, 2)), 0));
+    }
+
+    /**
+     * 竞速：并发调用所有可用的远程服务，取第一个成功的响应并取消其余调用
+     */
+    private Mono<LLMRecommendationResponse> generateRaceAsync(LLMRecommendationRequest request) {
+        List<LLMService> candidates = availableRemoteServices();
+        if (candidates.size() < 2) {
+            return generateSequentialAsync(request);
+        }
+
+        List<Mono<LLMRecommendationResponse>> calls = candidates.stream()
+                .map(service -> callForSuccess(service, request))
+                .toList();
+        return Mono.firstWithValue(calls)
+                .onErrorResume(e -> tryFallbackServicesAsync(request, attemptedSet(candidates), 0));
+    }
+
+    /**
+     * 调用单个服务，仅在成功时发出响应，失败响应转换为错误信号，
+     * 供并发调用时选取第一个成功结果
+     */
+    private Mono<LLMRecommendationResponse> callForSuccess(LLMService service, LLMRecommendationRequest request) {
+        return callServiceAsync(service, request)
+                .flatMap(response -> {
+                    if (!response.isSuccess()) {
+                        logger.warn("LLM服务 {} 返回失败响应: {}", service.getProvider(), response.getErrorMessage());
+                        return Mono.error(new IllegalStateException(response.getErrorMessage()));
+                    }
+                    logger.info("LLM服务 {} 成功生成推荐", service.getProvider());
+                    cacheResponse(service, request, response);
+                    return Mono.just(response);
+                });
+    }
+
+    /**
+     * 对冲延迟：主要服务最近成功调用的p95耗时，样本不足时使用默认值
+     */
+    private long hedgeDelay(LLMService service) {
+        long p95 = healthByService.get(service).getLatencyPercentile(HEDGE_PERCENTILE);
+        if (p95 < 0) {
+            return hedgeDelayDefault;
+        }
+        return Math.max(hedgeDelayMin, Math.min(hedgeDelayMax, p95));
+    }
+
+    /**
+     * 当前可用的远程服务，按优先级排序
+     */
+    private List<LLMService> availableRemoteServices() {
+        return llmServices.stream()
+                .filter(LLMService::isRemote)
+                .filter(this::isServiceAvailable)
+                .toList();
+    }
+
+    private Set<LLMService> attemptedSet(List<LLMService> services) {
+        Set<LLMService> attempted = Collections.newSetFromMap(new IdentityHashMap<>());
+        attempted.addAll(services);
+        return attempted;
+    }
+
+    /**
+     * 依次尝试尚未调用过的备用服务（异步）
+     */
+    private Mono<LLMRecommendationResponse> tryFallbackServicesAsync(LLMRecommendationRequest request,
+                                                                     Set<LLMService> attempted, int index) {
+        if (!fallbackEnabled || index >= llmServices.size()) {
+            logger.error("所有LLM服务都不可用");
+            return Mono.just(LLMRecommendationResponse.error("所有LLM服务都不可用"));
+        }
+
+        LLMService service = llmServices.get(index);
+        if (attempted.contains(service) || !isServiceAvailable(service)) {
+            return tryFallbackServicesAsync(request, attempted, index + 1);
+        }
+        logger.info("尝试使用备用LLM服务: {}", service.getProvider());
+        return callServiceAsync(service, request)
+                .flatMap(response -> {
+                    if (response.isSuccess()) {
+                        logger.info("备用LLM服务 {} 成功生成推荐", service.getProvider());
+                        cacheResponse(service, request, response);
+                        return Mono.just(response);
+                    }
+                    return tryFallbackServicesAsync(request, attempted, index + 1);
+                });
+    }
+
+    /**
+     * 异步调用单个服务，异常转换为失败响应
+     * 后台任务发起的调用先等待该服务的速率许可；上下文中有截止时间（RequestDeadline）时，
+     * 预计来不及完成的服务直接跳过，调用（包括排队）超过剩余时间则取消，均视为该服务调用失败
+     */
+    private Mono<LLMRecommendationResponse> callServiceAsync(LLMService service, LLMRecommendationRequest request) {
+        LLMProviderHealth health = healthByService.get(service);
+        Mono<LLMRecommendationResponse> call = Mono.defer(() -> {
+            if (!health.tryAcquirePermission()) {
+                return Mono.just(circuitOpenResponse(service));
+            }
+            long start = System.nanoTime();
+            return service.generateRecommendationAsync(request)
+                    .doOnNext(response -> recordOutcome(service, health, response, start))
+                    .doOnError(e -> recordOutcome(service, health, null, start))
+                    .doOnCancel(() -> {
+                        // 对冲或竞速中落败的调用被取消，不计入熔断器统计
+                        health.releasePermission();
+                        metrics.recordLLMCall(service.getProviderKey(), service.getModelName(), "cancelled", start);
+                    });
+        });
+        Mono<LLMRecommendationResponse> admitted = withAdmission(service, estimatedTokensPerRequest, call,
+                () -> throttledResponse(service));
+        return Mono.deferContextual(context -> {
+                    Mono<LLMRecommendationResponse> bounded = admitted;
+                    RequestDeadline deadline = RequestDeadline.from(context);
+                    if (deadline != null) {
+                        long remaining = deadline.remainingMillis();
+                        long expected = health.getLatencyPercentile(DEADLINE_PERCENTILE);
+                        if (remaining <= 0 || expected > remaining) {
+                            return Mono.just(deadlineSkippedResponse(service, remaining, expected));
+                        }
+                        bounded = admitted.timeout(Duration.ofMillis(remaining));
+                    }
+                    boolean background = context.getOrDefault(BACKGROUND_CONTEXT_KEY, false);
+                    return background && service.isRemote()
+                            ? rateLimiter.acquire(service.getProviderKey()).then(bounded)
+                            : bounded;
+                })
+                .onErrorResume(e -> {
+                    logger.error("LLM服务 {} 调用失败", service.getProvider(), e);
+                    return Mono.just(LLMRecommendationResponse.error(e.getMessage()));
+                });
+    }
+
+    /**
+     * 经过服务的准入控制后执行调用，调用结束（包括取消）时归还并发许可；未获准入时返回rejected给出的响应
+     */
+    private <T> Mono<T> withAdmission(LLMService service, int tokens, Mono<T> call, Supplier<T> rejected) {
+        LLMProviderLimiter limiter = limiterByService.get(service);
+        if (limiter == null) {
+            return call;
+        }
+        return limiter.acquire(tokens)
+                .flatMap(admitted -> admitted
+                        ? call.doFinally(signal -> limiter.release())
+                        : Mono.fromSupplier(rejected));
+    }
+
+    /**
+     * 异步批量调用单个服务，整个批次计为一次调用，至少一项成功即记为成功
+     * 异常转换为每项的失败响应；后台任务发起的调用先等待该服务的速率许可
+     */
+    private Mono<List<LLMRecommendationResponse>> callServiceBatchAsync(LLMService service,
+                                                                       List<LLMRecommendationRequest> requests) {
+        LLMProviderHealth health = healthByService.get(service);
+        Mono<List<LLMRecommendationResponse>> call = Mono.defer(() -> {
+            if (!health.tryAcquirePermission()) {
+                return Mono.just(Collections.nCopies(requests.size(), circuitOpenResponse(service)));
+            }
+            long start = System.nanoTime();
+            return service.generateRecommendationsAsync(requests)
+                    .doOnNext(responses -> recordOutcome(service, health, responses.stream()
+                            .filter(LLMRecommendationResponse::isSuccess)
+                            .min(Comparator.comparing(LLMRecommendationResponse::isParseFallback))
+                            .orElse(null), start))
+                    .doOnError(e -> recordOutcome(service, health, null, start))
+                    .doOnCancel(() -> {
+                        health.releasePermission();
+                        metrics.recordLLMCall(service.getProviderKey(), service.getModelName(), "cancelled", start);
+                    });
+        });
+        Mono<List<LLMRecommendationResponse>> admitted = withAdmission(service,
+                estimatedTokensPerRequest * requests.size(), call,
+                () -> Collections.nCopies(requests.size(), throttledResponse(service)));
+        return Mono.deferContextual(context -> {
+                    boolean background = context.getOrDefault(BACKGROUND_CONTEXT_KEY, false);
+                    return background && service.isRemote()
+                            ? rateLimiter.acquire(service.getProviderKey()).then(admitted)
+                            : admitted;
+                })
+                .onErrorResume(e -> {
+                    logger.error("LLM服务 {} 批量调用失败", service.getProvider(), e);
+                    return Mono.just(Collections.nCopies(requests.size(), LLMRecommendationResponse.error(e.getMessage())));
+                });
+    }
+
+    /**
+     * 同步调用单个服务并记录熔断器统计
+     */
+    private LLMRecommendationResponse invokeService(LLMService service, LLMRecommendationRequest request) {
+        LLMProviderLimiter limiter = limiterByService.get(service);
+        if (limiter != null && !Boolean.TRUE.equals(limiter.acquire(estimatedTokensPerRequest).block())) {
+            return throttledResponse(service);
+        }
+        try {
+            LLMProviderHealth health = healthByService.get(service);
+            if (!health.tryAcquirePermission()) {
+                return circuitOpenResponse(service);
+            }
+            long start = System.nanoTime();
+            try {
+                LLMRecommendationResponse response = service.generateRecommendation(request);
+                recordOutcome(service, health, response, start);
+                return response;
+            } catch (RuntimeException e) {
+                recordOutcome(service, health, null, start);
+                throw e;
+            }
+        } finally {
+            if (limiter != null) {
+                limiter.release();
+            }
+        }
+    }
+
+    /**
+     * 记录调用结果到熔断器统计和调用指标，response为null表示调用异常
+     * 解析回退的响应只有默认值，对熔断器和准入控制计为失败，持续输出无法解析的服务同样会被熔断
+     */
+    private void recordOutcome(LLMService service, LLMProviderHealth health,
+                               LLMRecommendationResponse response, long startNanos) {
+        boolean success = response != null && response.isSuccess();
+        metrics.recordLLMCall(service.getProviderKey(), service.getModelName(),
+                !success ? "failure" : response.isParseFallback() ? "parse_fallback" : "success", startNanos);
+
+        boolean healthy = success && !response.isParseFallback();
+        long latencyMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        LLMProviderLimiter limiter = limiterByService.get(service);
+        if (limiter != null) {
+            limiter.recordSample(healthy, latencyMillis);
+        }
+        LLMProviderHealth.CircuitState before = health.getState();
+        if (healthy) {
+            health.recordSuccess(latencyMillis);
+        } else {
+            health.recordFailure(latencyMillis);
+        }
+        LLMProviderHealth.CircuitState after = health.getState();
+        if (before != after) {
+            logger.warn("LLM服务 {} 熔断器状态变化: {} -> {}", health.getProvider(), before, after);
+        }
+    }
+
+    private LLMRecommendationResponse circuitOpenResponse(LLMService service) {
+        metrics.recordLLMCall(service.getProviderKey(), service.getModelName(), "rejected", System.nanoTime());
+        return LLMRecommendationResponse.error("LLM服务 " + service.getProvider() + " 熔断中");
+    }
+
+    private LLMRecommendationResponse deadlineSkippedResponse(LLMService service, long remainingMillis,
+                                                              long expectedMillis) {
+        metrics.recordLLMCall(service.getProviderKey(), service.getModelName(), "skipped", System.nanoTime());
+        logger.warn("LLM服务 {} 预计耗时 {}ms，剩余时间 {}ms，跳过", service.getProvider(), expectedMillis, remainingMillis);
+        return LLMRecommendationResponse.error("剩余时间不足，跳过LLM服务 " + service.getProvider());
+    }
+
+    private LLMRecommendationResponse throttledResponse(LLMService service) {
+        metrics.recordLLMCall(service.getProviderKey(), service.getModelName(), "throttled", System.nanoTime());
+        logger.warn("LLM服务 {} 并发或速率超限，排队超时", service.getProvider());
+        return LLMRecommendationResponse.error("LLM服务 " + service.getProvider() + " 并发或速率超限");
+    }
+
+    /**
+     * 根据缓存的探测结果和熔断器状态判断服务是否可用
+     */
+    private boolean isServiceAvailable(LLMService service) {
+        return healthByService.get(service).isAvailable();
+    }
+
+    /**
+     * 缓存服务返回的成功响应，解析回退的响应不缓存；
+     * 流式调用提前返回时在输出结束后缓存完整解析的响应，输出中断时不缓存
+     */
+    private void cacheResponse(LLMService service, LLMRecommendationRequest request,
+                               LLMRecommendationResponse response) {
+        if (!service.isRemote()) {
+            return;
+        }
+        if (response.getCompletion() != null) {
+            response.getCompletion().subscribe(completed -> responseCache.put(request, completed),
+                    e -> logger.debug("LLM流式输出未完成，不缓存: {}", e.getMessage()));
+            return;
+        }
+        if (!response.isParseFallback()) {
+            responseCache.put(request, response);
+        }
+    }
+
+    public RoutingMode getRoutingMode() {
+        return routingMode;
+    }
+
+    /**
+     * 获取LLM响应缓存统计
+     */
+    public LLMResponseCache.CacheStats getCacheStats() {
+        return responseCache.getStats();
+    }
+
     /**
      * 获取主要服务（第一个可用的服务）
      */
     private Optional<LLMService> getPrimaryService() {
         return llmServices.stream()
-                .filter(LLMService::isAvailable)
+                .filter(this::isServiceAvailable)
                 .findFirst();
     }
 
@@ -102,7 +702,7 @@ public class LLMServiceManager {
      * 检查是否有可用的LLM服务
      */
     public boolean hasAvailableService() {
-        return llmEnabled && llmServices.stream().anyMatch(LLMService::isAvailable);
+        return llmEnabled && llmServices.stream().anyMatch(this::isServiceAvailable);
     }
 
     /**
@@ -110,11 +710,16 @@ public class LLMServiceManager {
      */
     public List<ServiceStatus> getServiceStatus() {
         return llmServices.stream()
-                .map(service -> new ServiceStatus(
-                        service.getProvider(),
-                        service.getModelName(),
-                        service.isAvailable()
-                ))
+                .map(service -> {
+                    LLMProviderHealth health = healthByService.get(service);
+                    return new ServiceStatus(
+                            service.getProvider(),
+                            service.getModelName(),
+                            health.isAvailable(),
+                            health.getState().name(),
+                            health.getFailureRate()
+                    );
+                })
                 .toList();
     }
 
@@ -125,11 +730,20 @@ public class LLMServiceManager {
         private final String provider;
         private final String modelName;
         private final boolean available;
+        private final String circuitState;
+        private final double failureRate;
 
         public ServiceStatus(String provider, String modelName, boolean available) {
+            this(provider, modelName, available, LLMProviderHealth.CircuitState.CLOSED.name(), 0.0);
+        }
+
+        public ServiceStatus(String provider, String modelName, boolean available,
+                             String circuitState, double failureRate) {
             this.provider = provider;
             this.modelName = modelName;
             this.available = available;
+            this.circuitState = circuitState;
+            this.failureRate = failureRate;
         }
 
         public String getProvider() {
@@ -144,9 +758,17 @@ public class LLMServiceManager {
             return available;
         }
 
+        public String getCircuitState() {
+            return circuitState;
+        }
+
+        public double getFailureRate() {
+            return failureRate;
+        }
+
         @Override
         public String toString() {
-            return String.format("%s (%s) - %s", provider, modelName, available ? "可用" : "不可用");
+            return String.format("%s (%s) - %s [%s]", provider, modelName, available ? "可用" : "不可用", circuitState);
         }
     }
 }
@@ -1,18 +1,90 @@
 package com.airebate.service;
 
 import com.airebate.dto.LLMRecommendationRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * LLM提示词模板管理服务
- * 负责管理和生成不同场景下的提示词模板
+ * 负责管理和生成不同场景下的提示词模板。
+ * 精简模式（ai.llm.prompt.mode=compact）下，固定的系统指令只渲染一次，每个请求只生成最小的数据块，
+ * 并按本地估算的token数执行每请求的token预算。批量提示词将多个客户的精简数据块合并到一次调用中
  */
 @Service
 public class PromptTemplateService {
 
+    private static final Logger logger = LoggerFactory.getLogger(PromptTemplateService.class);
+
+    /**
+     * 精简模式的系统指令，与请求数据无关。OpenAI作为system消息、Ollama作为system字段单独发送，
+     * 相同前缀可被服务端缓存
+     */
+    static final String COMPACT_SYSTEM_PROMPT = """
+        你是外汇rebate spread定价专家，根据用户给出的客户数据推荐spread。
+        要求：spread必须在给定范围内；confidenceScore为0到1的小数，反映数据质量和市场确定性；各文字字段简明，不超过60字。
+        只输出JSON：
+        {"recommendedSpread":数值,"confidenceScore":数值,"reasoning":"推荐理由","riskAssessment":"风险评估","marketAnalysis":"市场分析","keyFactors":["因素1","因素2"]}""";
+
+    private static final int COMPACT_SYSTEM_TOKENS = estimateTokens(COMPACT_SYSTEM_PROMPT);
+
+    /**
+     * 多客户批量提示词的系统指令，要求按数据块序号输出JSON数组
+     */
+    static final String BATCH_SYSTEM_PROMPT = """
+        你是外汇rebate spread定价专家，用户给出多个客户的数据块，每块以"#序号"开头，请分别为每个客户推荐spread。
+        要求：spread必须在该客户给定范围内；confidenceScore为0到1的小数，反映数据质量和市场确定性；各文字字段简明，不超过60字。
+        只输出JSON数组，每个数据块一个元素，index为数据块序号：
+        [{"index":序号,"recommendedSpread":数值,"confidenceScore":数值,"reasoning":"推荐理由","riskAssessment":"风险评估","marketAnalysis":"市场分析","keyFactors":["因素1","因素2"]}]""";
+
+    private static final int BATCH_SYSTEM_TOKENS = estimateTokens(BATCH_SYSTEM_PROMPT);
+
+    // 数值保留的有效数字位数
+    private static final MathContext COMPACT_PRECISION = new MathContext(4);
+
+    /**
+     * 提示词场景
+     */
+    enum Scenario {
+        STANDARD(null),
+        CONSERVATIVE("高风险客户，偏保守定价，优先控制风险"),
+        PREFERENTIAL("低风险活跃客户，定价需有竞争力"),
+        VOLATILITY("市场高波动，增加波动风险补偿");
+
+        // 精简模式下的策略提示
+        private final String hint;
+
+        Scenario(String hint) {
+            this.hint = hint;
+        }
+    }
+
+    /**
+     * 精简提示词：固定的系统指令和单个请求的数据块
+     * @param estimatedTokens 两部分合计的估算token数
+     */
+    public record CompactPrompt(String system, String user, int estimatedTokens) {}
+
+    // 提示词模式: full（完整模板）、compact（精简模式）
+    @Value("${ai.llm.prompt.mode:full}")
+    private String mode;
+
+    // 精简模式下每个请求的提示词token预算（系统指令和数据块合计）
+    @Value("${ai.llm.prompt.max-tokens:400}")
+    private int maxPromptTokens;
+
+    public boolean isCompactMode() {
+        return "compact".equalsIgnoreCase(mode);
+    }
+
     /**
      * 生成标准推荐提示词
      */
@@ -204,7 +276,18 @@ public class PromptTemplateService {
      * 根据场景选择合适的提示词模板
      */
     public String generatePromptByScenario(LLMRecommendationRequest request) {
-        // 分析场景特征
+        return switch (scenario(request)) {
+            case VOLATILITY -> generateVolatilityPrompt(request);
+            case CONSERVATIVE -> generateConservativePrompt(request);
+            case PREFERENTIAL -> generatePreferentialPrompt(request);
+            case STANDARD -> generateStandardPrompt(request);
+        };
+    }
+
+    /**
+     * 分析场景特征，选择提示词场景
+     */
+    Scenario scenario(LLMRecommendationRequest request) {
         boolean isHighRisk = request.getCustomerRiskLevel() != null && request.getCustomerRiskLevel() > 1.5;
         boolean isLowRisk = request.getCustomerRiskLevel() != null && request.getCustomerRiskLevel() < 0.8;
         boolean isHighVolatility = request.getMarketVolatility() != null && 
@@ -212,16 +295,116 @@ public class PromptTemplateService {
         boolean isHighVolume = request.getCustomerTradingVolume() != null && 
                              request.getCustomerTradingVolume() > 50000;
 
-        // 场景判断和模板选择
         if (isHighVolatility) {
-            return generateVolatilityPrompt(request);
+            return Scenario.VOLATILITY;
         } else if (isHighRisk) {
-            return generateConservativePrompt(request);
+            return Scenario.CONSERVATIVE;
         } else if (isLowRisk && isHighVolume) {
-            return generatePreferentialPrompt(request);
+            return Scenario.PREFERENTIAL;
         } else {
-            return generateStandardPrompt(request);
+            return Scenario.STANDARD;
+        }
+    }
+
+    /**
+     * 生成精简提示词
+     * 数据块只包含推荐所需的字段，数值保留4位有效数字。估算token数超过预算时，
+     * 依次省略客户名称、客户画像、市场描述和策略提示；必需字段始终保留
+     */
+    public CompactPrompt generateCompactPrompt(LLMRecommendationRequest request) {
+        List<String> lines = compactDataLines(request, COMPACT_SYSTEM_TOKENS);
+        String user = String.join("\n", lines);
+        return new CompactPrompt(COMPACT_SYSTEM_PROMPT, user, COMPACT_SYSTEM_TOKENS + estimateTokens(user));
+    }
+
+    /**
+     * 生成多客户批量提示词，一次调用为多个客户推荐spread
+     * 每个客户的数据块与精简模式相同，以"#序号"开头（从1开始），各数据块分别按单个请求的token预算裁剪
+     */
+    public CompactPrompt generateBatchPrompt(List<LLMRecommendationRequest> requests) {
+        StringBuilder user = new StringBuilder();
+        for (int i = 0; i < requests.size(); i++) {
+            if (i > 0) {
+                user.append("\n\n");
+            }
+            user.append('#').append(i + 1).append('\n')
+                .append(String.join("\n", compactDataLines(requests.get(i), BATCH_SYSTEM_TOKENS)));
+        }
+        return new CompactPrompt(BATCH_SYSTEM_PROMPT, user.toString(), BATCH_SYSTEM_TOKENS + estimateTokens(user));
+    }
+
+    /**
+     * 生成单个请求的精简数据块，systemTokens为同时发送的系统指令的估算token数
+     */
+    private List<String> compactDataLines(LLMRecommendationRequest request, int systemTokens) {
+        List<String> lines = new ArrayList<>();
+        lines.add("客户: " + request.getCustomerCode());
+        String name = optionalLine(lines, "名称: ", request.getCustomerName());
+        lines.add("货币: " + request.getCurrency() + ", 日期: " + request.getRecommendationDate());
+        lines.add("历史: 平均交易量=" + compact(request.getAvgTransactionVolume()) +
+                  ", 平均金额=" + compact(request.getAvgTransactionAmount()) +
+                  ", 利润率=" + compact(request.getAvgProfitMargin()) +
+                  ", 流动性=" + compact(request.getAvgLiquidityScore()) + "/10" +
+                  ", 波动率=" + compact(request.getMarketVolatility()));
+        lines.add("客户指标: 风险等级=" + compact(request.getCustomerRiskLevel()) +
+                  ", 交易量=" + compact(request.getCustomerTradingVolume()));
+        String market = optionalLine(lines, "市场: ", request.getMarketCondition());
+        String profile = optionalLine(lines, "画像: ", request.getCustomerProfile());
+        String hint = optionalLine(lines, "策略: ", scenario(request).hint);
+        lines.add("spread范围: [" + compact(request.getMinSpread()) + ", " + compact(request.getMaxSpread()) +
+                  "], 基准=" + compact(request.getDefaultSpread()));
+
+        // 超出预算时按顺序省略可选行
+        int tokens = systemTokens + estimateTokens(String.join("\n", lines));
+        for (String droppable : new String[] {name, profile, market, hint}) {
+            if (tokens <= maxPromptTokens) {
+                break;
+            }
+            if (droppable != null) {
+                lines.remove(droppable);
+                tokens = systemTokens + estimateTokens(String.join("\n", lines));
+            }
+        }
+        if (tokens > maxPromptTokens) {
+            logger.warn("客户 {} 的精简提示词估算 {} tokens，省略可选字段后仍超过预算 {}",
+                       request.getCustomerCode(), tokens, maxPromptTokens);
+        }
+        return lines;
+    }
+
+    private static String optionalLine(List<String> lines, String label, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String line = label + value;
+        lines.add(line);
+        return line;
+    }
+
+    private static String compact(BigDecimal value) {
+        return value == null ? "-" : value.round(COMPACT_PRECISION).stripTrailingZeros().toPlainString();
+    }
+
+    private static String compact(Double value) {
+        return value == null ? "-" : compact(BigDecimal.valueOf(value));
+    }
+
+    /**
+     * 本地估算文本的token数，不调用分词器
+     * 中文等非ASCII字符按每字1.5个token、ASCII字符按每4个字符1个token计算，对常见模型的分词结果偏保守
+     */
+    public static int estimateTokens(CharSequence text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ascii++;
+            } else if (!Character.isLowSurrogate(c)) {
+                other++;
+            }
         }
+        return (other * 3 + 1) / 2 + (ascii + 3) / 4;
     }
 
     /**
@@ -0,0 +1,54 @@
+package com.airebate.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LLM服务速率限制器
+ * 每个服务提供商各自按固定速率发放调用许可，许可不足时延迟调用而不是拒绝。
+ * 只用于后台任务（如推荐预计算）发起的调用，避免批量任务占满服务商的调用配额
+ */
+@Component
+public class ProviderRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderRateLimiter.class);
+
+    // 两次调用之间的最小间隔（纳秒），0表示不限速
+    private final long intervalNanos;
+
+    // 每个服务提供商下一个可用许可的时间点（System.nanoTime）
+    private final Map<String, Long> nextPermitAt = new ConcurrentHashMap<>();
+
+    public ProviderRateLimiter(@Value("${ai.llm.rate-limit.background-per-second:2.0}") double permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (1_000_000_000L / permitsPerSecond) : 0;
+        logger.info("后台LLM调用速率限制: 每个服务 {} 次/秒", permitsPerSecond > 0 ? permitsPerSecond : "不限");
+    }
+
+    /**
+     * 获取指定服务提供商的调用许可，返回在许可可用时完成的Mono
+     */
+    public Mono<Void> acquire(String providerKey) {
+        long waitNanos = reserve(providerKey);
+        return waitNanos > 0 ? Mono.delay(Duration.ofNanos(waitNanos)).then() : Mono.empty();
+    }
+
+    /**
+     * 预约下一个许可，返回需要等待的时间（纳秒）
+     */
+    long reserve(String providerKey) {
+        if (intervalNanos == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long permitAt = nextPermitAt.compute(providerKey, (key, next) ->
+            next == null || next - now < 0 ? now + intervalNanos : next + intervalNanos) - intervalNanos;
+        return Math.max(0, permitAt - now);
+    }
+}
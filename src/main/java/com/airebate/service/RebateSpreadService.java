@@ -2,28 +2,55 @@ package com.airebate.service;
 
 import com.airebate.dto.RecommendationRequest;
 import com.airebate.dto.RecommendationResponse;
-import com.airebate.model.BillingResult;
+import com.airebate.model.BillingDailyRollup;
+import com.airebate.model.Currency;
 import com.airebate.model.Customer;
 import com.airebate.model.RebateSpreadRecommendation;
 import com.airebate.repository.BillingResultRepository;
 import com.airebate.repository.CustomerRepository;
 import com.airebate.repository.RebateSpreadRecommendationRepository;
+import com.airebate.service.RecommendationMetrics.RequestOutcome;
+import com.airebate.service.RecommendationMetrics.Stage;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Rebate Spread推荐服务
- * 整合AI引擎和数据访问，提供完整的推荐功能
+ * 整合AI引擎和数据访问，提供完整的推荐功能。
+ * 推荐流程不在类级别事务中执行：数据库读写使用各自的短事务，推荐生成和LLM调用期间不持有数据库连接
  */
 @Service
-@Transactional
 public class RebateSpreadService {
     
     private static final Logger logger = LoggerFactory.getLogger(RebateSpreadService.class);
@@ -37,65 +64,783 @@ public class RebateSpreadService {
     @Autowired
     private RebateSpreadRecommendationRepository recommendationRepository;
     
+    @Autowired
+    private BillingRollupService billingRollupService;
+    
     @Autowired
     private AIRecommendationEngine aiEngine;
+    
+    @Autowired
+    private RecommendationCache recommendationCache;
+    
+    @Autowired
+    private RecommendationMetrics metrics;
+    
+    @Autowired
+    @Qualifier("recommendationExecutor")
+    private Executor recommendationExecutor;
+
+    // 异步推荐链路中执行数据库事务的调度器
+    @Autowired
+    @Qualifier("blockingScheduler")
+    private Scheduler blockingScheduler;
+    
+    @Value("${ai.rebate.batch.max-size:50000}")
+    private int batchMaxSize;
+    
+    @Value("${ai.rebate.batch.query-chunk-size:1000}")
+    private int queryChunkSize;
+    
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int persistBatchSize;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private TransactionTemplate readTransaction;
+    private TransactionTemplate writeTransaction;
+    
+    // 进行中的推荐计算，相同客户/货币/日期的并发请求等待同一个结果
+    private final Map<FlightKey, CompletableFuture<RecommendationResponse>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initTransactionTemplates() {
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
 
     /**
      * 获取动态推荐
+     * 分三个阶段执行：只读短事务加载数据，不持有数据库连接生成推荐（可能包含LLM调用），写短事务保存结果。
+     * 近端缓存命中时不访问数据库；相同客户/货币/日期的并发请求合并为一次计算。
+     * 请求设置了延迟预算时，LLM调用受截止时间限制；合并到进行中计算的请求最多等待到自己的截止时间，超时后改用传统算法
      */
     public RecommendationResponse getRecommendation(RecommendationRequest request) {
         logger.info("处理推荐请求: 客户={}, 货币={}, 日期={}", 
                    request.getCustomerCode(), request.getCurrency(), request.getQueryDate());
+        long start = System.nanoTime();
+        RequestDeadline deadline = deadlineOf(request, start);
         
-        try {
-            // 查找客户
-            Optional<Customer> customerOpt = customerRepository.findByCustomerCode(request.getCustomerCode());
-            if (customerOpt.isEmpty()) {
-                return RecommendationResponse.error("客户不存在: " + request.getCustomerCode());
-            }
-            
-            Customer customer = customerOpt.get();
-            
-            // 检查是否有有效的缓存推荐
-            Optional<RebateSpreadRecommendation> cachedRecommendation = 
-                recommendationRepository.findValidRecommendation(
-                    customer, request.getCurrency(), request.getQueryDate(), LocalDateTime.now());
-            
-            if (cachedRecommendation.isPresent()) {
-                logger.info("使用缓存的推荐结果");
-                return convertToResponse(cachedRecommendation.get());
+        RecommendationResponse cached = recommendationCache.get(
+            request.getCustomerCode(), request.getCurrency(), request.getQueryDate());
+        if (cached != null) {
+            logger.debug("近端缓存命中: 客户={}, 货币={}, 日期={}", 
+                        request.getCustomerCode(), request.getCurrency(), request.getQueryDate());
+            metrics.recordRequest(request.getCurrency(), RequestOutcome.CACHE_HIT, start);
+            return cached;
+        }
+        
+        FlightKey key = FlightKey.of(request);
+        CompletableFuture<RecommendationResponse> flight = new CompletableFuture<>();
+        CompletableFuture<RecommendationResponse> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            logger.debug("等待进行中的相同推荐请求: {}", key);
+            RecommendationResponse response;
+            if (deadline == null) {
+                response = existing.join();
+            } else {
+                try {
+                    response = existing.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // 截止时间已过，推荐引擎不再调用LLM
+                    logger.info("等待进行中的相同推荐请求超过延迟预算，使用传统算法: {}", key);
+                    return computeRecommendation(request, deadline, start);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(e);
+                } catch (ExecutionException e) {
+                    throw new CompletionException(e.getCause());
+                }
             }
-            
-            // 获取历史数据
-            List<BillingResult> historicalData = getHistoricalData(customer, request);
-            
-            if (historicalData.isEmpty()) {
-                logger.warn("客户 {} 没有足够的历史数据", request.getCustomerCode());
-                return RecommendationResponse.warning("客户历史数据不足，使用默认推荐策略");
+            metrics.recordRequest(request.getCurrency(), RequestOutcome.COALESCED, start);
+            return response;
+        }
+        
+        try {
+            RecommendationResponse response = computeRecommendation(request, deadline, start);
+            flight.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private RecommendationResponse computeRecommendation(RecommendationRequest request, RequestDeadline deadline,
+                                                         long startNanos) {
+        try {
+            // 查找客户、检查缓存推荐并加载历史数据
+            RecommendationContext context = readTransaction.execute(status -> prepareRecommendation(request));
+            if (context.response != null) {
+                metrics.recordRequest(request.getCurrency(), context.outcome, startNanos);
+                return context.response;
             }
             
-            // 生成新推荐
+            // 生成新推荐，此时不在事务中
             RebateSpreadRecommendation recommendation = aiEngine.generateRecommendation(
-                customer, request.getCurrency(), request.getQueryDate(), historicalData);
+                context.customer, request.getCurrency(), request.getQueryDate(), context.historicalFeatures, deadline);
             
             // 保存推荐结果
-            recommendation = recommendationRepository.save(recommendation);
-            
-            logger.info("成功生成新推荐，ID: {}", recommendation.getId());
-            
-            return convertToResponse(recommendation);
+            RecommendationResponse response = persistRecommendation(recommendation);
+            metrics.recordRequest(request.getCurrency(), RequestOutcome.GENERATED, startNanos);
+            return response;
             
         } catch (Exception e) {
             logger.error("处理推荐请求时发生错误", e);
+            metrics.recordRequest(request.getCurrency(), RequestOutcome.ERROR, startNanos);
             return RecommendationResponse.error("系统错误: " + e.getMessage());
         }
     }
 
     /**
-     * 获取历史数据
+     * 异步获取动态推荐
+     * 数据库读写各自使用短事务在弹性线程池上执行，LLM调用期间不占用请求线程和数据库连接。
+     * 与同步接口共享进行中的计算；发起计算的订阅者取消时计算继续完成，不影响等待同一结果的其他请求。
+     * 请求设置了延迟预算时，截止时间通过Reactor上下文传递给推荐引擎和LLM服务管理器；
+     * 合并到进行中计算的请求最多等待到自己的截止时间，超时后不再等待该计算，改用传统算法生成推荐
+     */
+    public Mono<RecommendationResponse> getRecommendationAsync(RecommendationRequest request) {
+        logger.info("异步处理推荐请求: 客户={}, 货币={}, 日期={}", 
+                   request.getCustomerCode(), request.getCurrency(), request.getQueryDate());
+        long start = System.nanoTime();
+        RequestDeadline deadline = deadlineOf(request, start);
+        
+        RecommendationResponse cached = recommendationCache.get(
+            request.getCustomerCode(), request.getCurrency(), request.getQueryDate());
+        if (cached != null) {
+            metrics.recordRequest(request.getCurrency(), RequestOutcome.CACHE_HIT, start);
+            return Mono.just(cached);
+        }
+        
+        return Mono.deferContextual(context -> {
+            FlightKey key = FlightKey.of(request);
+            CompletableFuture<RecommendationResponse> flight = new CompletableFuture<>();
+            CompletableFuture<RecommendationResponse> existing = inFlight.putIfAbsent(key, flight);
+            if (existing != null) {
+                logger.debug("等待进行中的相同推荐请求: {}", key);
+                Mono<RecommendationResponse> joined = Mono.fromFuture(existing, true)
+                    .doOnNext(response -> metrics.recordRequest(request.getCurrency(), RequestOutcome.COALESCED, start));
+                if (deadline == null) {
+                    return joined;
+                }
+                // 截止时间已过，推荐引擎不再调用LLM
+                return joined
+                    .timeout(Duration.ofMillis(Math.max(0, deadline.remainingMillis())))
+                    .onErrorResume(TimeoutException.class, e -> {
+                        logger.info("等待进行中的相同推荐请求超过延迟预算，使用传统算法: {}", key);
+                        return computeRecommendationAsync(request, start)
+                            .contextWrite(ctx -> ctx.put(RequestDeadline.CONTEXT_KEY, deadline));
+                    });
+            }
+            
+            // 独立订阅时传递调用方的上下文（如后台任务标记）和本请求的截止时间
+            computeRecommendationAsync(request, start)
+                .doFinally(signal -> inFlight.remove(key, flight))
+                .contextWrite(context)
+                .contextWrite(ctx -> deadline != null ? ctx.put(RequestDeadline.CONTEXT_KEY, deadline) : ctx)
+                .subscribe(flight::complete, flight::completeExceptionally);
+            return Mono.fromFuture(flight, true);
+        });
+    }
+
+    /**
+     * 请求设置了延迟预算时，从startNanos（System.nanoTime）起算的截止时间，否则返回null
+     */
+    private static RequestDeadline deadlineOf(RecommendationRequest request, long startNanos) {
+        return request.getTimeoutMillis() != null
+            ? new RequestDeadline(startNanos + TimeUnit.MILLISECONDS.toNanos(request.getTimeoutMillis())) : null;
+    }
+
+    private Mono<RecommendationResponse> computeRecommendationAsync(RecommendationRequest request, long startNanos) {
+        return Mono.fromCallable(() -> readTransaction.execute(status -> prepareRecommendation(request)))
+            .subscribeOn(blockingScheduler)
+            .flatMap(context -> {
+                if (context.response != null) {
+                    metrics.recordRequest(request.getCurrency(), context.outcome, startNanos);
+                    return Mono.just(context.response);
+                }
+                return aiEngine.generateRecommendationAsync(
+                        context.customer, request.getCurrency(), request.getQueryDate(), context.historicalFeatures)
+                    .publishOn(blockingScheduler)
+                    .map(this::persistRecommendation)
+                    .doOnNext(response -> 
+                        metrics.recordRequest(request.getCurrency(), RequestOutcome.GENERATED, startNanos));
+            })
+            .onErrorResume(e -> {
+                logger.error("处理推荐请求时发生错误", e);
+                metrics.recordRequest(request.getCurrency(), RequestOutcome.ERROR, startNanos);
+                return Mono.just(RecommendationResponse.error("系统错误: " + e.getMessage()));
+            });
+    }
+
+    /**
+     * 在写短事务中保存推荐，已存在相同客户/货币/日期的记录（如已过期的推荐）时替换该记录。
+     * 其他实例并发插入相同组合导致唯一约束冲突时，重试一次以替换对方写入的记录。提交后放入近端缓存
+     */
+    private RecommendationResponse persistRecommendation(RebateSpreadRecommendation recommendation) {
+        long start = System.nanoTime();
+        RecommendationResponse response;
+        try {
+            response = writeTransaction.execute(status -> upsertRecommendation(recommendation));
+        } catch (DataIntegrityViolationException e) {
+            logger.info("推荐记录并发写入冲突，替换已有记录: 客户={}, 货币={}, 日期={}",
+                       recommendation.getCustomer().getCustomerCode(), recommendation.getCurrency(),
+                       recommendation.getRecommendationDate());
+            recommendation.setId(null);
+            response = writeTransaction.execute(status -> upsertRecommendation(recommendation));
+        }
+        recommendationCache.put(recommendation.getCustomer().getId(), response);
+        metrics.recordStage(Stage.PERSIST, recommendation.getCurrency(), start);
+        scheduleReasonUpdate(recommendation);
+        return response;
+    }
+
+    /**
+     * 流式LLM提前返回的推荐保存时推荐理由尚未生成，输出结束后在写短事务中补充到已保存的记录并刷新近端缓存。
+     * 输出中断或没有可用的推荐理由时写入最终的默认理由，避免占位内容一直保留；
+     * 记录已被重新生成的推荐替换（推荐理由不再是占位内容）时不更新
+     */
+    private void scheduleReasonUpdate(RebateSpreadRecommendation recommendation) {
+        CompletableFuture<String> pendingReason = recommendation.getPendingReason();
+        if (pendingReason == null) {
+            return;
+        }
+        pendingReason
+            .handleAsync((reason, e) -> {
+                if (e != null) {
+                    logger.warn("流式LLM输出未完成，使用默认推荐理由: 客户={}, 货币={}, 日期={}, 原因={}",
+                               recommendation.getCustomer().getCustomerCode(), recommendation.getCurrency(),
+                               recommendation.getRecommendationDate(), e.getMessage());
+                }
+                updateReason(recommendation, e == null && reason != null && !reason.isBlank()
+                    ? reason : AIRecommendationEngine.LLM_REASON_UNAVAILABLE);
+                return null;
+            }, recommendationExecutor)
+            .exceptionally(e -> {
+                logger.warn("补充推荐理由失败: 客户={}, 货币={}, 日期={}", recommendation.getCustomer().getCustomerCode(),
+                           recommendation.getCurrency(), recommendation.getRecommendationDate(), e);
+                return null;
+            });
+    }
+
+    private void updateReason(RebateSpreadRecommendation recommendation, String reason) {
+        RecommendationResponse response = writeTransaction.execute(status -> recommendationRepository
+            .findByCustomerAndCurrencyAndDate(recommendation.getCustomer(), recommendation.getCurrency(),
+                                              recommendation.getRecommendationDate())
+            .filter(saved -> AIRecommendationEngine.PENDING_LLM_REASON.equals(saved.getRecommendationReason()))
+            .map(saved -> {
+                // 与recommendation_reason列长度一致
+                saved.setRecommendationReason(reason.length() > 500 ? reason.substring(0, 500) : reason);
+                return convertToResponse(saved);
+            })
+            .orElse(null));
+        if (response != null) {
+            recommendationCache.put(recommendation.getCustomer().getId(), response);
+            logger.debug("已补充推荐理由: 客户={}, 货币={}, 日期={}", recommendation.getCustomer().getCustomerCode(),
+                        recommendation.getCurrency(), recommendation.getRecommendationDate());
+        }
+    }
+
+    private RecommendationResponse upsertRecommendation(RebateSpreadRecommendation recommendation) {
+        Optional<RebateSpreadRecommendation> existing = recommendationRepository.findByCustomerAndCurrencyAndDate(
+            recommendation.getCustomer(), recommendation.getCurrency(), recommendation.getRecommendationDate());
+        RebateSpreadRecommendation saved;
+        if (existing.isPresent()) {
+            saved = existing.get();
+            saved.replaceWith(recommendation);
+        } else {
+            saved = recommendationRepository.save(recommendation);
+        }
+        // 在事务内flush，唯一约束冲突在此抛出
+        recommendationRepository.flush();
+        logger.info("成功生成新推荐，ID: {}", saved.getId());
+        return convertToResponse(saved);
+    }
+
+    /**
+     * 推荐前的数据准备：查找客户、检查缓存推荐并加载历史数据。
+     * 如果无需生成新推荐，上下文中直接携带响应
+     */
+    private RecommendationContext prepareRecommendation(RecommendationRequest request) {
+        long start = System.nanoTime();
+        Optional<Customer> customerOpt = customerRepository.findByCustomerCode(request.getCustomerCode());
+        metrics.recordStage(Stage.CUSTOMER_LOOKUP, request.getCurrency(), start);
+        if (customerOpt.isEmpty()) {
+            return RecommendationContext.of(RecommendationResponse.error("客户不存在: " + request.getCustomerCode()),
+                                            RequestOutcome.ERROR);
+        }
+        
+        Customer customer = customerOpt.get();
+        
+        start = System.nanoTime();
+        Optional<RebateSpreadRecommendation> cachedRecommendation = 
+            recommendationRepository.findValidRecommendation(
+                customer, request.getCurrency(), request.getQueryDate(), LocalDateTime.now());
+        metrics.recordStage(Stage.CACHE_LOOKUP, request.getCurrency(), start);
+        
+        if (cachedRecommendation.isPresent()) {
+            logger.info("使用缓存的推荐结果");
+            RecommendationResponse response = convertToResponse(cachedRecommendation.get());
+            recommendationCache.put(customer.getId(), response);
+            return RecommendationContext.of(response, RequestOutcome.CACHE_HIT);
+        }
+        
+        start = System.nanoTime();
+        BillingFeatureVector historicalFeatures = getHistoricalFeatures(customer, request);
+        metrics.recordStage(Stage.HISTORY_FETCH, request.getCurrency(), start);
+        
+        if (historicalFeatures.isEmpty()) {
+            logger.warn("客户 {} 没有足够的历史数据", request.getCustomerCode());
+            return RecommendationContext.of(RecommendationResponse.warning("客户历史数据不足，使用默认推荐策略"),
+                                            RequestOutcome.NO_HISTORY);
+        }
+        
+        return new RecommendationContext(customer, historicalFeatures, null, null);
+    }
+
+    /**
+     * 推荐上下文：生成推荐所需的数据，或已确定的响应及其请求结果
+     */
+    private static class RecommendationContext {
+        private final Customer customer;
+        private final BillingFeatureVector historicalFeatures;
+        private final RecommendationResponse response;
+        private final RequestOutcome outcome;
+
+        private RecommendationContext(Customer customer, BillingFeatureVector historicalFeatures, 
+                                      RecommendationResponse response, RequestOutcome outcome) {
+            this.customer = customer;
+            this.historicalFeatures = historicalFeatures;
+            this.response = response;
+            this.outcome = outcome;
+        }
+
+        private static RecommendationContext of(RecommendationResponse response, RequestOutcome outcome) {
+            return new RecommendationContext(null, null, response, outcome);
+        }
+    }
+
+    /**
+     * 批量获取推荐
+     * 客户、账单日汇总和有效缓存推荐按集合批量加载，推荐生成并行执行，结果按JDBC批次写入。
+     * 返回列表与请求列表一一对应，每项独立携带状态；请求设置了延迟预算时，其LLM调用受从批量请求开始起算的截止时间限制
+     */
+    public List<RecommendationResponse> getRecommendations(List<RecommendationRequest> requests) {
+        validateBatch(requests);
+        
+        logger.info("处理批量推荐请求，数量: {}", requests.size());
+        long start = System.nanoTime();
+        BatchState batch = prepareBatchState(requests);
+        
+        // 并行生成推荐，此时不在事务中
+        Map<PairKey, CompletableFuture<RebateSpreadRecommendation>> pending = new LinkedHashMap<>();
+        batch.tasks().forEach((key, task) -> pending.put(key, CompletableFuture.supplyAsync(
+            () -> aiEngine.generateRecommendation(task.customer(), task.request().getCurrency(),
+                                                  task.request().getQueryDate(), task.historicalFeatures(),
+                                                  deadlineOf(task.request(), start)),
+            recommendationExecutor)));
+        
+        // 等待并行生成结果
+        List<RebateSpreadRecommendation> generated = new ArrayList<>();
+        List<PairKey> generatedKeys = new ArrayList<>();
+        for (Map.Entry<PairKey, CompletableFuture<RebateSpreadRecommendation>> entry : pending.entrySet()) {
+            try {
+                RebateSpreadRecommendation recommendation = entry.getValue().join();
+                generated.add(recommendation);
+                generatedKeys.add(entry.getKey());
+            } catch (Exception e) {
+                logger.error("批量生成推荐失败: {}", entry.getKey(), e);
+                for (Integer index : batch.pendingIndexes().get(entry.getKey())) {
+                    batch.responses()[index] = batchItemResponse(
+                        RecommendationResponse.error("系统错误: " + e.getMessage()), requests.get(index));
+                }
+            }
+        }
+        
+        persistBatch(batch, generated, generatedKeys);
+        logger.info("批量推荐处理完成，请求数: {}, 新生成: {}", requests.size(), generated.size());
+        return List.of(batch.responses());
+    }
+
+    /**
+     * 异步批量获取推荐，需要生成的推荐每llmBatchSize个合并为一次LLM调用，最多concurrency个调用同时进行。
+     * 数据加载和保存与同步批量接口相同，各自使用短事务在弹性线程池上执行；
+     * 调用方的上下文（如后台任务标记）传递到LLM调用
+     */
+    public Mono<List<RecommendationResponse>> getRecommendationsInLLMBatchesAsync(List<RecommendationRequest> requests,
+                                                                                 int llmBatchSize, int concurrency) {
+        validateBatch(requests);
+        
+        return Mono.fromCallable(() -> prepareBatchState(requests))
+            .subscribeOn(blockingScheduler)
+            .flatMap(batch -> {
+                List<PairKey> keys = new ArrayList<>(batch.tasks().keySet());
+                return Flux.fromIterable(chunk(keys, Math.max(1, llmBatchSize)))
+                    .flatMapSequential(chunkKeys -> aiEngine.generateRecommendationsAsync(chunkKeys.stream()
+                        .map(key -> {
+                            BatchTask task = batch.tasks().get(key);
+                            return new AIRecommendationEngine.GenerationTask(task.customer(),
+                                task.request().getCurrency(), task.request().getQueryDate(), task.historicalFeatures());
+                        })
+                        .toList()), concurrency)
+                    .concatMapIterable(recommendations -> recommendations)
+                    .collectList()
+                    .publishOn(blockingScheduler)
+                    .map(generated -> {
+                        persistBatch(batch, generated, keys);
+                        logger.info("批量推荐处理完成，请求数: {}, 新生成: {}", requests.size(), generated.size());
+                        return List.of(batch.responses());
+                    });
+            });
+    }
+
+    private void validateBatch(List<RecommendationRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("批量推荐请求不能为空");
+        }
+        if (requests.size() > batchMaxSize) {
+            throw new IllegalArgumentException("批量推荐请求数量超过上限: " + batchMaxSize);
+        }
+    }
+
+    /**
+     * 校验批量请求并查找近端缓存，其余项在只读短事务中批量加载数据，确定需要生成的推荐；
+     * 全部命中缓存时不访问数据库
+     */
+    private BatchState prepareBatchState(List<RecommendationRequest> requests) {
+        RecommendationResponse[] responses = new RecommendationResponse[requests.size()];
+        Map<PairKey, List<Integer>> pendingIndexes = new HashMap<>();
+        
+        boolean allResolved = true;
+        for (int i = 0; i < requests.size(); i++) {
+            RecommendationRequest request = requests.get(i);
+            String error = validateBatchItem(request);
+            if (error != null) {
+                responses[i] = batchItemResponse(RecommendationResponse.error(error), request);
+                continue;
+            }
+            responses[i] = recommendationCache.get(
+                request.getCustomerCode(), request.getCurrency(), request.getQueryDate());
+            allResolved &= responses[i] != null;
+        }
+        
+        Map<PairKey, BatchTask> tasks = allResolved ? Map.of() : readTransaction.execute(
+            status -> prepareBatch(requests, responses, pendingIndexes));
+        return new BatchState(responses, pendingIndexes, tasks);
+    }
+
+    /**
+     * 写短事务中按JDBC批次保存生成的推荐，并写入对应请求的响应；generatedKeys与generated一一对应
+     */
+    private void persistBatch(BatchState batch, List<RebateSpreadRecommendation> generated, List<PairKey> generatedKeys) {
+        if (generated.isEmpty()) {
+            return;
+        }
+        List<RecommendationResponse> savedResponses;
+        try {
+            savedResponses = writeTransaction.execute(status -> upsertInBatches(generated));
+        } catch (DataIntegrityViolationException e) {
+            // 其他请求并发插入了相同组合，重试一次以替换对方写入的记录
+            logger.info("批量推荐记录并发写入冲突，重试替换已有记录");
+            generated.forEach(recommendation -> recommendation.setId(null));
+            savedResponses = writeTransaction.execute(status -> upsertInBatches(generated));
+        }
+        for (int i = 0; i < savedResponses.size(); i++) {
+            recommendationCache.put(generated.get(i).getCustomer().getId(), savedResponses.get(i));
+            scheduleReasonUpdate(generated.get(i));
+            for (Integer index : batch.pendingIndexes().get(generatedKeys.get(i))) {
+                batch.responses()[index] = savedResponses.get(i);
+            }
+        }
+    }
+
+    /**
+     * 批量推荐的处理状态：与请求一一对应的响应数组、需要生成的任务及其对应的请求下标
+     */
+    private record BatchState(RecommendationResponse[] responses, Map<PairKey, List<Integer>> pendingIndexes,
+                              Map<PairKey, BatchTask> tasks) {}
+
+    /**
+     * 批量推荐的数据准备，需在事务中调用
+     * 为尚无响应的请求批量加载客户、有效缓存推荐和账单日汇总；无需生成的项直接写入响应数组，
+     * 返回需要生成推荐的任务，相同客户/货币/日期只生成一次，对应的请求下标记录在pendingIndexes中
+     */
+    private Map<PairKey, BatchTask> prepareBatch(List<RecommendationRequest> requests,
+                                                 RecommendationResponse[] responses,
+                                                 Map<PairKey, List<Integer>> pendingIndexes) {
+        // 收集客户代码
+        Set<String> customerCodes = new LinkedHashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (responses[i] == null) {
+                customerCodes.add(requests.get(i).getCustomerCode());
+            }
+        }
+        
+        Map<String, Customer> customers = loadCustomers(customerCodes);
+        
+        // 计算所有请求覆盖的日期范围，一次性加载
+        LocalDate earliestDate = null;
+        LocalDate latestDate = null;
+        Set<LocalDate> queryDates = new LinkedHashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (responses[i] != null) {
+                continue;
+            }
+            RecommendationRequest request = requests.get(i);
+            if (!customers.containsKey(request.getCustomerCode())) {
+                responses[i] = batchItemResponse(
+                    RecommendationResponse.error("客户不存在: " + request.getCustomerCode()), request);
+                continue;
+            }
+            LocalDate startDate = request.getQueryDate().minusDays(request.getDaysRange());
+            earliestDate = earliestDate == null || startDate.isBefore(earliestDate) ? startDate : earliestDate;
+            latestDate = latestDate == null || request.getQueryDate().isAfter(latestDate) ? 
+                request.getQueryDate() : latestDate;
+            queryDates.add(request.getQueryDate());
+        }
+        
+        Map<PairKey, BatchTask> tasks = new LinkedHashMap<>();
+        if (queryDates.isEmpty()) {
+            return tasks;
+        }
+        
+        Map<PairKey, RebateSpreadRecommendation> validRecommendations = 
+            loadValidRecommendations(customers.values(), queryDates);
+        Map<Long, List<BillingDailyRollup>> rollupsByCustomer = 
+            loadHistoricalRollups(customers.values(), earliestDate, latestDate);
+        
+        for (int i = 0; i < requests.size(); i++) {
+            if (responses[i] != null) {
+                continue;
+            }
+            RecommendationRequest request = requests.get(i);
+            Customer customer = customers.get(request.getCustomerCode());
+            PairKey key = new PairKey(customer.getId(), request.getCurrency(), request.getQueryDate());
+            
+            RebateSpreadRecommendation cached = validRecommendations.get(key);
+            if (cached != null) {
+                responses[i] = convertToResponse(cached);
+                recommendationCache.put(customer.getId(), responses[i]);
+                continue;
+            }
+            
+            if (!tasks.containsKey(key)) {
+                BillingFeatureVector historicalFeatures = filterHistoricalFeatures(
+                    rollupsByCustomer.getOrDefault(customer.getId(), List.of()), request);
+                if (historicalFeatures.isEmpty()) {
+                    responses[i] = batchItemResponse(
+                        RecommendationResponse.warning("客户历史数据不足，使用默认推荐策略"), request);
+                    continue;
+                }
+                tasks.put(key, new BatchTask(customer, request, historicalFeatures));
+            }
+            pendingIndexes.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        return tasks;
+    }
+
+    /**
+     * 批量推荐中需要生成的一项
+     */
+    private record BatchTask(Customer customer, RecommendationRequest request,
+                             BillingFeatureVector historicalFeatures) {}
+
+    /**
+     * 校验批量请求中的单项
+     */
+    private String validateBatchItem(RecommendationRequest request) {
+        if (request == null) {
+            return "请求不能为空";
+        }
+        if (request.getCustomerCode() == null || request.getCustomerCode().isBlank()) {
+            return "客户代码不能为空";
+        }
+        if (request.getCurrency() == null) {
+            return "货币类型不能为空";
+        }
+        if (request.getQueryDate() == null) {
+            return "查询日期不能为空";
+        }
+        if (request.getDaysRange() == null || request.getDaysRange() <= 0) {
+            return "历史数据天数范围必须为正数";
+        }
+        return null;
+    }
+
+    /**
+     * 为批量结果中的非成功项补充请求标识，便于调用方对应
+     */
+    private RecommendationResponse batchItemResponse(RecommendationResponse response, 
+                                                     RecommendationRequest request) {
+        if (request != null) {
+            response.setCustomerCode(request.getCustomerCode());
+            response.setCurrency(request.getCurrency());
+            response.setRecommendationDate(request.getQueryDate());
+        }
+        return response;
+    }
+
+    /**
+     * 按客户代码批量加载客户
+     */
+    private Map<String, Customer> loadCustomers(Set<String> customerCodes) {
+        Map<String, Customer> customers = new HashMap<>();
+        for (List<String> chunk : chunk(new ArrayList<>(customerCodes), queryChunkSize)) {
+            for (Customer customer : customerRepository.findByCustomerCodeIn(chunk)) {
+                customers.put(customer.getCustomerCode(), customer);
+            }
+        }
+        return customers;
+    }
+
+    /**
+     * 批量加载有效的缓存推荐，同一组合保留最新一条
+     */
+    private Map<PairKey, RebateSpreadRecommendation> loadValidRecommendations(
+            Iterable<Customer> customers, Set<LocalDate> dates) {
+        Map<PairKey, RebateSpreadRecommendation> result = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (List<Customer> chunk : chunk(toList(customers), queryChunkSize)) {
+            // 查询结果按创建时间倒序，首次出现的即为最新推荐
+            for (RebateSpreadRecommendation recommendation : 
+                    recommendationRepository.findValidRecommendations(chunk, dates, now)) {
+                result.putIfAbsent(keyOf(recommendation), recommendation);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量加载账单日汇总，按客户分组
+     */
+    private Map<Long, List<BillingDailyRollup>> loadHistoricalRollups(Iterable<Customer> customers,
+                                                                     LocalDate startDate, LocalDate endDate) {
+        Map<Long, List<BillingDailyRollup>> result = new HashMap<>();
+        for (List<Customer> chunk : chunk(toList(customers), queryChunkSize)) {
+            for (BillingDailyRollup rollup : billingRollupService.findRollups(chunk, startDate, endDate)) {
+                result.computeIfAbsent(rollup.getCustomer().getId(), k -> new ArrayList<>())
+                      .add(rollup);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 从客户的批量日汇总中筛选出单个请求的货币和日期范围，合并为历史特征
+     */
+    private BillingFeatureVector filterHistoricalFeatures(List<BillingDailyRollup> customerRollups, 
+                                                          RecommendationRequest request) {
+        LocalDate startDate = request.getQueryDate().minusDays(request.getDaysRange());
+        BillingFeatureVector features = new BillingFeatureVector();
+        for (BillingDailyRollup rollup : customerRollups) {
+            if (rollup.getCurrency() == request.getCurrency() && 
+                    !rollup.getBillingDate().isBefore(startDate) && 
+                    !rollup.getBillingDate().isAfter(request.getQueryDate())) {
+                features.add(rollup);
+            }
+        }
+        return features;
+    }
+
+    /**
+     * 保存批量生成的推荐并转换为响应，需在事务中调用
+     * 已存在相同客户/货币/日期的记录时替换该记录，其余按JDBC批次插入，返回顺序与传入顺序一致
+     */
+    private List<RecommendationResponse> upsertInBatches(List<RebateSpreadRecommendation> recommendations) {
+        Map<PairKey, RebateSpreadRecommendation> existing = loadExistingRecommendations(recommendations);
+        List<RebateSpreadRecommendation> saved = new ArrayList<>(recommendations.size());
+        List<RebateSpreadRecommendation> created = new ArrayList<>();
+        for (RebateSpreadRecommendation recommendation : recommendations) {
+            RebateSpreadRecommendation current = existing.get(keyOf(recommendation));
+            if (current != null) {
+                current.replaceWith(recommendation);
+                saved.add(current);
+            } else {
+                created.add(recommendation);
+                saved.add(recommendation);
+            }
+        }
+        saveInBatches(created);
+        recommendationRepository.flush();
+        return saved.stream().map(this::convertToResponse).toList();
+    }
+
+    /**
+     * 批量加载与待保存推荐相同客户/货币/日期的已有记录（包括已过期的）
+     */
+    private Map<PairKey, RebateSpreadRecommendation> loadExistingRecommendations(
+            List<RebateSpreadRecommendation> recommendations) {
+        Map<Long, Customer> customers = new LinkedHashMap<>();
+        Set<LocalDate> dates = new LinkedHashSet<>();
+        for (RebateSpreadRecommendation recommendation : recommendations) {
+            customers.putIfAbsent(recommendation.getCustomer().getId(), recommendation.getCustomer());
+            dates.add(recommendation.getRecommendationDate());
+        }
+        
+        Map<PairKey, RebateSpreadRecommendation> result = new HashMap<>();
+        for (List<Customer> chunk : chunk(new ArrayList<>(customers.values()), queryChunkSize)) {
+            for (RebateSpreadRecommendation recommendation : 
+                    recommendationRepository.findByCustomersAndDates(chunk, dates)) {
+                result.put(keyOf(recommendation), recommendation);
+            }
+        }
+        return result;
+    }
+
+    private static PairKey keyOf(RebateSpreadRecommendation recommendation) {
+        return new PairKey(recommendation.getCustomer().getId(), recommendation.getCurrency(),
+                           recommendation.getRecommendationDate());
+    }
+
+    /**
+     * 分批保存推荐，每批flush一次以触发JDBC批量插入
+     */
+    private List<RebateSpreadRecommendation> saveInBatches(List<RebateSpreadRecommendation> recommendations) {
+        List<RebateSpreadRecommendation> saved = new ArrayList<>(recommendations.size());
+        for (List<RebateSpreadRecommendation> chunk : chunk(recommendations, persistBatchSize)) {
+            saved.addAll(recommendationRepository.saveAll(chunk));
+            recommendationRepository.flush();
+        }
+        return saved;
+    }
+
+    private static <T> List<T> toList(Iterable<T> items) {
+        List<T> list = new ArrayList<>();
+        items.forEach(list::add);
+        return list;
+    }
+
+    private static <T> List<List<T>> chunk(List<T> items, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += size) {
+            chunks.add(items.subList(from, Math.min(items.size(), from + size)));
+        }
+        return chunks;
+    }
+
+    /**
+     * 客户/货币/日期组合键
+     */
+    private record PairKey(Long customerId, Currency currency, LocalDate date) {}
+
+    /**
+     * 单个推荐请求的合并键，按客户代码/货币/查询日期区分
+     * 与持久化的唯一约束一致，历史数据天数范围不同的请求也会合并
+     */
+    private record FlightKey(String customerCode, Currency currency, LocalDate queryDate) {
+        private static FlightKey of(RecommendationRequest request) {
+            return new FlightKey(request.getCustomerCode(), request.getCurrency(), request.getQueryDate());
+        }
+    }
+
+    /**
+     * 获取历史数据特征，由账单日汇总合并得到
      */
-    private List<BillingResult> getHistoricalData(Customer customer, RecommendationRequest request) {
-        return billingResultRepository.findByCustomerAndCurrencyAndDateRange(
+    private BillingFeatureVector getHistoricalFeatures(Customer customer, RecommendationRequest request) {
+        return billingRollupService.loadFeatures(
             customer,
             request.getCurrency(),
             request.getQueryDate().minusDays(request.getDaysRange()),
@@ -106,7 +851,7 @@ public class RebateSpreadService {
     /**
      * 转换为响应DTO
      */
-    private RecommendationResponse convertToResponse(RebateSpreadRecommendation recommendation) {
+    RecommendationResponse convertToResponse(RebateSpreadRecommendation recommendation) {
         RecommendationResponse response = RecommendationResponse.success(
             recommendation.getCustomer().getCustomerCode(),
             recommendation.getCustomer().getCustomerName(),
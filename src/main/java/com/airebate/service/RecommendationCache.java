@@ -0,0 +1,179 @@
+package com.airebate.service;
+
+import com.airebate.dto.RecommendationResponse;
+import com.airebate.model.Currency;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有效推荐近端缓存
+ * 按客户代码/货币/日期缓存仍在有效期内的推荐响应，条目在推荐的validUntil到期，
+ * 缓存命中时推荐请求不访问数据库。客户信息更新或写入新账单时按客户失效。容量有界，按LRU淘汰
+ */
+@Component
+public class RecommendationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationCache.class);
+
+    private final boolean enabled;
+    private final int maxSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, CacheEntry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public RecommendationCache(@Value("${ai.rebate.recommendation-cache.enabled:true}") boolean enabled,
+                               @Value("${ai.rebate.recommendation-cache.max-size:50000}") int maxSize,
+                               MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        // 访问顺序的LinkedHashMap，超出容量时淘汰最久未使用的条目
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+                if (size() > RecommendationCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        FunctionCounter.builder("ai.rebate.recommendation.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("ai.rebate.recommendation.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("ai.rebate.recommendation.cache.evictions", evictions, AtomicLong::get)
+                .tag("cause", "size").register(meterRegistry);
+        FunctionCounter.builder("ai.rebate.recommendation.cache.evictions", expirations, AtomicLong::get)
+                .tag("cause", "expired").register(meterRegistry);
+        FunctionCounter.builder("ai.rebate.recommendation.cache.evictions", invalidations, AtomicLong::get)
+                .tag("cause", "invalidated").register(meterRegistry);
+        Gauge.builder("ai.rebate.recommendation.cache.size", this, RecommendationCache::size)
+                .register(meterRegistry);
+
+        logger.info("推荐近端缓存: enabled={}, maxSize={}", enabled, maxSize);
+    }
+
+    /**
+     * 查找有效的推荐响应，未命中或已过有效期时返回null
+     */
+    public RecommendationResponse get(String customerCode, Currency currency, LocalDate date) {
+        if (!enabled) {
+            return null;
+        }
+
+        Key key = new Key(customerCode, currency, date);
+        LocalDateTime now = LocalDateTime.now();
+        lock.lock();
+        try {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && !entry.validUntil.isAfter(now)) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.response;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 缓存推荐响应，有效期取自响应的validUntil，没有有效期或已过期的响应不缓存
+     */
+    public void put(Long customerId, RecommendationResponse response) {
+        if (!enabled || response == null || response.getValidUntil() == null ||
+                !response.getValidUntil().isAfter(LocalDateTime.now())) {
+            return;
+        }
+
+        Key key = new Key(response.getCustomerCode(), response.getCurrency(), response.getRecommendationDate());
+        CacheEntry entry = new CacheEntry(customerId, response, response.getValidUntil());
+        lock.lock();
+        try {
+            entries.put(key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 使指定客户的全部缓存推荐失效
+     */
+    public void invalidateCustomers(Collection<Long> customerIds) {
+        if (!enabled || customerIds.isEmpty()) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            int before = entries.size();
+            entries.values().removeIf(entry -> customerIds.contains(entry.customerId));
+            invalidations.addAndGet(before - entries.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 客户代码/货币/日期组合键
+     */
+    private record Key(String customerCode, Currency currency, LocalDate date) {}
+
+    private static class CacheEntry {
+        private final Long customerId;
+        private final RecommendationResponse response;
+        private final LocalDateTime validUntil;
+
+        private CacheEntry(Long customerId, RecommendationResponse response, LocalDateTime validUntil) {
+            this.customerId = customerId;
+            this.response = response;
+            this.validUntil = validUntil;
+        }
+    }
+}
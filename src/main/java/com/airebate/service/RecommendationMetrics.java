@@ -0,0 +1,183 @@
+package com.airebate.service;
+
+import com.airebate.model.Currency;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推荐流水线指标
+ * 记录推荐请求各阶段的耗时、请求和推荐生成的结果、每次LLM调用的耗时和结果、LLM输出的解析结果，以及提示词长度和token用量的分布，
+ * 通过actuator的metrics端点导出：
+ * <ul>
+ *   <li>ai.rebate.recommendation.stage：各阶段耗时，标签 stage、currency</li>
+ *   <li>ai.rebate.recommendation.requests：单个推荐请求的端到端耗时，标签 currency、outcome</li>
+ *   <li>ai.rebate.recommendation.generations：推荐生成（LLM或传统算法）的耗时，标签 currency、outcome</li>
+ *   <li>ai.llm.calls：每次调用LLM服务的耗时（含解析），标签 provider、model、outcome</li>
+ *   <li>ai.llm.parse.results：LLM输出的解析结果计数，标签 provider、model、attempt、outcome</li>
+ *   <li>ai.llm.prompt.size：提示词字符数，标签 provider、model</li>
+ *   <li>ai.llm.tokens：服务返回的token用量，标签 provider、model、type</li>
+ *   <li>ai.llm.limiter.queue、ai.llm.limiter.limit、ai.llm.limiter.in-flight：准入控制的排队数、当前并发上限和进行中的调用数，标签 provider</li>
+ * </ul>
+ */
+@Component
+public class RecommendationMetrics {
+
+    /**
+     * 推荐流水线阶段，各阶段互不重叠
+     */
+    public enum Stage {
+        CUSTOMER_LOOKUP,       // 查找客户
+        CACHE_LOOKUP,          // 查找数据库中的有效推荐
+        HISTORY_FETCH,         // 加载账单日汇总并合并为历史特征
+        FEATURE_COMPUTATION,   // 由历史特征计算LLM请求的数据摘要和描述
+        PROMPT_BUILD,          // 生成提示词
+        LLM_CALL,              // LLM服务的HTTP调用
+        PARSE,                 // 解析LLM输出
+        TRADITIONAL_ALGORITHM, // 传统算法计算推荐
+        PERSIST;               // 保存推荐
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 单个推荐请求的结果
+     */
+    public enum RequestOutcome {
+        CACHE_HIT,  // 命中近端缓存或数据库中的有效推荐
+        COALESCED,  // 等待进行中的相同请求
+        GENERATED,  // 生成了新推荐
+        NO_HISTORY, // 历史数据不足
+        ERROR;      // 客户不存在或处理失败
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 推荐生成的结果
+     */
+    public enum GenerationOutcome {
+        LLM_SUCCESS,          // 使用LLM输出
+        PARSE_FALLBACK,       // LLM输出无法解析，使用服务给出的默认值
+        TRADITIONAL_FALLBACK, // LLM不可用或失败，使用传统算法
+        DEFAULT;              // 发生错误，使用默认推荐值
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    public RecommendationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 记录从startNanos（System.nanoTime）开始的阶段耗时
+     */
+    public void recordStage(Stage stage, Currency currency, long startNanos) {
+        Timer.builder("ai.rebate.recommendation.stage")
+                .tag("stage", stage.tag)
+                .tag("currency", currencyTag(currency))
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRequest(Currency currency, RequestOutcome outcome, long startNanos) {
+        Timer.builder("ai.rebate.recommendation.requests")
+                .tag("currency", currencyTag(currency))
+                .tag("outcome", outcome.tag)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordGeneration(Currency currency, GenerationOutcome outcome, long startNanos) {
+        Timer.builder("ai.rebate.recommendation.generations")
+                .tag("currency", currencyTag(currency))
+                .tag("outcome", outcome.tag)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次LLM服务调用
+     * @param outcome success、parse_fallback、failure、cancelled（对冲或竞速中被取消）、rejected（熔断中）
+     *                、throttled（准入控制排队超时或队列已满）或 skipped（剩余时间不足以完成调用）
+     */
+    public void recordLLMCall(String provider, String model, String outcome, long startNanos) {
+        Timer.builder("ai.llm.calls")
+                .tag("provider", provider)
+                .tag("model", model)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次LLM输出的解析结果，failure在全部结果中的占比即解析失败率
+     * @param attempt first（首次调用）或 retry（输出不符合格式后以较小的token预算重试）
+     */
+    public void recordParseResult(String provider, String model, String attempt, boolean success) {
+        Counter.builder("ai.llm.parse.results")
+                .tag("provider", provider)
+                .tag("model", model)
+                .tag("attempt", attempt)
+                .tag("outcome", success ? "success" : "failure")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordPromptSize(String provider, String model, int characters) {
+        DistributionSummary.builder("ai.llm.prompt.size")
+                .baseUnit("characters")
+                .tag("provider", provider)
+                .tag("model", model)
+                .register(meterRegistry)
+                .record(characters);
+    }
+
+    /**
+     * 记录服务返回的token用量，服务未返回用量（值小于0）时不记录
+     */
+    public void recordTokenUsage(String provider, String model, long promptTokens, long completionTokens) {
+        recordTokens(provider, model, "prompt", promptTokens);
+        recordTokens(provider, model, "completion", completionTokens);
+    }
+
+    private void recordTokens(String provider, String model, String type, long tokens) {
+        if (tokens < 0) {
+            return;
+        }
+        DistributionSummary.builder("ai.llm.tokens")
+                .baseUnit("tokens")
+                .tag("provider", provider)
+                .tag("model", model)
+                .tag("type", type)
+                .register(meterRegistry)
+                .record(tokens);
+    }
+
+    /**
+     * 注册服务提供商准入控制的排队数、并发上限和进行中调用数
+     */
+    public void registerProviderLimiter(String provider, LLMProviderLimiter limiter) {
+        Gauge.builder("ai.llm.limiter.queue", limiter, LLMProviderLimiter::getQueueDepth)
+                .tag("provider", provider)
+                .register(meterRegistry);
+        Gauge.builder("ai.llm.limiter.limit", limiter, LLMProviderLimiter::getLimit)
+                .tag("provider", provider)
+                .register(meterRegistry);
+        Gauge.builder("ai.llm.limiter.in-flight", limiter, LLMProviderLimiter::getInFlight)
+                .tag("provider", provider)
+                .register(meterRegistry);
+    }
+
+    private static String currencyTag(Currency currency) {
+        return currency != null ? currency.name() : "unknown";
+    }
+}
@@ -0,0 +1,239 @@
+package com.airebate.service;
+
+import com.airebate.dto.RecommendationRequest;
+import com.airebate.dto.RecommendationResponse;
+import com.airebate.model.Currency;
+import com.airebate.model.PrecomputeCheckpoint;
+import com.airebate.repository.BillingDailyRollupRepository;
+import com.airebate.repository.PrecomputeCheckpointRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 推荐预计算服务
+ * 在业务时间之前为近期有账单的客户/货币组合生成当天的推荐，使日间请求直接命中缓存。
+ * 多个组合的LLM请求合并为一次调用，并发调用的数量有上限，LLM调用按服务提供商限速；处理进度按批写入检查点，中断后从检查点继续
+ */
+@Service
+public class RecommendationPrecomputeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationPrecomputeService.class);
+
+    @Autowired
+    private RebateSpreadService rebateSpreadService;
+
+    @Autowired
+    private BillingDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private PrecomputeCheckpointRepository checkpointRepository;
+
+    // 同时生成的推荐数量上限
+    @Value("${ai.rebate.precompute.parallelism:4}")
+    private int parallelism;
+
+    // 每次LLM调用合并的客户数量，1表示逐个调用
+    @Value("${ai.rebate.precompute.llm-batch-size:8}")
+    private int llmBatchSize;
+
+    // 最近多少天内有账单的组合视为活跃
+    @Value("${ai.rebate.precompute.activity-days:30}")
+    private int activityDays;
+
+    // 每处理多少个组合写入一次检查点
+    @Value("${ai.rebate.precompute.checkpoint-interval:100}")
+    private int checkpointInterval;
+
+    // 生成推荐使用的历史数据天数范围
+    @Value("${ai.rebate.precompute.days-range:30}")
+    private int daysRange;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // 后台执行预计算，不占用定时任务线程
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "recommendation-precompute");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在后台线程启动预计算，已有预计算在执行时返回false
+     */
+    public boolean startPrecompute(LocalDate runDate) {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("推荐预计算正在执行，忽略本次触发: {}", runDate);
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                run(runDate);
+            } catch (Exception e) {
+                logger.error("推荐预计算失败: {}", runDate, e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 在当前线程执行预计算，返回最终的检查点
+     */
+    public PrecomputeCheckpoint precompute(LocalDate runDate) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("推荐预计算正在执行");
+        }
+        try {
+            return run(runDate);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 指定日期的预计算检查点存在且未完成时继续执行，用于任务中断后的恢复
+     */
+    public boolean resumeIfUnfinished(LocalDate runDate) {
+        Optional<PrecomputeCheckpoint> checkpoint = checkpointRepository.findByRunDate(runDate);
+        if (checkpoint.isEmpty() || "COMPLETED".equals(checkpoint.get().getStatus()) || running.get()) {
+            return false;
+        }
+        logger.info("推荐预计算未完成，从检查点恢复: {}", runDate);
+        return startPrecompute(runDate);
+    }
+
+    public Optional<PrecomputeCheckpoint> getCheckpoint(LocalDate runDate) {
+        return checkpointRepository.findByRunDate(runDate);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private PrecomputeCheckpoint run(LocalDate runDate) {
+        PrecomputeCheckpoint checkpoint = checkpointRepository.findByRunDate(runDate)
+            .orElseGet(() -> new PrecomputeCheckpoint(runDate));
+        if ("COMPLETED".equals(checkpoint.getStatus())) {
+            logger.info("{} 的推荐预计算已完成，跳过", runDate);
+            return checkpoint;
+        }
+        if (checkpoint.getLastCustomerCode() != null) {
+            logger.info("从检查点继续推荐预计算: {}, 已处理 {} 个组合，最后为 {}/{}", runDate,
+                       checkpoint.getProcessedPairs(), checkpoint.getLastCustomerCode(), checkpoint.getLastCurrency());
+        }
+
+        long start = System.currentTimeMillis();
+        List<ActivePair> pairs = loadActivePairs(runDate);
+        PrecomputeCheckpoint resumed = checkpoint;
+        List<ActivePair> remaining = pairs.stream()
+            .filter(pair -> !resumed.isProcessed(pair.customerCode(), pair.currency()))
+            .toList();
+        logger.info("开始推荐预计算: {}, 活跃组合 {} 个, 待处理 {} 个", runDate, pairs.size(), remaining.size());
+
+        checkpoint.setStatus("RUNNING");
+        checkpoint.setMessage(null);
+        checkpoint.setTotalPairs(pairs.size());
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        checkpoint = checkpointRepository.save(checkpoint);
+
+        try {
+            for (int from = 0; from < remaining.size(); from += checkpointInterval) {
+                List<ActivePair> chunk = remaining.subList(from, Math.min(remaining.size(), from + checkpointInterval));
+                int failed = precomputeChunk(chunk, runDate);
+
+                ActivePair last = chunk.get(chunk.size() - 1);
+                checkpoint.setProcessedPairs(checkpoint.getProcessedPairs() + chunk.size());
+                checkpoint.setFailedPairs(checkpoint.getFailedPairs() + failed);
+                checkpoint.setLastCustomerCode(last.customerCode());
+                checkpoint.setLastCurrency(last.currency());
+                checkpoint.setUpdatedAt(LocalDateTime.now());
+                checkpoint = checkpointRepository.save(checkpoint);
+                logger.debug("推荐预计算进度: {}/{}", checkpoint.getProcessedPairs(), checkpoint.getTotalPairs());
+            }
+            checkpoint.setStatus("COMPLETED");
+        } catch (RuntimeException e) {
+            logger.error("推荐预计算中断: {}, 已处理 {} 个组合", runDate, checkpoint.getProcessedPairs(), e);
+            checkpoint.setStatus("FAILED");
+            checkpoint.setMessage(e.getMessage());
+        }
+
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        checkpoint.setFinishedAt(checkpoint.getUpdatedAt());
+        checkpoint = checkpointRepository.save(checkpoint);
+        logger.info("推荐预计算结束: {}, 状态: {}, 处理 {} 个组合, 失败 {} 个, 耗时 {} ms", runDate,
+                   checkpoint.getStatus(), checkpoint.getProcessedPairs(), checkpoint.getFailedPairs(),
+                   System.currentTimeMillis() - start);
+        return checkpoint;
+    }
+
+    /**
+     * 并发生成一批组合的推荐，返回失败数量
+     * 需要生成的推荐每llmBatchSize个合并为一次LLM调用；llmBatchSize为1时逐个调用异步推荐接口。
+     * 已有有效推荐的组合直接返回，LLM调用带后台任务标记以启用限速
+     */
+    private int precomputeChunk(List<ActivePair> chunk, LocalDate runDate) {
+        List<RecommendationRequest> requests = chunk.stream()
+            .map(pair -> {
+                RecommendationRequest request = new RecommendationRequest(pair.customerCode(), pair.currency(), runDate);
+                request.setDaysRange(daysRange);
+                return request;
+            })
+            .toList();
+        Mono<List<RecommendationResponse>> generation = llmBatchSize > 1 ?
+            rebateSpreadService.getRecommendationsInLLMBatchesAsync(requests, llmBatchSize, parallelism) :
+            Flux.fromIterable(requests)
+                .flatMap(rebateSpreadService::getRecommendationAsync, parallelism)
+                .collectList();
+        List<RecommendationResponse> responses = generation
+            .contextWrite(Context.of(LLMServiceManager.BACKGROUND_CONTEXT_KEY, true))
+            .block();
+
+        int failed = 0;
+        for (RecommendationResponse response : responses) {
+            if ("ERROR".equals(response.getStatus())) {
+                failed++;
+                logger.warn("预计算推荐失败: 客户={}, 货币={}, 原因={}", response.getCustomerCode(),
+                           response.getCurrency(), response.getMessage());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 查找近期有账单的客户/货币组合，按客户代码和货币排序，保证检查点恢复时顺序一致
+     */
+    private List<ActivePair> loadActivePairs(LocalDate runDate) {
+        return rollupRepository.findActivePairs(runDate.minusDays(activityDays)).stream()
+            .map(row -> new ActivePair((String) row[0], (Currency) row[1]))
+            .sorted(Comparator.comparing(ActivePair::customerCode)
+                              .thenComparing(pair -> pair.currency().name()))
+            .toList();
+    }
+
+    /**
+     * 客户代码/货币组合
+     */
+    private record ActivePair(String customerCode, Currency currency) {}
+}
@@ -0,0 +1,39 @@
+package com.airebate.service;
+
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推荐请求的截止时间（System.nanoTime），通过Reactor上下文在推荐流水线中传递
+ * 推荐引擎据此限制LLM调用的时长，LLM服务管理器据此跳过来不及完成的服务
+ */
+public record RequestDeadline(long deadlineNanos) {
+
+    /**
+     * Reactor上下文键
+     */
+    public static final String CONTEXT_KEY = "ai.rebate.deadline";
+
+    public static RequestDeadline afterMillis(long millis) {
+        return new RequestDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * 读取上下文中的截止时间，未设置时返回null
+     */
+    public static RequestDeadline from(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, null);
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * 提前指定时长的截止时间，用于为后续阶段预留时间
+     */
+    public RequestDeadline minusMillis(long millis) {
+        return new RequestDeadline(deadlineNanos - TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,133 @@
+package com.airebate.service.impl;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.dto.LLMRecommendationResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 多客户批量调用的输出解析
+ * 模型输出一个JSON数组，每个元素以index对应提示词中的数据块序号（从1开始），缺少index时按数组位置对应。
+ * 同一序号出现多次时使用第一个有效的元素，之后的忽略；序号超出范围的元素忽略。
+ * 缺失或字段无效的项解析为null，由调用方对该请求单独回退
+ */
+final class BatchResponseParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchResponseParser.class);
+
+    private BatchResponseParser() {}
+
+    /**
+     * 解析批量输出，返回列表与请求列表一一对应，无法使用的项为null
+     */
+    static List<LLMRecommendationResponse> parse(ObjectMapper objectMapper, String content,
+                                                 List<LLMRecommendationRequest> requests, String model) {
+        List<LLMRecommendationResponse> responses = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        JsonNode entries;
+        try {
+            entries = objectMapper.readTree(extractArray(content));
+        } catch (Exception e) {
+            logger.warn("解析批量LLM响应失败: {}", e.getMessage());
+            logger.debug("原始响应: {}", content);
+            return responses;
+        }
+        if (entries == null || !entries.isArray()) {
+            logger.warn("批量LLM响应不是JSON数组");
+            return responses;
+        }
+
+        for (int position = 0; position < entries.size(); position++) {
+            JsonNode entry = entries.get(position);
+            int index = entry.path("index").asInt(position + 1) - 1;
+            if (index < 0 || index >= requests.size() || responses.get(index) != null) {
+                continue;
+            }
+            responses.set(index, toResponse(entry, requests.get(index), model));
+        }
+        return responses;
+    }
+
+    /**
+     * 对批量结果中为null的项逐个调用单个请求接口，返回完整的响应列表
+     */
+    static Mono<List<LLMRecommendationResponse>> completeIndividually(
+            List<LLMRecommendationResponse> responses, List<LLMRecommendationRequest> requests,
+            Function<LLMRecommendationRequest, Mono<LLMRecommendationResponse>> single) {
+        long missing = responses.stream().filter(response -> response == null).count();
+        if (missing > 0) {
+            logger.warn("批量LLM响应中 {}/{} 项缺失或无效，单独回退", missing, requests.size());
+        }
+        return Flux.range(0, requests.size())
+                .concatMap(i -> responses.get(i) != null ? Mono.just(responses.get(i)) : single.apply(requests.get(i)))
+                .collectList();
+    }
+
+    /**
+     * 将数组中的一项转换为响应，spread限制在请求的约束范围内；缺少数值字段或置信度不在0到1之间时返回null
+     */
+    private static LLMRecommendationResponse toResponse(JsonNode entry, LLMRecommendationRequest request,
+                                                        String model) {
+        BigDecimal recommendedSpread = decimal(entry.get("recommendedSpread"));
+        BigDecimal confidenceScore = decimal(entry.get("confidenceScore"));
+        if (recommendedSpread == null || confidenceScore == null ||
+                confidenceScore.signum() < 0 || confidenceScore.compareTo(BigDecimal.ONE) > 0) {
+            return null;
+        }
+        if (recommendedSpread.compareTo(request.getMinSpread()) < 0) {
+            recommendedSpread = request.getMinSpread();
+        }
+        if (recommendedSpread.compareTo(request.getMaxSpread()) > 0) {
+            recommendedSpread = request.getMaxSpread();
+        }
+
+        LLMRecommendationResponse response = new LLMRecommendationResponse();
+        response.setRecommendedSpread(recommendedSpread);
+        response.setConfidenceScore(confidenceScore);
+        response.setReasoning(entry.path("reasoning").asText(null));
+        response.setRiskAssessment(entry.path("riskAssessment").asText(null));
+        response.setMarketAnalysis(entry.path("marketAnalysis").asText(null));
+        response.setModelUsed(model);
+        if (entry.path("keyFactors").isArray()) {
+            List<String> keyFactors = new ArrayList<>();
+            entry.get("keyFactors").forEach(factor -> keyFactors.add(factor.asText()));
+            response.setKeyFactors(keyFactors);
+        }
+        return response;
+    }
+
+    private static BigDecimal decimal(JsonNode node) {
+        if (node == null) {
+            return null;
+        }
+        if (node.isNumber()) {
+            return node.decimalValue();
+        }
+        if (!node.isTextual()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(node.asText().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 取第一个 '[' 到最后一个 ']' 之间的内容，忽略代码块标记等前后文字
+     */
+    private static String extractArray(String content) {
+        int start = content.indexOf('[');
+        int end = content.lastIndexOf(']');
+        return start >= 0 && end > start ? content.substring(start, end + 1) : content;
+    }
+}
@@ -5,8 +5,9 @@ import com.airebate.dto.LLMRecommendationResponse;
 import com.airebate.service.LLMService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -17,7 +18,7 @@ import java.util.Arrays;
  * 当主要LLM服务不可用时，使用传统算法生成推荐
  */
 @Service
-@ConditionalOnProperty(name = "ai.llm.provider", havingValue = "fallback", matchIfMissing = true)
+@ConditionalOnExpression("'${ai.llm.provider:fallback}' == 'fallback' or ${ai.llm.fallback-service.enabled:false}")
 public class FallbackLLMService implements LLMService {
 
     private static final Logger logger = LoggerFactory.getLogger(FallbackLLMService.class);
@@ -56,6 +57,12 @@ public class FallbackLLMService implements LLMService {
         }
     }
 
+    @Override
+    public Mono<LLMRecommendationResponse> generateRecommendationAsync(LLMRecommendationRequest request) {
+        // 纯计算，无需切换到阻塞线程池
+        return Mono.fromSupplier(() -> generateRecommendation(request));
+    }
+
     private BigDecimal calculateSpreadUsingTraditionalMethod(LLMRecommendationRequest request) {
         BigDecimal baseSpread = request.getDefaultSpread();
         
@@ -229,6 +236,11 @@ public class FallbackLLMService implements LLMService {
         return true; // 回退服务始终可用
     }
 
+    @Override
+    public boolean isRemote() {
+        return false; // 本地计算，无需缓存，也不参与对冲和竞速
+    }
+
     @Override
     public String getModelName() {
         return "Traditional Algorithm";
@@ -238,4 +250,9 @@ public class FallbackLLMService implements LLMService {
     public String getProvider() {
         return "Fallback Service";
     }
+
+    @Override
+    public String getProviderKey() {
+        return "fallback";
+    }
 }
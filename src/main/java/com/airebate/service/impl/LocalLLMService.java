@@ -1,32 +1,53 @@
 package com.airebate.service.impl;
 
+import com.airebate.config.LLMClientConfig.LLMWebClientFactory;
 import com.airebate.dto.LLMRecommendationRequest;
 import com.airebate.dto.LLMRecommendationResponse;
 import com.airebate.service.LLMService;
+import com.airebate.service.PromptTemplateService;
+import com.airebate.service.PromptTemplateService.CompactPrompt;
+import com.airebate.service.RecommendationMetrics;
+import com.airebate.service.RecommendationMetrics.Stage;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.http.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 本地大模型服务实现（支持Ollama、LocalAI等）
  */
 @Service
-@ConditionalOnProperty(name = "ai.llm.provider", havingValue = "local")
+// 作为主要服务时启用，或在其他服务为主时通过 ai.llm.local.enabled 作为备用服务启用
+@ConditionalOnExpression("'${ai.llm.provider:fallback}' == 'local' or ${ai.llm.local.enabled:false}")
 public class LocalLLMService implements LLMService {
 
     private static final Logger logger = LoggerFactory.getLogger(LocalLLMService.class);
 
+    // 无法从模型输出中提取JSON时使用的默认响应
+    private static final String FALLBACK_JSON = """
+            {
+                "recommendedSpread": "0.1",
+                "confidenceScore": "0.5",
+                "reasoning": "LLM响应格式异常，采用默认策略",
+                "riskAssessment": "中等风险",
+                "marketAnalysis": "标准市场分析",
+                "keyFactors": ["数据质量", "市场稳定性", "客户历史表现"]
+            }
+            """;
+
     @Value("${ai.llm.local.base-url:http://localhost:11434}")
     private String baseUrl;
 
@@ -36,26 +57,137 @@ public class LocalLLMService implements LLMService {
     @Value("${ai.llm.local.timeout:30000}")
     private int timeout;
 
+    @Value("${ai.llm.local.connect-timeout:5000}")
+    private int connectTimeout;
+
     @Value("${ai.llm.local.temperature:0.3}")
     private double temperature;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // 流式调用，数值字段出现后即可解析
+    @Value("${ai.llm.streaming.enabled:false}")
+    private boolean streaming;
+
+    // 流式调用时数值字段出现后立即返回，推荐理由等文字字段在输出结束后补充
+    @Value("${ai.llm.streaming.early-return:false}")
+    private boolean earlyReturn;
+
+    // 通过format参数要求按推荐输出的JSON Schema生成（需要Ollama 0.5及以上版本）
+    @Value("${ai.llm.structured-output.enabled:false}")
+    private boolean structuredOutput;
+
+    // 输出不符合格式时重试一次的输出token上限（num_predict），0表示不重试
+    @Value("${ai.llm.structured-output.retry-max-tokens:500}")
+    private int retryMaxTokens;
+
+    @Autowired
+    private LLMWebClientFactory webClientFactory;
+
+    @Autowired
+    private RecommendationMetrics metrics;
+
+    @Autowired
+    private PromptTemplateService promptTemplateService;
+
+    private WebClient webClient;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    @PostConstruct
+    public void initWebClient() {
+        this.webClient = webClientFactory.create(baseUrl, connectTimeout, timeout);
+    }
+
     @Override
     public LLMRecommendationResponse generateRecommendation(LLMRecommendationRequest request) {
-        try {
-            logger.info("正在为客户 {} 使用本地模型 {} 生成推荐", request.getCustomerCode(), model);
+        return generateRecommendationAsync(request).block();
+    }
 
-            String prompt = buildPrompt(request);
-            String response = callLocalLLM(prompt);
-            
-            return parseResponse(response, request);
+    @Override
+    public Mono<LLMRecommendationResponse> generateRecommendationAsync(LLMRecommendationRequest request) {
+        return Mono.defer(() -> {
+                    logger.info("正在为客户 {} 使用本地模型 {} 生成推荐", request.getCustomerCode(), model);
 
-        } catch (Exception e) {
-            logger.error("本地LLM服务调用失败", e);
-            return LLMRecommendationResponse.error("本地LLM服务调用失败: " + e.getMessage());
+                    // 精简模式下系统指令通过system字段单独发送
+                    long promptStart = System.nanoTime();
+                    CompactPrompt compactPrompt = promptTemplateService.isCompactMode()
+                            ? promptTemplateService.generateCompactPrompt(request) : null;
+                    String system = compactPrompt != null ? compactPrompt.system() : null;
+                    String prompt = compactPrompt != null ? compactPrompt.user() : buildPrompt(request);
+                    metrics.recordStage(Stage.PROMPT_BUILD, request.getCurrency(), promptStart);
+                    metrics.recordPromptSize(getProviderKey(), model,
+                            (system != null ? system.length() : 0) + prompt.length());
+
+                    long callStart = System.nanoTime();
+                    if (streaming) {
+                        // 流式调用：LLM_CALL阶段计到数值字段可用（提前返回时）或输出结束
+                        return StreamingRecommendationParser.collect(
+                                        streamLocalLLM(recommendationRequestBody(system, prompt, true, 0)), request,
+                                        model, earlyReturn, content -> parseResponse(content, request))
+                                .doOnNext(response -> metrics.recordStage(Stage.LLM_CALL, request.getCurrency(), callStart))
+                                .flatMap(response -> retryOnParseFailure(response, request, system, prompt));
+                    }
+                    return callLocalLLM(recommendationRequestBody(system, prompt, false, 0))
+                            .doOnNext(content -> metrics.recordStage(Stage.LLM_CALL, request.getCurrency(), callStart))
+                            .map(response -> {
+                                long parseStart = System.nanoTime();
+                                LLMRecommendationResponse parsed = parseResponse(response, request);
+                                metrics.recordStage(Stage.PARSE, request.getCurrency(), parseStart);
+                                return parsed;
+                            })
+                            .flatMap(response -> retryOnParseFailure(response, request, system, prompt));
+                })
+                .onErrorResume(e -> {
+                    logger.error("本地LLM服务调用失败", e);
+                    return Mono.just(LLMRecommendationResponse.error("本地LLM服务调用失败: " + e.getMessage()));
+                });
+    }
+
+    /**
+     * 一次调用为多个客户生成推荐，系统指令通过system字段发送，各客户的精简数据块合并为prompt。
+     * 结果缺失或无效的项单独调用单个请求接口回退；整个调用失败时返回错误，由调用方决定如何回退
+     */
+    @Override
+    public Mono<List<LLMRecommendationResponse>> generateRecommendationsAsync(List<LLMRecommendationRequest> requests) {
+        if (requests.size() < 2) {
+            return LLMService.super.generateRecommendationsAsync(requests);
+        }
+        return Mono.defer(() -> {
+                    logger.info("正在使用本地模型 {} 为 {} 个客户批量生成推荐", model, requests.size());
+                    CompactPrompt prompt = promptTemplateService.generateBatchPrompt(requests);
+                    metrics.recordPromptSize(getProviderKey(), model,
+                            prompt.system().length() + prompt.user().length());
+                    return callLocalLLM(buildRequestBody(prompt.system(), prompt.user(), false));
+                })
+                .map(content -> BatchResponseParser.parse(objectMapper, content, requests, model))
+                .flatMap(responses -> BatchResponseParser.completeIndividually(
+                        responses, requests, this::generateRecommendationAsync));
+    }
+
+    /**
+     * 记录解析结果；输出不符合推荐格式（解析回退）时以较小的num_predict非流式重试一次，重试调用失败时保留首次结果。
+     * 流式提前返回的响应只含已校验的数值字段，完整输出的解析结果在输出结束后记录，不再重试
+     */
+    private Mono<LLMRecommendationResponse> retryOnParseFailure(LLMRecommendationResponse response,
+                                                                LLMRecommendationRequest request,
+                                                                String system, String prompt) {
+        if (response.getCompletion() != null) {
+            response.getCompletion().subscribe(
+                    full -> metrics.recordParseResult(getProviderKey(), model, "first", !full.isParseFallback()),
+                    e -> {});
+            return Mono.just(response);
         }
+        metrics.recordParseResult(getProviderKey(), model, "first", !response.isParseFallback());
+        if (!response.isParseFallback() || retryMaxTokens <= 0) {
+            return Mono.just(response);
+        }
+
+        logger.warn("客户 {} 的本地模型输出不符合推荐格式，以 {} 个输出token重试", request.getCustomerCode(), retryMaxTokens);
+        return callLocalLLM(recommendationRequestBody(system, prompt, false, retryMaxTokens))
+                .map(content -> parseResponse(content, request))
+                .doOnNext(retried -> metrics.recordParseResult(getProviderKey(), model, "retry", !retried.isParseFallback()))
+                .onErrorResume(e -> {
+                    logger.warn("本地模型重试调用失败，使用首次结果: {}", e.getMessage());
+                    return Mono.just(response);
+                });
     }
 
     private String buildPrompt(LLMRecommendationRequest request) {
@@ -132,16 +264,64 @@ public class LocalLLMService implements LLMService {
         );
     }
 
-    private String callLocalLLM(String prompt) throws Exception {
-        String url = baseUrl + "/api/generate";
+    private Mono<String> callLocalLLM(Map<String, Object> requestBody) {
+        // 非2xx状态码由retrieve()转换为WebClientResponseException
+        return webClient.post()
+                .uri("/api/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .doOnNext(this::recordTokenUsage)
+                .map(responseJson -> responseJson.get("response").asText());
+    }
+
+    /**
+     * 流式调用生成接口，返回模型输出的文本片段
+     * Ollama以NDJSON逐行发送片段，最后一行（done为true）携带token用量
+     */
+    private Flux<String> streamLocalLLM(Map<String, Object> requestBody) {
+        return webClient.post()
+                .uri("/api/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToFlux(JsonNode.class)
+                .doOnNext(chunk -> {
+                    if (chunk.path("done").asBoolean()) {
+                        recordTokenUsage(chunk);
+                    }
+                })
+                .map(chunk -> chunk.path("response").asText(""))
+                .filter(content -> !content.isEmpty());
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    /**
+     * 单个推荐请求的请求体：启用结构化输出时附加format参数
+     * @param numPredict 输出token上限，0表示使用模型默认值
+     */
+    private Map<String, Object> recommendationRequestBody(String system, String prompt, boolean stream, int numPredict) {
+        Map<String, Object> requestBody = buildRequestBody(system, prompt, stream);
+        if (structuredOutput) {
+            requestBody.put("format", RecommendationOutputSchema.jsonSchema());
+        }
+        if (numPredict > 0) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> options = (Map<String, Object>) requestBody.get("options");
+            options.put("num_predict", numPredict);
+        }
+        return requestBody;
+    }
 
+    private Map<String, Object> buildRequestBody(String system, String prompt, boolean stream) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", model);
+        if (system != null) {
+            requestBody.put("system", system);
+        }
         requestBody.put("prompt", prompt);
-        requestBody.put("stream", false);
+        requestBody.put("stream", stream);
         
         // 添加参数控制
         Map<String, Object> options = new HashMap<>();
@@ -149,29 +329,30 @@ public class LocalLLMService implements LLMService {
         options.put("top_p", 0.9);
         options.put("top_k", 40);
         requestBody.put("options", options);
+        return requestBody;
+    }
 
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-
-        if (response.getStatusCode() == HttpStatus.OK) {
-            JsonNode responseJson = objectMapper.readTree(response.getBody());
-            return responseJson.get("response").asText();
-        } else {
-            throw new RuntimeException("本地LLM API调用失败: " + response.getStatusCode());
-        }
+    /**
+     * 记录Ollama响应给出的token用量（prompt_eval_count、eval_count）
+     */
+    private void recordTokenUsage(JsonNode responseJson) {
+        metrics.recordTokenUsage(getProviderKey(), model,
+                responseJson.path("prompt_eval_count").asLong(-1), responseJson.path("eval_count").asLong(-1));
     }
 
-    private LLMRecommendationResponse parseResponse(String apiResponse, LLMRecommendationRequest request) {
+    LLMRecommendationResponse parseResponse(String apiResponse, LLMRecommendationRequest request) {
         try {
-            // 提取JSON部分
-            String jsonStr = extractJsonFromResponse(apiResponse);
-            JsonNode jsonResponse = objectMapper.readTree(jsonStr);
+            // 提取JSON部分并直接绑定为响应
+            LLMRecommendationResponse response = RecommendationJsonExtractor.extract(apiResponse);
+            boolean extracted = response != null;
+            if (!extracted) {
+                logger.warn("无法提取JSON，使用默认响应");
+                response = RecommendationJsonExtractor.extract(FALLBACK_JSON);
+            }
+            RecommendationJsonExtractor.requireFields(response);
 
-            LLMRecommendationResponse response = new LLMRecommendationResponse();
-            
             // 解析推荐spread
-            BigDecimal recommendedSpread = new BigDecimal(jsonResponse.get("recommendedSpread").asText());
+            BigDecimal recommendedSpread = response.getRecommendedSpread();
             
             // 确保在约束范围内
             if (recommendedSpread.compareTo(request.getMinSpread()) < 0) {
@@ -184,18 +365,8 @@ public class LocalLLMService implements LLMService {
             }
             
             response.setRecommendedSpread(recommendedSpread);
-            response.setConfidenceScore(new BigDecimal(jsonResponse.get("confidenceScore").asText()));
-            response.setReasoning(jsonResponse.get("reasoning").asText());
-            response.setRiskAssessment(jsonResponse.get("riskAssessment").asText());
-            response.setMarketAnalysis(jsonResponse.get("marketAnalysis").asText());
             response.setModelUsed(model);
-
-            // 解析关键因素
-            if (jsonResponse.has("keyFactors")) {
-                List<String> keyFactors = new ArrayList<>();
-                jsonResponse.get("keyFactors").forEach(factor -> keyFactors.add(factor.asText()));
-                response.setKeyFactors(keyFactors);
-            }
+            response.setParseFallback(!extracted);
 
             logger.info("成功解析本地LLM响应，推荐spread: {}, 置信度: {}", 
                        recommendedSpread, response.getConfidenceScore());
@@ -214,53 +385,22 @@ public class LocalLLMService implements LLMService {
             fallbackResponse.setRiskAssessment("由于解析错误，采用保守的风险评估");
             fallbackResponse.setMarketAnalysis("无法完成市场分析，建议人工复核");
             fallbackResponse.setModelUsed(model + " (解析失败)");
+            fallbackResponse.setParseFallback(true);
             
             return fallbackResponse;
         }
     }
 
-    private String extractJsonFromResponse(String response) {
-        // 首先尝试找到```json块
-        Pattern codeBlockPattern = Pattern.compile("```json\\s*([\\s\\S]*?)\\s*```", Pattern.CASE_INSENSITIVE);
-        Matcher codeBlockMatcher = codeBlockPattern.matcher(response);
-        
-        if (codeBlockMatcher.find()) {
-            return codeBlockMatcher.group(1).trim();
-        }
-        
-        // 然后尝试找到任何JSON对象
-        Pattern jsonPattern = Pattern.compile("\\{[^{}]*(?:\\{[^{}]*\\}[^{}]*)*\\}", Pattern.DOTALL);
-        Matcher jsonMatcher = jsonPattern.matcher(response);
-        
-        if (jsonMatcher.find()) {
-            return jsonMatcher.group();
-        }
-        
-        // 如果都没找到，尝试简单的键值对提取
-        logger.warn("无法提取JSON，尝试简单解析");
-        return createFallbackJson(response);
-    }
-
-    private String createFallbackJson(String response) {
-        // 简单的回退策略：创建一个基本的JSON响应
-        return String.format("""
-            {
-                "recommendedSpread": "%s",
-                "confidenceScore": "0.5",
-                "reasoning": "LLM响应格式异常，采用默认策略",
-                "riskAssessment": "中等风险",
-                "marketAnalysis": "标准市场分析",
-                "keyFactors": ["数据质量", "市场稳定性", "客户历史表现"]
-            }
-            """, "0.1");
-    }
-
     @Override
     public boolean isAvailable() {
         try {
-            String url = baseUrl + "/api/tags";
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            return response.getStatusCode() == HttpStatus.OK;
+            // 健康检查只等待连接超时时长，避免阻塞调用方整个读取超时
+            return Boolean.TRUE.equals(webClient.get()
+                    .uri("/api/tags")
+                    .retrieve()
+                    .toBodilessEntity()
+                    .map(response -> response.getStatusCode().is2xxSuccessful())
+                    .block(Duration.ofMillis(connectTimeout)));
         } catch (Exception e) {
             logger.error("检查本地LLM服务可用性失败", e);
             return false;
@@ -276,4 +416,9 @@ public class LocalLLMService implements LLMService {
     public String getProvider() {
         return "Local LLM (Ollama)";
     }
+
+    @Override
+    public String getProviderKey() {
+        return "local";
+    }
 }
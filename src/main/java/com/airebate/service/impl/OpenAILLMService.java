@@ -1,28 +1,39 @@
 package com.airebate.service.impl;
 
+import com.airebate.config.LLMClientConfig.LLMWebClientFactory;
 import com.airebate.dto.LLMRecommendationRequest;
 import com.airebate.dto.LLMRecommendationResponse;
 import com.airebate.service.LLMService;
+import com.airebate.service.PromptTemplateService;
+import com.airebate.service.PromptTemplateService.CompactPrompt;
+import com.airebate.service.RecommendationMetrics;
+import com.airebate.service.RecommendationMetrics.Stage;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.http.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * OpenAI GPT服务实现
  */
 @Service
-@ConditionalOnProperty(name = "ai.llm.provider", havingValue = "openai")
+// 作为主要服务时启用，或在其他服务为主时通过 ai.llm.openai.enabled 作为备用服务启用
+@ConditionalOnExpression("'${ai.llm.provider:fallback}' == 'openai' or ${ai.llm.openai.enabled:false}")
 public class OpenAILLMService implements LLMService {
 
     private static final Logger logger = LoggerFactory.getLogger(OpenAILLMService.class);
@@ -42,23 +53,156 @@ public class OpenAILLMService implements LLMService {
     @Value("${ai.llm.openai.max-tokens:1000}")
     private int maxTokens;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // 多客户批量调用时每个客户的输出token上限
+    @Value("${ai.llm.openai.batch-max-tokens-per-item:300}")
+    private int batchMaxTokensPerItem;
+
+    // 流式调用，数值字段出现后即可解析
+    @Value("${ai.llm.streaming.enabled:false}")
+    private boolean streaming;
+
+    // 流式调用时数值字段出现后立即返回，推荐理由等文字字段在输出结束后补充
+    @Value("${ai.llm.streaming.early-return:false}")
+    private boolean earlyReturn;
+
+    // 通过response_format要求按推荐输出的JSON Schema生成（需要模型支持结构化输出）
+    @Value("${ai.llm.structured-output.enabled:false}")
+    private boolean structuredOutput;
+
+    // 输出不符合格式时重试一次的输出token上限，0表示不重试
+    @Value("${ai.llm.structured-output.retry-max-tokens:500}")
+    private int retryMaxTokens;
+
+    @Value("${ai.llm.openai.timeout:30000}")
+    private int timeout;
+
+    @Value("${ai.llm.openai.connect-timeout:5000}")
+    private int connectTimeout;
+
+    @Autowired
+    private LLMWebClientFactory webClientFactory;
+
+    @Autowired
+    private RecommendationMetrics metrics;
+
+    @Autowired
+    private PromptTemplateService promptTemplateService;
+
+    private WebClient webClient;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    @PostConstruct
+    public void initWebClient() {
+        this.webClient = webClientFactory.create(baseUrl, connectTimeout, timeout);
+    }
+
     @Override
     public LLMRecommendationResponse generateRecommendation(LLMRecommendationRequest request) {
-        try {
-            logger.info("正在为客户 {} 使用OpenAI GPT生成推荐", request.getCustomerCode());
+        return generateRecommendationAsync(request).block();
+    }
 
-            String prompt = buildPrompt(request);
-            String response = callOpenAI(prompt);
-            
-            return parseResponse(response, request);
+    @Override
+    public Mono<LLMRecommendationResponse> generateRecommendationAsync(LLMRecommendationRequest request) {
+        return Mono.defer(() -> {
+                    logger.info("正在为客户 {} 使用OpenAI GPT生成推荐", request.getCustomerCode());
 
-        } catch (Exception e) {
-            logger.error("OpenAI API调用失败", e);
-            return LLMRecommendationResponse.error("LLM服务调用失败: " + e.getMessage());
+                    long promptStart = System.nanoTime();
+                    List<Map<String, String>> messages = buildMessages(request);
+                    metrics.recordStage(Stage.PROMPT_BUILD, request.getCurrency(), promptStart);
+                    metrics.recordPromptSize(getProviderKey(), model,
+                            messages.stream().mapToInt(message -> message.get("content").length()).sum());
+
+                    long callStart = System.nanoTime();
+                    if (streaming) {
+                        // 流式调用：LLM_CALL阶段计到数值字段可用（提前返回时）或输出结束
+                        return StreamingRecommendationParser.collect(streamOpenAI(messages, maxTokens), request,
+                                        model, earlyReturn, content -> parseResponse(content, request))
+                                .doOnNext(response -> metrics.recordStage(Stage.LLM_CALL, request.getCurrency(), callStart))
+                                .flatMap(response -> retryOnParseFailure(response, request, messages));
+                    }
+                    return callOpenAI(messages, maxTokens, structuredOutput)
+                            .doOnNext(content -> metrics.recordStage(Stage.LLM_CALL, request.getCurrency(), callStart))
+                            .map(response -> {
+                                long parseStart = System.nanoTime();
+                                LLMRecommendationResponse parsed = parseResponse(response, request);
+                                metrics.recordStage(Stage.PARSE, request.getCurrency(), parseStart);
+                                return parsed;
+                            })
+                            .flatMap(response -> retryOnParseFailure(response, request, messages));
+                })
+                .onErrorResume(e -> {
+                    logger.error("OpenAI API调用失败", e);
+                    return Mono.just(LLMRecommendationResponse.error("LLM服务调用失败: " + e.getMessage()));
+                });
+    }
+
+    /**
+     * 一次调用为多个客户生成推荐，系统指令和各客户的精简数据块分别作为system和user消息发送。
+     * 结果缺失或无效的项单独调用单个请求接口回退；整个调用失败时返回错误，由调用方决定如何回退
+     */
+    @Override
+    public Mono<List<LLMRecommendationResponse>> generateRecommendationsAsync(List<LLMRecommendationRequest> requests) {
+        if (requests.size() < 2) {
+            return LLMService.super.generateRecommendationsAsync(requests);
         }
+        return Mono.defer(() -> {
+                    logger.info("正在使用OpenAI GPT为 {} 个客户批量生成推荐", requests.size());
+                    CompactPrompt prompt = promptTemplateService.generateBatchPrompt(requests);
+                    metrics.recordPromptSize(getProviderKey(), model,
+                            prompt.system().length() + prompt.user().length());
+                    return callOpenAI(List.of(message("system", prompt.system()), message("user", prompt.user())),
+                            batchMaxTokensPerItem * requests.size(), false);
+                })
+                .map(content -> BatchResponseParser.parse(objectMapper, content, requests, model))
+                .flatMap(responses -> BatchResponseParser.completeIndividually(
+                        responses, requests, this::generateRecommendationAsync));
+    }
+
+    /**
+     * 记录解析结果；输出不符合推荐格式（解析回退）时以较小的输出token上限非流式重试一次，重试调用失败时保留首次结果。
+     * 流式提前返回的响应只含已校验的数值字段，完整输出的解析结果在输出结束后记录，不再重试
+     */
+    private Mono<LLMRecommendationResponse> retryOnParseFailure(LLMRecommendationResponse response,
+                                                                LLMRecommendationRequest request,
+                                                                List<Map<String, String>> messages) {
+        if (response.getCompletion() != null) {
+            response.getCompletion().subscribe(
+                    full -> metrics.recordParseResult(getProviderKey(), model, "first", !full.isParseFallback()),
+                    e -> {});
+            return Mono.just(response);
+        }
+        metrics.recordParseResult(getProviderKey(), model, "first", !response.isParseFallback());
+        if (!response.isParseFallback() || retryMaxTokens <= 0) {
+            return Mono.just(response);
+        }
+
+        int retryTokens = Math.min(retryMaxTokens, maxTokens);
+        logger.warn("客户 {} 的OpenAI输出不符合推荐格式，以 {} 个输出token重试", request.getCustomerCode(), retryTokens);
+        return callOpenAI(messages, retryTokens, structuredOutput)
+                .map(content -> parseResponse(content, request))
+                .doOnNext(retried -> metrics.recordParseResult(getProviderKey(), model, "retry", !retried.isParseFallback()))
+                .onErrorResume(e -> {
+                    logger.warn("OpenAI重试调用失败，使用首次结果: {}", e.getMessage());
+                    return Mono.just(response);
+                });
+    }
+
+    /**
+     * 构建对话消息：精简模式下系统指令和数据块分为system和user两条消息，否则为一条完整提示词
+     */
+    private List<Map<String, String>> buildMessages(LLMRecommendationRequest request) {
+        if (promptTemplateService.isCompactMode()) {
+            CompactPrompt prompt = promptTemplateService.generateCompactPrompt(request);
+            return List.of(message("system", prompt.system()), message("user", prompt.user()));
+        }
+        return List.of(message("user", buildPrompt(request)));
+    }
+
+    private static Map<String, String> message(String role, String content) {
+        Map<String, String> message = new HashMap<>();
+        message.put("role", role);
+        message.put("content", content);
+        return message;
     }
 
     private String buildPrompt(LLMRecommendationRequest request) {
@@ -130,47 +274,93 @@ public class OpenAILLMService implements LLMService {
         );
     }
 
-    private String callOpenAI(String prompt) throws Exception {
-        String url = baseUrl + "/chat/completions";
+    /**
+     * @param structured 是否要求按推荐输出的JSON Schema生成，多客户批量调用输出为数组，不使用
+     */
+    private Mono<String> callOpenAI(List<Map<String, String>> messages, int maxTokens, boolean structured) {
+        Map<String, Object> requestBody = buildRequestBody(messages, maxTokens, structured);
+
+        // 非2xx状态码由retrieve()转换为WebClientResponseException
+        return webClient.post()
+                .uri("/chat/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> headers.setBearerAuth(apiKey))
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .doOnNext(this::recordTokenUsage)
+                .map(responseJson -> responseJson.get("choices").get(0).get("message").get("content").asText());
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(apiKey);
+    /**
+     * 流式调用Chat Completions接口，返回模型输出的文本片段
+     * 服务端以SSE发送每个片段，最后一个数据块携带token用量（stream_options.include_usage）
+     */
+    private Flux<String> streamOpenAI(List<Map<String, String>> messages, int maxTokens) {
+        Map<String, Object> requestBody = buildRequestBody(messages, maxTokens, structuredOutput);
+        requestBody.put("stream", true);
+        requestBody.put("stream_options", Map.of("include_usage", true));
 
+        return webClient.post()
+                .uri("/chat/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .headers(headers -> headers.setBearerAuth(apiKey))
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+                .mapNotNull(ServerSentEvent::data)
+                .filter(data -> !"[DONE]".equals(data.trim()))
+                .<String>handle((data, sink) -> {
+                    JsonNode chunk;
+                    try {
+                        chunk = objectMapper.readTree(data);
+                    } catch (JsonProcessingException e) {
+                        sink.error(e);
+                        return;
+                    }
+                    if (chunk.hasNonNull("usage")) {
+                        recordTokenUsage(chunk);
+                    }
+                    String content = chunk.path("choices").path(0).path("delta").path("content").asText("");
+                    if (!content.isEmpty()) {
+                        sink.next(content);
+                    }
+                });
+    }
+
+    private Map<String, Object> buildRequestBody(List<Map<String, String>> messages, int maxTokens, boolean structured) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", model);
         requestBody.put("temperature", temperature);
         requestBody.put("max_tokens", maxTokens);
-
-        List<Map<String, String>> messages = new ArrayList<>();
-        Map<String, String> message = new HashMap<>();
-        message.put("role", "user");
-        message.put("content", prompt);
-        messages.add(message);
         requestBody.put("messages", messages);
-
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-
-        if (response.getStatusCode() == HttpStatus.OK) {
-            JsonNode responseJson = objectMapper.readTree(response.getBody());
-            return responseJson.get("choices").get(0).get("message").get("content").asText();
-        } else {
-            throw new RuntimeException("OpenAI API调用失败: " + response.getStatusCode());
+        if (structured) {
+            requestBody.put("response_format", RecommendationOutputSchema.openAIResponseFormat());
         }
+        return requestBody;
+    }
+
+    /**
+     * 记录响应中usage字段给出的token用量
+     */
+    private void recordTokenUsage(JsonNode responseJson) {
+        JsonNode usage = responseJson.path("usage");
+        metrics.recordTokenUsage(getProviderKey(), model,
+                usage.path("prompt_tokens").asLong(-1), usage.path("completion_tokens").asLong(-1));
     }
 
     private LLMRecommendationResponse parseResponse(String apiResponse, LLMRecommendationRequest request) {
         try {
-            // 尝试解析JSON响应
-            String jsonStr = extractJsonFromResponse(apiResponse);
-            JsonNode jsonResponse = objectMapper.readTree(jsonStr);
+            // 提取JSON部分并直接绑定为响应
+            LLMRecommendationResponse response = RecommendationJsonExtractor.extract(apiResponse);
+            if (response == null) {
+                throw new IllegalArgumentException("响应中没有完整的JSON对象");
+            }
+            RecommendationJsonExtractor.requireFields(response);
 
-            LLMRecommendationResponse response = new LLMRecommendationResponse();
-            
             // 解析推荐spread
-            BigDecimal recommendedSpread = new BigDecimal(jsonResponse.get("recommendedSpread").asText());
+            BigDecimal recommendedSpread = response.getRecommendedSpread();
             
             // 确保在约束范围内
             if (recommendedSpread.compareTo(request.getMinSpread()) < 0) {
@@ -181,19 +371,8 @@ public class OpenAILLMService implements LLMService {
             }
             
             response.setRecommendedSpread(recommendedSpread);
-            response.setConfidenceScore(new BigDecimal(jsonResponse.get("confidenceScore").asText()));
-            response.setReasoning(jsonResponse.get("reasoning").asText());
-            response.setRiskAssessment(jsonResponse.get("riskAssessment").asText());
-            response.setMarketAnalysis(jsonResponse.get("marketAnalysis").asText());
             response.setModelUsed(model);
 
-            // 解析关键因素
-            if (jsonResponse.has("keyFactors")) {
-                List<String> keyFactors = new ArrayList<>();
-                jsonResponse.get("keyFactors").forEach(factor -> keyFactors.add(factor.asText()));
-                response.setKeyFactors(keyFactors);
-            }
-
             return response;
 
         } catch (Exception e) {
@@ -205,24 +384,12 @@ public class OpenAILLMService implements LLMService {
             fallbackResponse.setConfidenceScore(BigDecimal.valueOf(0.5));
             fallbackResponse.setReasoning("LLM响应解析失败，使用默认推荐值。原始响应: " + apiResponse);
             fallbackResponse.setModelUsed(model);
+            fallbackResponse.setParseFallback(true);
             
             return fallbackResponse;
         }
     }
 
-    private String extractJsonFromResponse(String response) {
-        // 尝试提取JSON部分
-        Pattern jsonPattern = Pattern.compile("\\{[^{}]*(?:\\{[^{}]*\\}[^{}]*)*\\}", Pattern.DOTALL);
-        Matcher matcher = jsonPattern.matcher(response);
-        
-        if (matcher.find()) {
-            return matcher.group();
-        }
-        
-        // 如果没有找到JSON，返回原始响应
-        return response;
-    }
-
     @Override
     public boolean isAvailable() {
         try {
@@ -243,4 +410,9 @@ public class OpenAILLMService implements LLMService {
     public String getProvider() {
         return "OpenAI";
     }
+
+    @Override
+    public String getProviderKey() {
+        return "openai";
+    }
 }
@@ -0,0 +1,112 @@
+package com.airebate.service.impl;
+
+import com.airebate.dto.LLMRecommendationResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 从模型输出中提取推荐JSON
+ * 依次从每个 '{' 处用Jackson流式解析器尝试读取一个完整对象（前后的说明文字、代码块标记不影响），
+ * 读取过程中直接绑定到推荐响应，不构建中间的JsonNode树，也不复制对象所在的子串。
+ * 嵌套层数不限，未识别的字段整体跳过；某处读取失败（如说明文字中的花括号）时从下一个 '{' 继续
+ */
+final class RecommendationJsonExtractor {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private RecommendationJsonExtractor() {}
+
+    /**
+     * 提取第一个完整的JSON对象并绑定为推荐响应，recommendedSpread不做范围限制；没有完整对象时返回null
+     */
+    static LLMRecommendationResponse extract(String content) {
+        char[] chars = content.toCharArray();
+        for (int start = content.indexOf('{'); start >= 0; start = content.indexOf('{', start + 1)) {
+            try (JsonParser parser = JSON_FACTORY.createParser(chars, start, chars.length - start)) {
+                return readObject(parser);
+            } catch (IOException | NumberFormatException e) {
+                // 从此处无法读取完整对象，尝试下一个 '{'
+            }
+        }
+        return null;
+    }
+
+    /**
+     * keyFactors以外的字段缺失时视为解析失败
+     */
+    static void requireFields(LLMRecommendationResponse response) {
+        if (response.getRecommendedSpread() == null || response.getConfidenceScore() == null ||
+                response.getReasoning() == null || response.getRiskAssessment() == null ||
+                response.getMarketAnalysis() == null) {
+            throw new IllegalArgumentException("LLM响应缺少必需字段");
+        }
+    }
+
+    private static LLMRecommendationResponse readObject(JsonParser parser) throws IOException {
+        parser.nextToken();
+        LLMRecommendationResponse response = new LLMRecommendationResponse();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "recommendedSpread" -> response.setRecommendedSpread(decimal(parser, value));
+                case "confidenceScore" -> response.setConfidenceScore(decimal(parser, value));
+                case "reasoning" -> response.setReasoning(text(parser, value));
+                case "riskAssessment" -> response.setRiskAssessment(text(parser, value));
+                case "marketAnalysis" -> response.setMarketAnalysis(text(parser, value));
+                case "keyFactors" -> response.setKeyFactors(textList(parser, value));
+                default -> parser.skipChildren();
+            }
+        }
+        // 对象未正常结束（输出被截断）时nextToken返回null
+        if (parser.currentToken() != JsonToken.END_OBJECT) {
+            throw new JsonParseException(parser, "JSON对象不完整");
+        }
+        return response;
+    }
+
+    private static BigDecimal decimal(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            return parser.getDecimalValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            return new BigDecimal(parser.getText().trim());
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static String text(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static List<String> textList(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<String> items = new ArrayList<>();
+        for (JsonToken item = parser.nextToken(); item != JsonToken.END_ARRAY; item = parser.nextToken()) {
+            if (item == null) {
+                throw new JsonParseException(parser, "JSON数组不完整");
+            }
+            if (item.isScalarValue()) {
+                items.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return items;
+    }
+}
@@ -0,0 +1,74 @@
+package com.airebate.service.impl;
+
+import com.airebate.dto.LLMRecommendationResponse;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 推荐输出的JSON Schema，用于服务端的结构化输出（OpenAI的response_format、Ollama的format）
+ * 属性类型由LLMRecommendationResponse中同名字段的类型得出：数值类型为number，String为string，List为对应元素类型的array
+ */
+final class RecommendationOutputSchema {
+
+    static final String NAME = "rebate_spread_recommendation";
+
+    // 模型输出的字段，顺序与提示词中的JSON示例一致，全部为必需字段
+    private static final List<String> OUTPUT_FIELDS = List.of(
+            "recommendedSpread", "confidenceScore", "reasoning", "riskAssessment", "marketAnalysis", "keyFactors");
+
+    private static final Map<String, Object> SCHEMA = buildSchema();
+
+    private RecommendationOutputSchema() {}
+
+    /**
+     * Ollama的format参数
+     */
+    static Map<String, Object> jsonSchema() {
+        return SCHEMA;
+    }
+
+    /**
+     * OpenAI的response_format参数，strict模式下要求全部属性必需且不允许额外属性
+     */
+    static Map<String, Object> openAIResponseFormat() {
+        return Map.of("type", "json_schema",
+                "json_schema", Map.of("name", NAME, "strict", true, "schema", SCHEMA));
+    }
+
+    private static Map<String, Object> buildSchema() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (String name : OUTPUT_FIELDS) {
+            try {
+                properties.put(name, typeSchema(LLMRecommendationResponse.class.getDeclaredField(name).getGenericType()));
+            } catch (NoSuchFieldException e) {
+                throw new IllegalStateException("LLMRecommendationResponse缺少输出字段: " + name, e);
+            }
+        }
+        Map<String, Object> schema = new LinkedHashMap<>();
+        schema.put("type", "object");
+        schema.put("properties", Collections.unmodifiableMap(properties));
+        schema.put("required", OUTPUT_FIELDS);
+        schema.put("additionalProperties", false);
+        return Collections.unmodifiableMap(schema);
+    }
+
+    private static Map<String, Object> typeSchema(Type type) {
+        if (type instanceof Class<?> cls) {
+            if (Number.class.isAssignableFrom(cls)) {
+                return Map.of("type", "number");
+            }
+            if (cls == String.class) {
+                return Map.of("type", "string");
+            }
+        }
+        if (type instanceof ParameterizedType parameterized && parameterized.getRawType() == List.class) {
+            return Map.of("type", "array", "items", typeSchema(parameterized.getActualTypeArguments()[0]));
+        }
+        throw new IllegalStateException("不支持的输出字段类型: " + type);
+    }
+}
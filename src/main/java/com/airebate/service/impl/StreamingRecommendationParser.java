@@ -0,0 +1,164 @@
+package com.airebate.service.impl;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.dto.LLMRecommendationResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.util.function.Function;
+
+/**
+ * 流式LLM输出的增量解析
+ * 逐段追加模型输出的文本，recommendedSpread和confidenceScore两个数值字段完整出现后即可读取，
+ * 不必等待reasoning、marketAnalysis等较长的文字字段生成完毕
+ */
+final class StreamingRecommendationParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingRecommendationParser.class);
+
+    private static final String SPREAD_KEY = "\"recommendedSpread\"";
+    private static final String CONFIDENCE_KEY = "\"confidenceScore\"";
+
+    private final StringBuilder text = new StringBuilder();
+
+    private BigDecimal recommendedSpread;
+    private BigDecimal confidenceScore;
+
+    /**
+     * 收集流式输出
+     * earlyReturn为true时，两个数值字段出现后立即返回只包含数值的响应，其completion在输出结束后发出完整解析的响应，
+     * 此后输出流在后台继续接收，不受调用方取消影响；数值字段直到输出结束仍未出现时返回完整解析的响应
+     * @param deltas 模型输出的文本片段
+     * @param parseFull 解析完整输出的方法
+     */
+    static Mono<LLMRecommendationResponse> collect(Flux<String> deltas, LLMRecommendationRequest request,
+                                                   String model, boolean earlyReturn,
+                                                   Function<String, LLMRecommendationResponse> parseFull) {
+        return Mono.defer(() -> {
+            StreamingRecommendationParser parser = new StreamingRecommendationParser();
+            Sinks.One<LLMRecommendationResponse> early = Sinks.one();
+            Mono<LLMRecommendationResponse> full = deltas
+                    .doOnNext(delta -> {
+                        if (parser.append(delta) && earlyReturn) {
+                            early.tryEmitValue(parser.earlyResponse(request, model));
+                        }
+                    })
+                    .then(Mono.fromCallable(() -> parseFull.apply(parser.getText())));
+            if (!earlyReturn) {
+                return full;
+            }
+
+            Mono<LLMRecommendationResponse> completion = full
+                    .doFinally(signal -> early.tryEmitEmpty())
+                    .cache();
+            completion.subscribe(response -> {}, e -> logger.debug("LLM流式输出中断: {}", e.getMessage()));
+            return early.asMono()
+                    .map(response -> {
+                        response.setCompletion(completion);
+                        return response;
+                    })
+                    .switchIfEmpty(completion);
+        });
+    }
+
+    /**
+     * 追加一段输出，返回两个数值字段是否在本次追加后首次全部可用
+     */
+    boolean append(CharSequence delta) {
+        text.append(delta);
+        if (hasEarlyFields()) {
+            return false;
+        }
+        if (recommendedSpread == null) {
+            recommendedSpread = scanNumber(SPREAD_KEY);
+        }
+        if (confidenceScore == null) {
+            confidenceScore = scanNumber(CONFIDENCE_KEY);
+        }
+        return hasEarlyFields();
+    }
+
+    boolean hasEarlyFields() {
+        return recommendedSpread != null && confidenceScore != null;
+    }
+
+    String getText() {
+        return text.toString();
+    }
+
+    BigDecimal getRecommendedSpread() {
+        return recommendedSpread;
+    }
+
+    BigDecimal getConfidenceScore() {
+        return confidenceScore;
+    }
+
+    /**
+     * 由已解析的数值字段构建响应，spread限制在请求的约束范围内，文字字段留空
+     */
+    private LLMRecommendationResponse earlyResponse(LLMRecommendationRequest request, String model) {
+        BigDecimal spread = recommendedSpread;
+        if (spread.compareTo(request.getMinSpread()) < 0) {
+            spread = request.getMinSpread();
+        }
+        if (spread.compareTo(request.getMaxSpread()) > 0) {
+            spread = request.getMaxSpread();
+        }
+        LLMRecommendationResponse response = new LLMRecommendationResponse();
+        response.setRecommendedSpread(spread);
+        response.setConfidenceScore(confidenceScore);
+        response.setModelUsed(model);
+        return response;
+    }
+
+    /**
+     * 查找键后的数值（可带引号），数值之后出现其他字符时才视为完整，避免读到被拆分到两段的数字。
+     * 数值无法解析或置信度不在0到1之间时返回null，交由完整解析处理
+     */
+    private BigDecimal scanNumber(String key) {
+        int keyAt = text.indexOf(key);
+        if (keyAt < 0) {
+            return null;
+        }
+        int i = skipWhitespace(keyAt + key.length());
+        if (i >= text.length() || text.charAt(i) != ':') {
+            return null;
+        }
+        i = skipWhitespace(i + 1);
+        if (i < text.length() && text.charAt(i) == '"') {
+            i++;
+        }
+        int start = i;
+        while (i < text.length() && isNumberChar(text.charAt(i))) {
+            i++;
+        }
+        if (i >= text.length() || i == start) {
+            return null;
+        }
+        try {
+            BigDecimal value = new BigDecimal(text.substring(start, i));
+            if (CONFIDENCE_KEY.equals(key) && (value.signum() < 0 || value.compareTo(BigDecimal.ONE) > 0)) {
+                return null;
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E';
+    }
+}
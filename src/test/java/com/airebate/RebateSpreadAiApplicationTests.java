@@ -1,16 +1,61 @@
 package com.airebate;
 
+import com.airebate.dto.BillingImportSummary;
+import com.airebate.dto.LLMRecommendationRequest;
 import com.airebate.dto.RecommendationRequest;
 import com.airebate.dto.RecommendationResponse;
+import com.airebate.model.BillingResult;
 import com.airebate.model.Currency;
+import com.airebate.model.Customer;
+import com.airebate.model.PrecomputeCheckpoint;
+import com.airebate.model.RebateSpreadRecommendation;
+import com.airebate.repository.BillingResultRepository;
+import com.airebate.repository.CustomerRepository;
+import com.airebate.repository.PrecomputeCheckpointRepository;
+import com.airebate.repository.RebateSpreadRecommendationRepository;
+import com.airebate.service.AIRecommendationEngine;
+import com.airebate.service.BillingFeatureVector;
+import com.airebate.service.BillingImportService;
+import com.airebate.service.BillingIngestionService;
+import com.airebate.service.BillingRollupService;
+import com.airebate.service.PromptTemplateService;
 import com.airebate.service.RebateSpreadService;
+import com.airebate.service.RecommendationCache;
+import com.airebate.service.RecommendationPrecomputeService;
+import com.airebate.service.RequestDeadline;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
 
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 
 @SpringBootTest
 class RebateSpreadAiApplicationTests {
@@ -18,6 +63,42 @@ class RebateSpreadAiApplicationTests {
     @Autowired
     private RebateSpreadService rebateSpreadService;
 
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private BillingResultRepository billingResultRepository;
+
+    @Autowired
+    private RebateSpreadRecommendationRepository recommendationRepository;
+
+    @Autowired
+    private BillingIngestionService billingIngestionService;
+
+    @Autowired
+    private BillingRollupService billingRollupService;
+
+    @Autowired
+    private BillingImportService billingImportService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private RecommendationCache recommendationCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RecommendationPrecomputeService precomputeService;
+
+    @Autowired
+    private PrecomputeCheckpointRepository checkpointRepository;
+
+    @SpyBean
+    private AIRecommendationEngine aiEngine;
+
     @Test
     void contextLoads() {
         // 测试Spring上下文是否正常加载
@@ -45,6 +126,501 @@ class RebateSpreadAiApplicationTests {
         }
     }
 
+    @Test
+    void testBatchRecommendationService() {
+        // 测试批量推荐：结果与请求一一对应，不存在的客户单独返回错误
+        RecommendationRequest usd = new RecommendationRequest("US_BANK_001", Currency.USD, LocalDate.now());
+        RecommendationRequest eur = new RecommendationRequest("EU_INVEST_002", Currency.EUR, LocalDate.now());
+        RecommendationRequest duplicate = new RecommendationRequest("US_BANK_001", Currency.USD, LocalDate.now());
+        RecommendationRequest unknown = new RecommendationRequest("UNKNOWN_999", Currency.USD, LocalDate.now());
+
+        List<RecommendationResponse> responses = 
+            rebateSpreadService.getRecommendations(List.of(usd, eur, duplicate, unknown));
+
+        assertEquals(4, responses.size());
+        assertEquals("SUCCESS", responses.get(0).getStatus());
+        assertEquals("US_BANK_001", responses.get(0).getCustomerCode());
+        assertEquals("SUCCESS", responses.get(1).getStatus());
+        assertEquals(Currency.EUR, responses.get(1).getCurrency());
+        assertEquals(responses.get(0).getRecommendedSpread(), responses.get(2).getRecommendedSpread());
+        assertEquals("ERROR", responses.get(3).getStatus());
+        assertEquals("UNKNOWN_999", responses.get(3).getCustomerCode());
+    }
+
+    @Test
+    void testNoConnectionHeldDuringGeneration() throws Exception {
+        // 测试推荐生成（包括LLM调用）期间不持有数据库连接
+        HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+        List<Integer> activeConnections = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            activeConnections.add(pool.getActiveConnections());
+            return invocation.callRealMethod();
+        }).when(aiEngine).generateRecommendation(any(), any(), any(), any(BillingFeatureVector.class), any());
+
+        // 使用较早的查询日期，避免命中其他测试生成的缓存推荐
+        LocalDate queryDate = LocalDate.now().minusDays(3);
+        RecommendationResponse response = rebateSpreadService.getRecommendation(
+            new RecommendationRequest("JP_SEC_003", Currency.JPY, queryDate));
+        List<RecommendationResponse> batch = rebateSpreadService.getRecommendations(List.of(
+            new RecommendationRequest("EU_INVEST_002", Currency.EUR, queryDate),
+            new RecommendationRequest("UK_FIN_004", Currency.GBP, queryDate)));
+
+        assertEquals("SUCCESS", response.getStatus());
+        assertTrue(batch.stream().allMatch(r -> "SUCCESS".equals(r.getStatus())));
+        assertEquals(3, activeConnections.size());
+        assertEquals(List.of(0, 0, 0), activeConnections);
+    }
+
+    @Test
+    void testConcurrentRecommendationsCoalesced() throws Exception {
+        // 测试相同客户/货币/日期的并发请求只生成一次推荐，过期后重新生成时替换原记录
+        AtomicInteger generations = new AtomicInteger();
+        doAnswer(invocation -> {
+            generations.incrementAndGet();
+            Thread.sleep(300);
+            return invocation.callRealMethod();
+        }).when(aiEngine).generateRecommendation(any(), any(), any(), any(BillingFeatureVector.class), any());
+
+        LocalDate queryDate = LocalDate.now().minusDays(4);
+        RecommendationRequest request = new RecommendationRequest("CN_INTL_005", Currency.CNY, queryDate);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<RecommendationResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> rebateSpreadService.getRecommendation(request)));
+            }
+            for (Future<RecommendationResponse> future : futures) {
+                assertEquals("SUCCESS", future.get().getStatus());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, generations.get());
+
+        Customer customer = customerRepository.findByCustomerCode("CN_INTL_005").orElseThrow();
+        RebateSpreadRecommendation saved = recommendationRepository
+            .findByCustomerAndCurrencyAndDate(customer, Currency.CNY, queryDate).orElseThrow();
+        saved.setValidUntil(LocalDateTime.now().minusMinutes(1));
+        recommendationRepository.save(saved);
+        recommendationCache.invalidateCustomers(List.of(customer.getId()));
+
+        assertEquals("SUCCESS", rebateSpreadService.getRecommendation(request).getStatus());
+        assertEquals(2, generations.get());
+        RebateSpreadRecommendation replaced = recommendationRepository
+            .findByCustomerAndCurrencyAndDate(customer, Currency.CNY, queryDate).orElseThrow();
+        assertEquals(saved.getId(), replaced.getId());
+        assertTrue(replaced.getValidUntil().isAfter(LocalDateTime.now()));
+    }
+
+    @Test
+    void testRecommendationNearCache() {
+        // 测试近端缓存：命中时不获取数据库连接，写入新账单后失效
+        LocalDate queryDate = LocalDate.now().minusDays(5);
+        RecommendationRequest request = new RecommendationRequest("US_BANK_001", Currency.USD, queryDate);
+        RecommendationResponse first = rebateSpreadService.getRecommendation(request);
+        assertEquals("SUCCESS", first.getStatus());
+
+        Timer connectionUsage = meterRegistry.get("hikaricp.connections.usage").timer();
+        long connectionsBefore = connectionUsage.count();
+        assertSame(first, rebateSpreadService.getRecommendation(request));
+        assertSame(first, rebateSpreadService.getRecommendations(List.of(request)).get(0));
+        assertEquals(connectionsBefore, connectionUsage.count());
+
+        Customer customer = customerRepository.findByCustomerCode("US_BANK_001").orElseThrow();
+        billingIngestionService.ingest(List.of(new BillingResult(customer, Currency.USD, queryDate,
+                                                                 BigDecimal.valueOf(25000), 50)));
+        assertNull(recommendationCache.get("US_BANK_001", Currency.USD, queryDate));
+    }
+
+    @Test
+    void testRecommendationPipelineMetrics() {
+        // 测试推荐流水线指标：生成推荐时记录各阶段耗时和生成结果，再次请求记录为缓存命中
+        LocalDate queryDate = LocalDate.now().minusDays(7);
+        RecommendationRequest request = new RecommendationRequest("UK_FIN_004", Currency.GBP, queryDate);
+        List<String> stages = List.of("customer_lookup", "cache_lookup", "history_fetch", "persist");
+        List<Long> stagesBefore = stages.stream()
+            .map(stage -> timerCount("ai.rebate.recommendation.stage", "stage", stage, "currency", "GBP"))
+            .toList();
+        long generatedBefore = timerCount("ai.rebate.recommendation.requests", "currency", "GBP", "outcome", "generated");
+        long cacheHitsBefore = timerCount("ai.rebate.recommendation.requests", "currency", "GBP", "outcome", "cache_hit");
+        long generationsBefore = timerCount("ai.rebate.recommendation.generations", "currency", "GBP");
+
+        assertEquals("SUCCESS", rebateSpreadService.getRecommendation(request).getStatus());
+        assertEquals("SUCCESS", rebateSpreadService.getRecommendationAsync(request).block().getStatus());
+
+        for (int i = 0; i < stages.size(); i++) {
+            assertEquals(stagesBefore.get(i) + 1,
+                         timerCount("ai.rebate.recommendation.stage", "stage", stages.get(i), "currency", "GBP"),
+                         stages.get(i));
+        }
+        assertEquals(generatedBefore + 1,
+                     timerCount("ai.rebate.recommendation.requests", "currency", "GBP", "outcome", "generated"));
+        assertEquals(cacheHitsBefore + 1,
+                     timerCount("ai.rebate.recommendation.requests", "currency", "GBP", "outcome", "cache_hit"));
+        assertEquals(generationsBefore + 1, timerCount("ai.rebate.recommendation.generations", "currency", "GBP"));
+    }
+
+    @Test
+    void testDeadlineDegradesToTraditionalAlgorithm() {
+        // 测试延迟预算：剩余时间不足以完成LLM调用时直接使用传统算法生成推荐
+        LocalDate queryDate = LocalDate.now().minusDays(8);
+        RecommendationRequest request = new RecommendationRequest("EU_INVEST_002", Currency.EUR, queryDate);
+        request.setTimeoutMillis(1L);
+        long traditionalBefore = timerCount("ai.rebate.recommendation.generations",
+                                            "currency", "EUR", "outcome", "traditional_fallback");
+
+        assertEquals("SUCCESS", rebateSpreadService.getRecommendationAsync(request).block().getStatus());
+        assertEquals(traditionalBefore + 1, timerCount("ai.rebate.recommendation.generations",
+                                                       "currency", "EUR", "outcome", "traditional_fallback"));
+    }
+
+    @Test
+    void testSyncRequestHonoursDeadline() throws Exception {
+        // 测试同步接口的延迟预算：合并到慢计算的请求在预算内改用传统算法返回，剩余时间不足时不调用LLM
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if (invocation.getArgument(4) == null) {
+                leaderStarted.countDown();
+                Thread.sleep(1000);
+            }
+            return invocation.callRealMethod();
+        }).when(aiEngine).generateRecommendation(any(), any(), any(), any(BillingFeatureVector.class), any());
+
+        LocalDate queryDate = LocalDate.now().minusDays(11);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<RecommendationResponse> slowFlight = executor.submit(() -> rebateSpreadService.getRecommendation(
+                new RecommendationRequest("EU_INVEST_002", Currency.EUR, queryDate)));
+            assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+
+            RecommendationRequest request = new RecommendationRequest("EU_INVEST_002", Currency.EUR, queryDate);
+            request.setTimeoutMillis(100L);
+            long traditionalBefore = timerCount("ai.rebate.recommendation.generations",
+                                                "currency", "EUR", "outcome", "traditional_fallback");
+            long start = System.nanoTime();
+            RecommendationResponse response = rebateSpreadService.getRecommendation(request);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals("SUCCESS", response.getStatus());
+            assertTrue(elapsedMillis < 600, "elapsed " + elapsedMillis + "ms");
+            assertFalse(slowFlight.isDone());
+            assertEquals(traditionalBefore + 1, timerCount("ai.rebate.recommendation.generations",
+                                                           "currency", "EUR", "outcome", "traditional_fallback"));
+            assertEquals("SUCCESS", slowFlight.get(5, TimeUnit.SECONDS).getStatus());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testCoalescedRequestHonoursOwnDeadline() throws Exception {
+        // 测试合并到进行中计算的请求超过自己的延迟预算时不再等待，改用传统算法生成推荐
+        // 没有截止时间的计算延迟1秒开始
+        AtomicInteger generations = new AtomicInteger();
+        doAnswer(invocation -> {
+            generations.incrementAndGet();
+            Mono<?> generation = (Mono<?>) invocation.callRealMethod();
+            return Mono.deferContextual(context -> context.hasKey(RequestDeadline.CONTEXT_KEY)
+                ? generation : Mono.delay(Duration.ofMillis(1000)).then(generation));
+        }).when(aiEngine).generateRecommendationAsync(any(), any(), any(), any(BillingFeatureVector.class));
+
+        LocalDate queryDate = LocalDate.now().minusDays(10);
+        CompletableFuture<RecommendationResponse> slowFlight = rebateSpreadService.getRecommendationAsync(
+            new RecommendationRequest("US_BANK_001", Currency.USD, queryDate)).toFuture();
+        RecommendationRequest request = new RecommendationRequest("US_BANK_001", Currency.USD, queryDate);
+        request.setTimeoutMillis(1L);
+        long traditionalBefore = timerCount("ai.rebate.recommendation.generations",
+                                            "currency", "USD", "outcome", "traditional_fallback");
+
+        assertEquals("SUCCESS", rebateSpreadService.getRecommendationAsync(request).block().getStatus());
+        assertFalse(slowFlight.isDone());
+        assertEquals(2, generations.get());
+        assertEquals(traditionalBefore + 1, timerCount("ai.rebate.recommendation.generations",
+                                                       "currency", "USD", "outcome", "traditional_fallback"));
+        assertEquals("SUCCESS", slowFlight.get(5, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    void testPendingReasonReplacedWhenStreamingFails() throws Exception {
+        // 测试流式LLM提前返回后输出中断或没有推荐理由时，占位推荐理由被替换为最终的默认理由
+        List<CompletableFuture<String>> pendingReasons = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            RebateSpreadRecommendation recommendation = (RebateSpreadRecommendation) invocation.callRealMethod();
+            CompletableFuture<String> pendingReason = new CompletableFuture<>();
+            recommendation.setRecommendationReason(AIRecommendationEngine.PENDING_LLM_REASON);
+            recommendation.setPendingReason(pendingReason);
+            pendingReasons.add(pendingReason);
+            return recommendation;
+        }).when(aiEngine).generateRecommendation(any(), any(), any(), any(BillingFeatureVector.class), any());
+
+        LocalDate queryDate = LocalDate.now().minusDays(9);
+        RecommendationResponse failed = rebateSpreadService.getRecommendation(
+            new RecommendationRequest("JP_SEC_003", Currency.JPY, queryDate));
+        RecommendationResponse blank = rebateSpreadService.getRecommendation(
+            new RecommendationRequest("UK_FIN_004", Currency.GBP, queryDate));
+        assertEquals(AIRecommendationEngine.PENDING_LLM_REASON, failed.getRecommendationReason());
+        assertEquals(AIRecommendationEngine.PENDING_LLM_REASON, blank.getRecommendationReason());
+
+        pendingReasons.get(0).completeExceptionally(new IllegalStateException("LLM流式输出中断"));
+        pendingReasons.get(1).complete(null);
+
+        assertEquals(AIRecommendationEngine.LLM_REASON_UNAVAILABLE, awaitReason("JP_SEC_003", Currency.JPY, queryDate));
+        assertEquals(AIRecommendationEngine.LLM_REASON_UNAVAILABLE, awaitReason("UK_FIN_004", Currency.GBP, queryDate));
+        Customer customer = customerRepository.findByCustomerCode("JP_SEC_003").orElseThrow();
+        assertEquals(AIRecommendationEngine.LLM_REASON_UNAVAILABLE, recommendationRepository
+            .findByCustomerAndCurrencyAndDate(customer, Currency.JPY, queryDate).orElseThrow().getRecommendationReason());
+    }
+
+    /**
+     * 等待近端缓存中的推荐理由不再是占位内容，最多2秒
+     */
+    private String awaitReason(String customerCode, Currency currency, LocalDate date) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        String reason = recommendationCache.get(customerCode, currency, date).getRecommendationReason();
+        while (AIRecommendationEngine.PENDING_LLM_REASON.equals(reason) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            reason = recommendationCache.get(customerCode, currency, date).getRecommendationReason();
+        }
+        return reason;
+    }
+
+    /**
+     * 匹配标签的所有计时器的记录次数之和
+     */
+    private long timerCount(String name, String... tags) {
+        return meterRegistry.find(name).tags(tags).timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    @Test
+    void testRecommendationPrecompute() {
+        // 测试推荐预计算：处理全部活跃组合后请求直接命中缓存，从检查点恢复时跳过已处理的组合
+        LocalDate runDate = LocalDate.now().minusDays(6);
+        PrecomputeCheckpoint checkpoint = precomputeService.precompute(runDate);
+        assertEquals("COMPLETED", checkpoint.getStatus());
+        assertTrue(checkpoint.getTotalPairs() > 0);
+        assertEquals(checkpoint.getTotalPairs(), checkpoint.getProcessedPairs());
+        assertEquals(0, checkpoint.getFailedPairs());
+
+        RecommendationResponse cached = recommendationCache.get(checkpoint.getLastCustomerCode(),
+                                                                checkpoint.getLastCurrency(), runDate);
+        assertNotNull(cached);
+        assertSame(cached, rebateSpreadService.getRecommendation(
+            new RecommendationRequest(checkpoint.getLastCustomerCode(), checkpoint.getLastCurrency(), runDate)));
+
+        // 模拟处理完最后一批后、标记完成前中断
+        checkpoint.setStatus("FAILED");
+        checkpointRepository.save(checkpoint);
+        PrecomputeCheckpoint resumed = precomputeService.precompute(runDate);
+        assertEquals("COMPLETED", resumed.getStatus());
+        assertEquals(checkpoint.getProcessedPairs(), resumed.getProcessedPairs());
+    }
+
+    @Test
+    void testBillingFeatureVector() {
+        // 测试特征向量：单次遍历结果与逐字段统计一致，拆分后合并结果不变
+        List<BillingResult> history = new ArrayList<>();
+        DescriptiveStatistics volatility = new DescriptiveStatistics();
+        for (int i = 0; i < 100; i++) {
+            BillingResult result = new BillingResult();
+            result.setTransactionAmount(BigDecimal.valueOf(1000 + i * 13.5));
+            result.setTransactionVolume(i % 7 == 0 ? null : 100 + i);
+            if (i % 5 != 0) {
+                result.setMarketVolatility(BigDecimal.valueOf(0.1 + (i % 9) * 0.05));
+                volatility.addValue(result.getMarketVolatility().doubleValue());
+            }
+            history.add(result);
+        }
+
+        BillingFeatureVector features = BillingFeatureVector.extract(history);
+        assertEquals(100, features.getRowCount());
+        assertEquals(volatility.getN(), features.getCount(BillingFeatureVector.Field.MARKET_VOLATILITY));
+        assertEquals(20, features.getNullCount(BillingFeatureVector.Field.MARKET_VOLATILITY));
+        assertEquals(volatility.getMean(), features.getMean(BillingFeatureVector.Field.MARKET_VOLATILITY, 0.5), 1e-9);
+        assertEquals(volatility.getStandardDeviation(),
+                     features.getStandardDeviation(BillingFeatureVector.Field.MARKET_VOLATILITY), 1e-9);
+        assertEquals(volatility.getMin(), features.getMin(BillingFeatureVector.Field.MARKET_VOLATILITY), 1e-12);
+        assertEquals(volatility.getMax(), features.getMax(BillingFeatureVector.Field.MARKET_VOLATILITY), 1e-12);
+        assertEquals(0.05, features.getMean(BillingFeatureVector.Field.PROFIT_MARGIN, 0.05));
+
+        BillingFeatureVector merged = BillingFeatureVector.extract(history.subList(0, 37))
+            .merge(BillingFeatureVector.extract(history.subList(37, 100)));
+        for (BillingFeatureVector.Field field : BillingFeatureVector.Field.values()) {
+            assertEquals(features.getCount(field), merged.getCount(field));
+            assertEquals(features.getMean(field, 0.0), merged.getMean(field, 0.0), 1e-9);
+            assertEquals(features.getStandardDeviation(field), merged.getStandardDeviation(field), 1e-9);
+        }
+    }
+
+    @Test
+    void testBillingRollupMatchesRawHistory() {
+        // 测试账单日汇总：增量写入后由日汇总得到的特征与原始账单一致
+        Customer customer = customerRepository.findByCustomerCode("CN_INTL_005").orElseThrow();
+        LocalDate endDate = LocalDate.now();
+        LocalDate startDate = endDate.minusDays(90);
+
+        List<BillingResult> newResults = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            BillingResult result = new BillingResult(customer, Currency.CNY, endDate.minusDays(1),
+                                                     BigDecimal.valueOf(40000 + i * 1000), 100 + i);
+            result.setMarketVolatility(i == 0 ? null : BigDecimal.valueOf(0.05 * i));
+            newResults.add(result);
+        }
+        billingIngestionService.ingest(newResults);
+
+        BillingFeatureVector raw = BillingFeatureVector.extract(
+            billingResultRepository.findByCustomerAndCurrencyAndDateRange(customer, Currency.CNY, startDate, endDate));
+        BillingFeatureVector rollup = billingRollupService.loadFeatures(customer, Currency.CNY, startDate, endDate);
+
+        assertEquals(raw.getRowCount(), rollup.getRowCount());
+        for (BillingFeatureVector.Field field : BillingFeatureVector.Field.values()) {
+            assertEquals(raw.getCount(field), rollup.getCount(field));
+            assertEquals(raw.getNullCount(field), rollup.getNullCount(field));
+            assertEquals(raw.getMean(field, 0.0), rollup.getMean(field, 0.0), 1e-6);
+            assertEquals(raw.getStandardDeviation(field), rollup.getStandardDeviation(field), 1e-6);
+            assertEquals(raw.getMax(field), rollup.getMax(field), 1e-9);
+        }
+    }
+
+    @Test
+    void testConcurrentIngestCreatesSameNewRollup() throws Exception {
+        // 测试多个事务并发写入同一客户/货币的新日期：首次新增日汇总依次进行，全部写入成功且汇总不丢失
+        Customer customer = customerRepository.findByCustomerCode("UK_FIN_004").orElseThrow();
+        LocalDate newDate = LocalDate.now().plusDays(1);
+        int writers = 4;
+        CountDownLatch ready = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<List<BillingResult>>> futures = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                BillingResult result = new BillingResult(customer, Currency.USD, newDate,
+                                                         BigDecimal.valueOf(10000 + i * 100), 10 + i);
+                futures.add(executor.submit(() -> {
+                    ready.await();
+                    return billingIngestionService.ingest(List.of(result));
+                }));
+            }
+            ready.countDown();
+            for (Future<List<BillingResult>> future : futures) {
+                assertEquals(1, future.get(10, TimeUnit.SECONDS).size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        BillingFeatureVector rollup = billingRollupService.loadFeatures(customer, Currency.USD, newDate, newDate);
+        assertEquals(writers, rollup.getRowCount());
+    }
+
+    @Test
+    void testStreamingBillingImport() {
+        // 测试流式导入：有效行按块写入，无效行记录为错误行且不影响其他行
+        Customer customer = customerRepository.findByCustomerCode("UK_FIN_004").orElseThrow();
+        long before = billingResultRepository.countByCustomerAndCurrency(customer, Currency.CHF);
+        String date = LocalDate.now().minusDays(2).toString();
+
+        String ndjson = String.join("\n",
+            "{\"customerCode\":\"UK_FIN_004\",\"currency\":\"CHF\",\"billingDate\":\"" + date +
+                "\",\"transactionAmount\":1200.5,\"transactionVolume\":12}",
+            "",
+            "{\"customerCode\":\"UNKNOWN_999\",\"currency\":\"CHF\",\"billingDate\":\"" + date +
+                "\",\"transactionAmount\":1200.5,\"transactionVolume\":12}",
+            "{\"customerCode\":\"UK_FIN_004\",\"currency\":\"CHF\",\"billingDate\":\"" + date +
+                "\",\"transactionAmount\":-5,\"transactionVolume\":12}",
+            "not json");
+        BillingImportSummary ndjsonSummary = billingImportService.importStream(
+            new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), BillingImportService.Format.NDJSON, null);
+
+        assertEquals("COMPLETED", ndjsonSummary.getStatus());
+        assertEquals(5, ndjsonSummary.getLinesRead());
+        assertEquals(1, ndjsonSummary.getImportedCount());
+        assertEquals(3, ndjsonSummary.getFailedCount());
+        assertEquals(List.of(3L, 4L, 5L), ndjsonSummary.getErrors().stream().map(BillingImportSummary.ImportError::line).toList());
+
+        String csv = String.join("\n",
+            "customer_code,currency,billing_date,transaction_amount,transaction_volume,market_volatility",
+            "UK_FIN_004,CHF," + date + ",\"2,500.00\",20,0.05",
+            "UK_FIN_004,CHF," + date + ",2500.00,20,0.05",
+            "UK_FIN_004,CHF,,2500.00,20,");
+        BillingImportSummary csvSummary = billingImportService.importStream(
+            new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), BillingImportService.Format.CSV, "csv-import");
+
+        assertEquals(1, csvSummary.getImportedCount());
+        assertEquals(2, csvSummary.getFailedCount());
+        assertSame(csvSummary, billingImportService.getProgress("csv-import").orElseThrow());
+        assertEquals(before + 2, billingResultRepository.countByCustomerAndCurrency(customer, Currency.CHF));
+    }
+
+    @Test
+    void testCompactPromptBudget() {
+        // 测试精简提示词：远小于完整模板，超出token预算时省略可选字段，必需字段始终保留
+        LLMRecommendationRequest request = new LLMRecommendationRequest();
+        request.setCustomerCode("US_BANK_001");
+        request.setCustomerName("美国银行");
+        request.setCurrency(Currency.USD);
+        request.setRecommendationDate(LocalDate.of(2024, 6, 1));
+        request.setAvgTransactionVolume(BigDecimal.valueOf(251.27659574468086));
+        request.setAvgTransactionAmount(BigDecimal.valueOf(50321.456789));
+        request.setAvgProfitMargin(BigDecimal.valueOf(0.052341));
+        request.setAvgLiquidityScore(BigDecimal.valueOf(5.4321));
+        request.setMarketVolatility(BigDecimal.valueOf(0.4812345));
+        request.setCustomerRiskLevel(1.2);
+        request.setCustomerTradingVolume(25000.0);
+        request.setMinSpread(BigDecimal.valueOf(0.01));
+        request.setMaxSpread(BigDecimal.valueOf(0.5));
+        request.setDefaultSpread(BigDecimal.valueOf(0.1));
+        request.setMarketCondition("市场波动正常，美元市场流动性充足，作为全球储备货币具有稳定性");
+        request.setCustomerProfile("标准风险客户，中等交易频率");
+
+        PromptTemplateService promptTemplateService = new PromptTemplateService();
+        ReflectionTestUtils.setField(promptTemplateService, "maxPromptTokens", 400);
+        PromptTemplateService.CompactPrompt compact = promptTemplateService.generateCompactPrompt(request);
+        int fullTokens = PromptTemplateService.estimateTokens(promptTemplateService.generateStandardPrompt(request));
+        assertTrue(compact.estimatedTokens() <= 400);
+        assertTrue(compact.estimatedTokens() * 2 < fullTokens,
+                   "精简提示词 " + compact.estimatedTokens() + " tokens，完整模板 " + fullTokens + " tokens");
+        assertTrue(compact.user().contains("画像: 标准风险客户"));
+        assertTrue(compact.user().contains("平均交易量=251.3"));
+
+        // 预算略高于省略全部可选字段后的估算值（分段估算有取整误差）
+        int budget = compact.estimatedTokens() + 3 - PromptTemplateService.estimateTokens(
+            "\n名称: 美国银行\n画像: 标准风险客户，中等交易频率\n市场: " + request.getMarketCondition());
+        ReflectionTestUtils.setField(promptTemplateService, "maxPromptTokens", budget);
+        PromptTemplateService.CompactPrompt trimmed = promptTemplateService.generateCompactPrompt(request);
+        assertTrue(trimmed.estimatedTokens() <= budget);
+        assertFalse(trimmed.user().contains("名称:"));
+        assertFalse(trimmed.user().contains("画像:"));
+        assertFalse(trimmed.user().contains("市场:"));
+        assertTrue(trimmed.user().contains("客户: US_BANK_001"));
+        assertTrue(trimmed.user().contains("spread范围: [0.01, 0.5]"));
+    }
+
+    @Test
+    void testBatchPrompt() {
+        // 测试多客户批量提示词：每个客户一个带序号的精简数据块，系统指令只出现一次
+        PromptTemplateService promptTemplateService = new PromptTemplateService();
+        ReflectionTestUtils.setField(promptTemplateService, "maxPromptTokens", 400);
+        List<LLMRecommendationRequest> requests = new ArrayList<>();
+        for (String code : List.of("US_BANK_001", "EU_INVEST_002", "JP_SEC_003")) {
+            LLMRecommendationRequest request = new LLMRecommendationRequest();
+            request.setCustomerCode(code);
+            request.setCurrency(Currency.USD);
+            request.setRecommendationDate(LocalDate.of(2024, 6, 1));
+            request.setMinSpread(BigDecimal.valueOf(0.01));
+            request.setMaxSpread(BigDecimal.valueOf(0.5));
+            request.setDefaultSpread(BigDecimal.valueOf(0.1));
+            requests.add(request);
+        }
+
+        PromptTemplateService.CompactPrompt batch = promptTemplateService.generateBatchPrompt(requests);
+        PromptTemplateService.CompactPrompt single = promptTemplateService.generateCompactPrompt(requests.get(0));
+        assertTrue(batch.user().startsWith("#1\n客户: US_BANK_001"));
+        assertTrue(batch.user().contains("\n\n#2\n客户: EU_INVEST_002"));
+        assertTrue(batch.user().contains("\n\n#3\n客户: JP_SEC_003"));
+        assertTrue(batch.system().contains("JSON数组"));
+        assertTrue(batch.estimatedTokens() < single.estimatedTokens() * 3,
+                   "批量提示词 " + batch.estimatedTokens() + " tokens，单个精简提示词 " + single.estimatedTokens() + " tokens");
+    }
+
     @Test
     void testGetSystemStats() {
         // 测试系统统计功能
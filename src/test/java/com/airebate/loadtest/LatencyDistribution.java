@@ -0,0 +1,47 @@
+package com.airebate.loadtest;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 桩LLM服务的响应延迟分布
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * 抽取一次响应延迟（毫秒）
+     */
+    long nextMillis(Random random);
+
+    static LatencyDistribution fixed(long millis) {
+        return random -> millis;
+    }
+
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * 对数正态分布，接近真实LLM延迟的长尾形态
+     * @param medianMillis 中位数
+     * @param sigma 对数标准差，越大尾部越长
+     */
+    static LatencyDistribution logNormal(long medianMillis, double sigma) {
+        double mu = Math.log(medianMillis);
+        return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    /**
+     * 解析延迟分布描述，格式为 fixed:200、uniform:100:500 或 lognormal:300:0.5
+     */
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().toLowerCase(Locale.ROOT).split(":");
+        return switch (parts[0]) {
+            case "fixed" -> fixed(Long.parseLong(parts[1]));
+            case "uniform" -> uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            case "lognormal" -> logNormal(Long.parseLong(parts[1]), Double.parseDouble(parts[2]));
+            default -> throw new IllegalArgumentException("不支持的延迟分布: " + spec);
+        };
+    }
+}
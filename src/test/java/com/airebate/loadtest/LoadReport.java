@@ -0,0 +1,44 @@
+package com.airebate.loadtest;
+
+import java.util.List;
+
+/**
+ * 负载测试结果
+ * 延迟单位为毫秒，连接池/线程池占用为运行期间采样到的最大值，-1表示指标不可用
+ */
+public record LoadReport(double targetRps, int requests, int failures, double throughput,
+                         long p50Millis, long p95Millis, long p99Millis, long maxMillis,
+                         int dbPoolSize, int maxDbActive, int maxDbPending, int maxTomcatBusy,
+                         int maxLlmActive, int maxLlmPending) {
+
+    /**
+     * 单个请求的结果，延迟从计划发送时间起算
+     */
+    record Outcome(long latencyNanos, boolean success) {}
+
+    static LoadReport of(double targetRps, List<Outcome> outcomes, long elapsedNanos, int dbPoolSize,
+                         int maxDbActive, int maxDbPending, int maxTomcatBusy, int maxLlmActive, int maxLlmPending) {
+        long[] latencies = outcomes.stream().mapToLong(outcome -> outcome.latencyNanos() / 1_000_000).sorted().toArray();
+        int failures = (int) outcomes.stream().filter(outcome -> !outcome.success()).count();
+        return new LoadReport(targetRps, outcomes.size(), failures, outcomes.size() * 1_000_000_000.0 / elapsedNanos,
+                              percentile(latencies, 0.50), percentile(latencies, 0.95), percentile(latencies, 0.99),
+                              latencies.length == 0 ? 0 : latencies[latencies.length - 1],
+                              dbPoolSize, maxDbActive, maxDbPending, maxTomcatBusy, maxLlmActive, maxLlmPending);
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "目标 %.1f 次/秒, 请求 %d, 失败 %d, 吞吐量 %.1f 次/秒, 延迟 p50 %d ms / p95 %d ms / p99 %d ms / max %d ms, " +
+            "数据库连接 最大活跃 %d/%d 最大等待 %d, Tomcat最大繁忙线程 %d, LLM连接 最大活跃 %d 最大等待 %d",
+            targetRps, requests, failures, throughput, p50Millis, p95Millis, p99Millis, maxMillis,
+            maxDbActive, dbPoolSize, maxDbPending, maxTomcatBusy, maxLlmActive, maxLlmPending);
+    }
+}
@@ -0,0 +1,215 @@
+package com.airebate.loadtest;
+
+import com.airebate.RebateSpreadAiApplication;
+import com.airebate.model.BillingResult;
+import com.airebate.model.Currency;
+import com.airebate.model.Customer;
+import com.airebate.repository.CustomerRepository;
+import com.airebate.service.BillingIngestionService;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 推荐接口负载测试工具
+ * 按目标速率开环发送 /recommend 请求，延迟从计划发送时间起算，系统变慢时排队时间也计入延迟；
+ * 运行期间采样数据库连接池、Tomcat线程池和LLM HTTP连接池的占用，报告延迟分位数、吞吐量和资源饱和度
+ */
+public class LoadTestHarness implements AutoCloseable {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 50;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(120);
+
+    private final ConfigurableApplicationContext context;
+    private final int port;
+    private final ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client;
+
+    public LoadTestHarness(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        this.client = HttpClient.newBuilder().executor(clientExecutor).build();
+    }
+
+    /**
+     * 以负载测试配置启动应用：随机端口、独立的内存数据库、关闭推荐缓存和LLM响应缓存（每个请求都生成推荐）、
+     * 关闭预计算任务、降低日志级别，并开启Tomcat线程池指标。args中不应重复这里已设置的属性
+     */
+    public static ConfigurableApplicationContext startApplication(String... args) {
+        List<String> arguments = new ArrayList<>(List.of(
+            "--server.port=0",
+            "--server.tomcat.mbeanregistry.enabled=true",
+            "--spring.datasource.url=jdbc:h2:mem:load_" + UUID.randomUUID(),
+            "--spring.jpa.show-sql=false",
+            "--logging.level.root=WARN",
+            "--logging.level.com.airebate=WARN",
+            "--ai.llm.cache.enabled=false",
+            "--ai.rebate.recommendation-cache.enabled=false",
+            "--ai.rebate.precompute.enabled=false"));
+        arguments.addAll(List.of(args));
+        return new SpringApplicationBuilder(RebateSpreadAiApplication.class).run(arguments.toArray(String[]::new));
+    }
+
+    /**
+     * 创建负载测试客户，每个客户在今天之前的historyDays天内每天一条主货币账单。
+     * 返回每个客户最近queryDays天的推荐请求地址，按日期分组排列，相邻请求属于不同客户
+     */
+    public List<URI> seedRecommendationTargets(int customers, int historyDays, int queryDays) {
+        Random random = new Random(42);
+        Currency[] currencies = Currency.values();
+        List<Customer> seeded = new ArrayList<>();
+        for (int i = 0; i < customers; i++) {
+            Customer customer = new Customer(String.format("LOAD_%05d", i), "负载测试客户" + i,
+                                             currencies[i % currencies.length]);
+            customer.setRiskLevel(0.5 + random.nextDouble() * 1.5);
+            customer.setTradingVolume(random.nextDouble() * 100000);
+            seeded.add(customer);
+        }
+        seeded = context.getBean(CustomerRepository.class).saveAll(seeded);
+
+        BillingIngestionService ingestionService = context.getBean(BillingIngestionService.class);
+        LocalDate today = LocalDate.now();
+        List<BillingResult> chunk = new ArrayList<>();
+        for (Customer customer : seeded) {
+            for (int day = 1; day <= historyDays; day++) {
+                BillingResult result = new BillingResult(customer, customer.getPrimaryCurrency(), today.minusDays(day),
+                    decimal(1000 + random.nextDouble() * 99000, 2), 1 + random.nextInt(500));
+                result.setMarketVolatility(decimal(random.nextDouble(), 4));
+                result.setLiquidityScore(decimal(1 + random.nextDouble() * 9, 2));
+                result.setProfitMargin(decimal(random.nextDouble() * 0.1, 4));
+                chunk.add(result);
+            }
+            if (chunk.size() >= 5000) {
+                ingestionService.ingest(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            ingestionService.ingest(chunk);
+        }
+
+        List<URI> targets = new ArrayList<>();
+        for (int day = 1; day <= queryDays; day++) {
+            for (Customer customer : seeded) {
+                targets.add(recommendUri(customer.getCustomerCode(), customer.getPrimaryCurrency(), today.minusDays(day)));
+            }
+        }
+        return targets;
+    }
+
+    public URI recommendUri(String customerCode, Currency currency, LocalDate queryDate) {
+        return URI.create("http://localhost:" + port + "/api/rebate-ai/recommendations/recommend" +
+                          "?customerCode=" + customerCode + "&currency=" + currency + "&queryDate=" + queryDate);
+    }
+
+    /**
+     * 以目标速率发送请求并等待全部完成，targets按顺序循环使用
+     * 响应为HTTP 200且推荐状态为SUCCESS时计为成功
+     */
+    public LoadReport run(List<URI> targets, double requestsPerSecond, Duration duration) {
+        int total = (int) Math.round(requestsPerSecond * duration.toMillis() / 1000.0);
+        long intervalNanos = (long) (1_000_000_000L / requestsPerSecond);
+
+        SaturationSampler sampler = new SaturationSampler();
+        ScheduledExecutorService sampling = Executors.newSingleThreadScheduledExecutor();
+        sampling.scheduleAtFixedRate(sampler::sample, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            List<CompletableFuture<LoadReport.Outcome>> pending = new ArrayList<>(total);
+            long start = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                long scheduledAt = start + i * intervalNanos;
+                long wait;
+                while ((wait = scheduledAt - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                HttpRequest request = HttpRequest.newBuilder(targets.get(i % targets.size()))
+                    .timeout(REQUEST_TIMEOUT).GET().build();
+                pending.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .handle((response, error) -> new LoadReport.Outcome(System.nanoTime() - scheduledAt,
+                        error == null && response.statusCode() == 200 &&
+                        response.body().contains("\"status\":\"SUCCESS\""))));
+            }
+            List<LoadReport.Outcome> outcomes = pending.stream().map(CompletableFuture::join).toList();
+            long elapsedNanos = System.nanoTime() - start;
+            sampler.sample();
+            return LoadReport.of(requestsPerSecond, outcomes, elapsedNanos, sampler.dbPoolSize,
+                                 sampler.maxDbActive.get(), sampler.maxDbPending.get(), sampler.maxTomcatBusy.get(),
+                                 sampler.maxLlmActive.get(), sampler.maxLlmPending.get());
+        } finally {
+            sampling.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() {
+        client.close();
+        clientExecutor.shutdownNow();
+    }
+
+    private static BigDecimal decimal(double value, int scale) {
+        return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * 记录运行期间各连接池/线程池占用的最大值，指标不存在时保持-1
+     */
+    private class SaturationSampler {
+
+        private final HikariPoolMXBean dbPool;
+        private final int dbPoolSize;
+        private final MeterRegistry meterRegistry;
+
+        private final AtomicInteger maxDbActive = new AtomicInteger(-1);
+        private final AtomicInteger maxDbPending = new AtomicInteger(-1);
+        private final AtomicInteger maxTomcatBusy = new AtomicInteger(-1);
+        private final AtomicInteger maxLlmActive = new AtomicInteger(-1);
+        private final AtomicInteger maxLlmPending = new AtomicInteger(-1);
+
+        private SaturationSampler() {
+            HikariDataSource dataSource = context.getBean(HikariDataSource.class);
+            this.dbPool = dataSource.getHikariPoolMXBean();
+            this.dbPoolSize = dataSource.getMaximumPoolSize();
+            this.meterRegistry = context.getBean(MeterRegistry.class);
+        }
+
+        private void sample() {
+            maxDbActive.accumulateAndGet(dbPool.getActiveConnections(), Math::max);
+            maxDbPending.accumulateAndGet(dbPool.getThreadsAwaitingConnection(), Math::max);
+            record(maxTomcatBusy, "tomcat.threads.busy");
+            record(maxLlmActive, "reactor.netty.connection.provider.active.connections");
+            record(maxLlmPending, "reactor.netty.connection.provider.pending.connections");
+        }
+
+        private void record(AtomicInteger max, String gaugeName) {
+            var gauges = meterRegistry.find(gaugeName).gauges();
+            if (!gauges.isEmpty()) {
+                int value = (int) gauges.stream().mapToDouble(Gauge::value).sum();
+                max.accumulateAndGet(value, Math::max);
+            }
+        }
+    }
+}
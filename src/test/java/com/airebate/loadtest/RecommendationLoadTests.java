@@ -0,0 +1,66 @@
+package com.airebate.loadtest;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 推荐接口端到端负载测试
+ * 本地桩LLM服务同时提供OpenAI和Ollama接口，OpenAI为主要服务、Ollama为故障转移服务，按配置的延迟分布响应，
+ * 并按比例返回HTTP 500和截断的JSON。以目标速率请求 /recommend，报告延迟分位数、吞吐量和连接池饱和度。
+ * 默认构建不运行，通过 mvn test -Pload-test 执行；负载参数可通过以下系统属性调整：
+ * load-test.rps、load-test.duration-seconds、load-test.customers、
+ * load-test.llm-latency（如 lognormal:300:0.5）、load-test.llm-error-rate、load-test.llm-malformed-rate
+ */
+@Tag("load-test")
+class RecommendationLoadTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationLoadTests.class);
+
+    private static final double RPS = Double.parseDouble(System.getProperty("load-test.rps", "50"));
+    private static final int DURATION_SECONDS = Integer.getInteger("load-test.duration-seconds", 30);
+    private static final int CUSTOMERS = Integer.getInteger("load-test.customers", 200);
+    private static final String LLM_LATENCY = System.getProperty("load-test.llm-latency", "lognormal:300:0.5");
+    private static final double LLM_ERROR_RATE = Double.parseDouble(System.getProperty("load-test.llm-error-rate", "0.02"));
+    private static final double LLM_MALFORMED_RATE =
+        Double.parseDouble(System.getProperty("load-test.llm-malformed-rate", "0.02"));
+
+    private static final int HISTORY_DAYS = 60;
+    private static final int QUERY_DAYS = 30;
+    private static final int WARM_UP_SECONDS = 5;
+
+    @Test
+    void recommendUnderSustainedLoad() {
+        try (StubLLMServer llm = StubLLMServer.start(LatencyDistribution.parse(LLM_LATENCY), LLM_ERROR_RATE,
+                                                     LLM_MALFORMED_RATE);
+             ConfigurableApplicationContext context = LoadTestHarness.startApplication(
+                 "--ai.llm.provider=openai",
+                 "--ai.llm.openai.api-key=load-test",
+                 "--ai.llm.openai.base-url=" + llm.getOpenAiBaseUrl(),
+                 "--ai.llm.local.enabled=true",
+                 "--ai.llm.local.base-url=" + llm.getOllamaBaseUrl());
+             LoadTestHarness harness = new LoadTestHarness(context)) {
+
+            List<URI> targets = harness.seedRecommendationTargets(CUSTOMERS, HISTORY_DAYS, QUERY_DAYS);
+            // 预热使用队尾的请求，正式运行从头开始，两次运行不重复同一组合
+            harness.run(targets.reversed(), RPS, Duration.ofSeconds(WARM_UP_SECONDS));
+            LoadReport report = harness.run(targets, RPS, Duration.ofSeconds(DURATION_SECONDS));
+
+            logger.warn("推荐接口负载测试（LLM延迟 {}，错误率 {}，格式错误率 {}，{} 个组合）:", LLM_LATENCY,
+                        LLM_ERROR_RATE, LLM_MALFORMED_RATE, targets.size());
+            logger.warn("  {}", report);
+            logger.warn("  桩LLM服务: {}", llm);
+
+            assertEquals(0, report.failures(), "存在失败的推荐请求");
+            assertTrue(llm.getOpenAiRequests() > 0, "推荐未调用OpenAI接口");
+        }
+    }
+}
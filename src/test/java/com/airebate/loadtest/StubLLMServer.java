@@ -0,0 +1,171 @@
+package com.airebate.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 嵌入式桩LLM服务
+ * 同时提供OpenAI（/v1/chat/completions）和Ollama（/api/generate、/api/tags）协议，
+ * 按配置的延迟分布响应，并按比例返回服务端错误或无法解析的模型输出，用于可复现的负载测试
+ */
+public class StubLLMServer implements AutoCloseable {
+
+    private static final String RECOMMENDATION_JSON = """
+        {
+            "recommendedSpread": 0.12,
+            "confidenceScore": 0.8,
+            "reasoning": "负载测试桩响应：交易量稳定，市场波动处于中等水平",
+            "riskAssessment": "中等风险",
+            "marketAnalysis": "市场流动性充足，短期维持区间震荡",
+            "keyFactors": ["交易量", "市场波动率", "流动性"]
+        }""";
+
+    // 截断的JSON，模拟模型输出被截断或格式错误
+    private static final String MALFORMED_COMPLETION = "```json\n{\n    \"recommendedSpread\": 0.12,\n    \"confidenceScore\": ";
+
+    private static final String VALID_COMPLETION = "根据提供的数据分析如下：\n```json\n" + RECOMMENDATION_JSON + "\n```";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final double malformedRate;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong openAiRequests = new AtomicLong();
+    private final AtomicLong ollamaRequests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+
+    private StubLLMServer(LatencyDistribution latency, double errorRate, double malformedRate) throws IOException {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.malformedRate = malformedRate;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", exchange -> handleGeneration(exchange, openAiRequests, this::openAiBody));
+        server.createContext("/api/generate", exchange -> handleGeneration(exchange, ollamaRequests, this::ollamaBody));
+        server.createContext("/api/tags", exchange -> respond(exchange, 200, "{\"models\":[{\"name\":\"llama3\"}]}"));
+    }
+
+    /**
+     * 启动桩服务
+     * @param latency 响应延迟分布
+     * @param errorRate 返回HTTP 500的比例
+     * @param malformedRate 返回无法解析JSON的模型输出的比例
+     */
+    public static StubLLMServer start(LatencyDistribution latency, double errorRate, double malformedRate) {
+        try {
+            StubLLMServer stub = new StubLLMServer(latency, errorRate, malformedRate);
+            stub.server.start();
+            return stub;
+        } catch (IOException e) {
+            throw new UncheckedIOException("启动桩LLM服务失败", e);
+        }
+    }
+
+    /**
+     * OpenAI协议的base-url，对应 ai.llm.openai.base-url
+     */
+    public String getOpenAiBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/v1";
+    }
+
+    /**
+     * Ollama协议的base-url，对应 ai.llm.local.base-url
+     */
+    public String getOllamaBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getOpenAiRequests() {
+        return openAiRequests.get();
+    }
+
+    public long getOllamaRequests() {
+        return ollamaRequests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getMalformed() {
+        return malformed.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OpenAI请求 %d, Ollama请求 %d, 注入错误 %d, 注入格式错误 %d",
+                             getOpenAiRequests(), getOllamaRequests(), getErrors(), getMalformed());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleGeneration(HttpExchange exchange, AtomicLong counter,
+                                  Function<String, Object> body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        counter.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            Thread.sleep(Math.max(0, latency.nextMillis(random)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (random.nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            respond(exchange, 500, "{\"error\":{\"message\":\"stub injected error\"}}");
+            return;
+        }
+        String completion = VALID_COMPLETION;
+        if (random.nextDouble() < malformedRate) {
+            malformed.incrementAndGet();
+            completion = MALFORMED_COMPLETION;
+        }
+        respond(exchange, 200, objectMapper.writeValueAsString(body.apply(completion)));
+    }
+
+    private Object openAiBody(String completion) {
+        return Map.of(
+            "id", "chatcmpl-stub",
+            "object", "chat.completion",
+            "model", "gpt-4",
+            "choices", List.of(Map.of(
+                "index", 0,
+                "message", Map.of("role", "assistant", "content", completion),
+                "finish_reason", "stop")),
+            "usage", Map.of("prompt_tokens", 600, "completion_tokens", 150, "total_tokens", 750));
+    }
+
+    private Object ollamaBody(String completion) {
+        return Map.of("model", "llama3", "response", completion, "done", true);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
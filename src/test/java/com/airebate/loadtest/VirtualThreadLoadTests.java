@@ -0,0 +1,170 @@
+package com.airebate.loadtest;
+
+import com.airebate.model.Currency;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 平台线程与虚拟线程模式的推荐接口负载对比测试
+ * 启动一个固定延迟的桩LLM服务（Ollama接口），分别以两种线程模式启动应用，每轮并发请求全部客户/货币/日期组合的推荐，
+ * 比较持续负载下的吞吐量和延迟。每轮结束后使已保存的推荐过期，使下一轮重新生成。
+ * 默认构建不运行，通过 mvn test -Pload-test 执行；轮数和LLM延迟可通过系统属性 load-test.rounds、load-test.llm-latency-ms 调整
+ */
+@Tag("load-test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class VirtualThreadLoadTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadLoadTests.class);
+
+    private static final int ROUNDS = Integer.getInteger("load-test.rounds", 5);
+    private static final int LLM_LATENCY_MS = Integer.getInteger("load-test.llm-latency-ms", 200);
+    // 查询日期范围，示例数据有60天账单，保证每个日期都有历史数据
+    private static final int QUERY_DAYS = 50;
+
+    private static final Map<String, Currency> CUSTOMERS = Map.of(
+        "US_BANK_001", Currency.USD,
+        "EU_INVEST_002", Currency.EUR,
+        "JP_SEC_003", Currency.JPY,
+        "UK_FIN_004", Currency.GBP,
+        "CN_INTL_005", Currency.CNY);
+
+    private StubLLMServer llmStub;
+
+    @BeforeAll
+    void startLlmStub() {
+        llmStub = StubLLMServer.start(LatencyDistribution.fixed(LLM_LATENCY_MS), 0, 0);
+    }
+
+    @AfterAll
+    void stopLlmStub() {
+        llmStub.close();
+    }
+
+    @Test
+    void compareVirtualThreadsWithPlatformThreads() throws Exception {
+        LoadResult platform = runLoad(false);
+        LoadResult virtual = runLoad(true);
+
+        logger.warn("推荐接口负载对比（LLM延迟 {} ms，每轮并发 {} 个请求，{} 轮）:", LLM_LATENCY_MS,
+                    CUSTOMERS.size() * QUERY_DAYS, ROUNDS);
+        logger.warn("  平台线程: {}", platform);
+        logger.warn("  虚拟线程: {}", virtual);
+        logger.warn("  吞吐量比（虚拟/平台）: {}", String.format("%.2f", virtual.throughput() / platform.throughput()));
+
+        assertEquals(0, platform.failures(), "平台线程模式存在失败请求");
+        assertEquals(0, virtual.failures(), "虚拟线程模式存在失败请求");
+    }
+
+    private LoadResult runLoad(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = LoadTestHarness.startApplication(
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--ai.llm.provider=local",
+                "--ai.llm.local.base-url=" + llmStub.getOllamaBaseUrl());
+             LoadTestHarness harness = new LoadTestHarness(context);
+             ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            HttpClient client = HttpClient.newBuilder().executor(clientExecutor).build();
+            List<URI> uris = recommendationUris(harness);
+
+            // 预热轮不计入结果
+            runRound(client, uris);
+            expireRecommendations(jdbcTemplate);
+
+            List<Long> latencies = new ArrayList<>();
+            int failures = 0;
+            long start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                RoundResult result = runRound(client, uris);
+                latencies.addAll(result.latencies());
+                failures += result.failures();
+                expireRecommendations(jdbcTemplate);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            return new LoadResult(sorted.length, failures, sorted.length * 1_000_000_000.0 / elapsedNanos,
+                                  percentile(sorted, 0.5), percentile(sorted, 0.99));
+        }
+    }
+
+    /**
+     * 并发发出一轮请求，等待全部完成
+     */
+    private RoundResult runRound(HttpClient client, List<URI> uris) {
+        List<CompletableFuture<long[]>> futures = new ArrayList<>();
+        for (URI uri : uris) {
+            long start = System.nanoTime();
+            futures.add(client.sendAsync(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> {
+                    boolean success = error == null && response.statusCode() == 200 &&
+                                      response.body().contains("\"status\":\"SUCCESS\"");
+                    return new long[] {(System.nanoTime() - start) / 1_000_000, success ? 0 : 1};
+                }));
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        int failures = 0;
+        for (CompletableFuture<long[]> future : futures) {
+            long[] outcome = future.join();
+            latencies.add(outcome[0]);
+            failures += (int) outcome[1];
+        }
+        return new RoundResult(latencies, failures);
+    }
+
+    private List<URI> recommendationUris(LoadTestHarness harness) {
+        List<URI> uris = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        CUSTOMERS.forEach((customerCode, currency) -> {
+            for (int day = 1; day <= QUERY_DAYS; day++) {
+                uris.add(harness.recommendUri(customerCode, currency, today.minusDays(day)));
+            }
+        });
+        return uris;
+    }
+
+    private void expireRecommendations(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("UPDATE rebate_spread_recommendations SET valid_until = ?",
+                            LocalDateTime.now().minusMinutes(1));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private record RoundResult(List<Long> latencies, int failures) {}
+
+    private record LoadResult(int requests, int failures, double throughput, long p50Millis, long p99Millis) {
+        @Override
+        public String toString() {
+            return String.format("%d 个请求, 失败 %d, 吞吐量 %.1f 次/秒, p50 %d ms, p99 %d ms",
+                                 requests, failures, throughput, p50Millis, p99Millis);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.airebate.repository;
+
+import com.airebate.model.Currency;
+import com.airebate.model.Customer;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 仓库查询执行计划回归测试
+ * 在独立的H2库中灌入百万级账单和推荐数据，执行每个仓库查询并捕获Hibernate生成的SQL，
+ * 通过EXPLAIN检查每张表都经由索引访问，且索引的首列在查询条件中受到约束（否则等同全表扫描）。
+ * 数据量较大，默认构建不运行，通过 mvn test -Pquery-plan 执行；行数可通过系统属性 query-plan.rows 调整
+ */
+@Tag("query-plan")
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:query_plan_db",
+    "spring.jpa.show-sql=false",
+    "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+        "com.airebate.repository.RepositoryQueryPlanTests$RecordingStatementInspector"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class RepositoryQueryPlanTests {
+
+    private static final int ROWS = Integer.getInteger("query-plan.rows", 1_000_000);
+    private static final int CUSTOMERS = 5_000;
+    // 分批插入，避免单个事务的撤销日志占满内存
+    private static final int SEED_CHUNK = 50_000;
+
+    // EXPLAIN输出中的访问方式注释，如 /* PUBLIC.IDX_NAME: CUSTOMER_ID = ?1 */ 或 /* PUBLIC.TABLE.tableScan */
+    private static final Pattern ACCESS_PATTERN = Pattern.compile("/\\* ([A-Z_]+)\\.([A-Z0-9_.]+?)(?:: (.*?))? \\*/",
+                                                                  Pattern.DOTALL);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private BillingResultRepository billingResultRepository;
+
+    @Autowired
+    private RebateSpreadRecommendationRepository recommendationRepository;
+
+    @Autowired
+    private BillingDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private PrecomputeCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 记录Hibernate执行的SQL
+     */
+    public static class RecordingStatementInspector implements StatementInspector {
+
+        static final Queue<String> STATEMENTS = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    @BeforeAll
+    void seedData() {
+        // 主键使用负数，避免与序列分配的主键冲突
+        jdbcTemplate.update(
+            "INSERT INTO customers (id, customer_code, customer_name, primary_currency, risk_level, trading_volume, " +
+            "created_at, updated_at) " +
+            "SELECT -X, 'PLAN_' || X, 'Plan customer ' || X, 'USD', 1.0, 10000.0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP " +
+            "FROM SYSTEM_RANGE(1, ?)", CUSTOMERS);
+        Long firstCustomerId = jdbcTemplate.queryForObject(
+            "SELECT MIN(id) FROM customers WHERE customer_code LIKE 'PLAN_%'", Long.class);
+
+        for (int from = 1; from <= ROWS; from += SEED_CHUNK) {
+            int to = Math.min(ROWS, from + SEED_CHUNK - 1);
+            jdbcTemplate.update(
+                "INSERT INTO billing_results (id, customer_id, currency, billing_date, transaction_amount, " +
+                "transaction_volume, market_volatility, liquidity_score, profit_margin, created_at) " +
+                "SELECT -X, ? + MOD(X, ?), CASEWHEN(MOD(X, 2) = 0, 'USD', 'EUR'), " +
+                "DATEADD('DAY', -MOD(X / ?, 730), CURRENT_DATE), 1000 + MOD(X, 997), 10 + MOD(X, 500), " +
+                "0.05, 5.0, 0.03, CURRENT_TIMESTAMP FROM SYSTEM_RANGE(?, ?)",
+                firstCustomerId, CUSTOMERS, CUSTOMERS, from, to);
+
+            jdbcTemplate.update(
+                "INSERT INTO rebate_spread_recommendations (id, customer_id, currency, recommendation_date, " +
+                "recommended_spread, confidence_score, valid_until, created_at) " +
+                "SELECT -X, ? + MOD(X, ?), CASEWHEN(MOD(X, 2) = 0, 'USD', 'EUR'), " +
+                "DATEADD('DAY', -MOD(X / ?, 730), CURRENT_DATE), 0.05, 0.8, " +
+                "DATEADD('DAY', 1 - MOD(X / ?, 730), CURRENT_TIMESTAMP), CURRENT_TIMESTAMP " +
+                "FROM SYSTEM_RANGE(?, ?)",
+                firstCustomerId, CUSTOMERS, CUSTOMERS, CUSTOMERS, from, to);
+        }
+
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    void repositoryQueriesUseIndexes() {
+        Customer customer = customerRepository.findByCustomerCode("PLAN_1").orElseThrow();
+        Customer other = customerRepository.findByCustomerCode("PLAN_2").orElseThrow();
+        LocalDate today = LocalDate.now();
+        LocalDate monthAgo = today.minusDays(30);
+        LocalDateTime now = LocalDateTime.now();
+
+        Map<String, Runnable> queries = new LinkedHashMap<>();
+        queries.put("BillingResultRepository.findByCustomer",
+            () -> billingResultRepository.findByCustomer(customer));
+        queries.put("BillingResultRepository.findByCustomerAndCurrency",
+            () -> billingResultRepository.findByCustomerAndCurrency(customer, Currency.USD));
+        queries.put("BillingResultRepository.findByCustomerAndCurrencyAndDateRange",
+            () -> billingResultRepository.findByCustomerAndCurrencyAndDateRange(customer, Currency.USD, monthAgo, today));
+        queries.put("BillingResultRepository.findByCustomerAndDateRange",
+            () -> billingResultRepository.findByCustomerAndDateRange(customer, monthAgo, today));
+        queries.put("BillingResultRepository.findByCustomersAndDateRange",
+            () -> billingResultRepository.findByCustomersAndDateRange(List.of(customer, other), monthAgo, today));
+        queries.put("BillingResultRepository.findLatestByCustomerAndCurrency",
+            () -> billingResultRepository.findLatestByCustomerAndCurrency(customer, Currency.USD));
+        queries.put("BillingResultRepository.countByCustomerAndCurrency",
+            () -> billingResultRepository.countByCustomerAndCurrency(customer, Currency.USD));
+        queries.put("RebateSpreadRecommendationRepository.findValidRecommendation",
+            () -> recommendationRepository.findValidRecommendation(customer, Currency.EUR, today.minusDays(5), now));
+        queries.put("RebateSpreadRecommendationRepository.findValidRecommendations",
+            () -> recommendationRepository.findValidRecommendations(List.of(customer, other), List.of(today, monthAgo), now));
+        queries.put("RebateSpreadRecommendationRepository.findByCustomerAndCurrencyAndDate",
+            () -> recommendationRepository.findByCustomerAndCurrencyAndDate(customer, Currency.EUR, today.minusDays(5)));
+        queries.put("RebateSpreadRecommendationRepository.findByCustomersAndDates",
+            () -> recommendationRepository.findByCustomersAndDates(List.of(customer, other), List.of(today, monthAgo)));
+        queries.put("RebateSpreadRecommendationRepository.findLatestByCustomerAndCurrency",
+            () -> recommendationRepository.findLatestByCustomerAndCurrency(customer, Currency.USD));
+        queries.put("RebateSpreadRecommendationRepository.findByCustomerAndDateRange",
+            () -> recommendationRepository.findByCustomerAndDateRange(customer, monthAgo, today));
+        queries.put("RebateSpreadRecommendationRepository.countByCustomer",
+            () -> recommendationRepository.countByCustomer(customer));
+        queries.put("RebateSpreadRecommendationRepository.deleteExpiredRecommendations",
+            () -> recommendationRepository.deleteExpiredRecommendations(now.minusDays(720)));
+        queries.put("BillingDailyRollupRepository.findByCustomerAndCurrencyAndDateRange",
+            () -> rollupRepository.findByCustomerAndCurrencyAndDateRange(customer, Currency.USD, monthAgo, today));
+        queries.put("BillingDailyRollupRepository.findByCustomersAndDateRange",
+            () -> rollupRepository.findByCustomersAndDateRange(List.of(customer, other), monthAgo, today));
+        queries.put("BillingDailyRollupRepository.findForUpdate",
+            () -> rollupRepository.findForUpdate(List.of(customer.getId()), monthAgo, today));
+        queries.put("BillingDailyRollupRepository.findActivePairs",
+            () -> rollupRepository.findActivePairs(today.minusDays(7)));
+        queries.put("PrecomputeCheckpointRepository.findByRunDate",
+            () -> checkpointRepository.findByRunDate(today));
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, Runnable> query : queries.entrySet()) {
+            RecordingStatementInspector.STATEMENTS.clear();
+            transaction.executeWithoutResult(status -> {
+                query.getValue().run();
+                status.setRollbackOnly();
+            });
+
+            List<String> statements = new ArrayList<>(RecordingStatementInspector.STATEMENTS);
+            assertFalse(statements.isEmpty(), "未捕获到SQL: " + query.getKey());
+            for (String sql : statements) {
+                String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+                String problem = checkPlan(plan);
+                if (problem != null) {
+                    failures.add(query.getKey() + ": " + problem + "\n" + plan);
+                }
+            }
+        }
+
+        assertTrue(failures.isEmpty(), "以下查询未有效使用索引:\n" + String.join("\n\n", failures));
+    }
+
+    /**
+     * 检查执行计划，返回问题描述，没有问题时返回null
+     */
+    private String checkPlan(String plan) {
+        Matcher matcher = ACCESS_PATTERN.matcher(plan);
+        boolean found = false;
+        while (matcher.find()) {
+            found = true;
+            String access = matcher.group(2);
+            if (access.endsWith(".tableScan")) {
+                return "全表扫描 " + access;
+            }
+            String leadingColumn = leadingColumn(matcher.group(1), access);
+            String conditions = matcher.group(3);
+            if (conditions == null || !Pattern.compile("\\b\"?" + leadingColumn + "\"?\\s*(=|<|>|IN\\b)")
+                    .matcher(conditions).find()) {
+                return "索引 " + access + " 的首列 " + leadingColumn + " 未受约束，等同全索引扫描";
+            }
+        }
+        return found ? null : "无法解析执行计划";
+    }
+
+    private String leadingColumn(String schema, String indexName) {
+        return jdbcTemplate.queryForObject(
+            "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.INDEX_COLUMNS " +
+            "WHERE INDEX_SCHEMA = ? AND INDEX_NAME = ? AND ORDINAL_POSITION = 1",
+            String.class, schema, indexName);
+    }
+}
@@ -0,0 +1,105 @@
+package com.airebate.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LLMProviderHealthTests {
+
+    @Test
+    void testOpensWhenFailureRateReachesThreshold() {
+        // 测试调用数达到最小值且失败率达到阈值时熔断，熔断期间拒绝调用
+        LLMProviderHealth health = new LLMProviderHealth("test", settings(30000, 2));
+
+        health.recordSuccess(100);
+        health.recordFailure(100);
+        health.recordSuccess(100);
+        assertEquals(LLMProviderHealth.CircuitState.CLOSED, health.getState());
+
+        health.recordFailure(100);
+        assertEquals(LLMProviderHealth.CircuitState.OPEN, health.getState());
+        assertEquals(0.5, health.getFailureRate(), 1e-9);
+        assertFalse(health.isAvailable());
+        assertFalse(health.tryAcquirePermission());
+    }
+
+    @Test
+    void testOpensWhenSlowCallRateReachesThreshold() {
+        // 测试调用成功但耗时超过慢调用阈值的比例达到阈值时同样熔断
+        LLMProviderHealth health = new LLMProviderHealth("test", settings(30000, 2));
+
+        for (int i = 0; i < 3; i++) {
+            health.recordSuccess(1500);
+            assertEquals(LLMProviderHealth.CircuitState.CLOSED, health.getState());
+        }
+        health.recordSuccess(1500);
+        assertEquals(LLMProviderHealth.CircuitState.OPEN, health.getState());
+    }
+
+    @Test
+    void testHalfOpenProbesCloseCircuit() {
+        // 测试熔断时长结束后进入半开状态，只放行有限次试探，试探全部成功后恢复正常并清空统计窗口
+        LLMProviderHealth health = new LLMProviderHealth("test", settings(0, 2));
+        open(health);
+
+        assertTrue(health.isAvailable());
+        assertTrue(health.tryAcquirePermission());
+        assertEquals(LLMProviderHealth.CircuitState.HALF_OPEN, health.getState());
+        assertTrue(health.tryAcquirePermission());
+        assertFalse(health.tryAcquirePermission());
+        assertFalse(health.isAvailable());
+
+        health.recordSuccess(100);
+        assertEquals(LLMProviderHealth.CircuitState.HALF_OPEN, health.getState());
+        health.recordSuccess(100);
+        assertEquals(LLMProviderHealth.CircuitState.CLOSED, health.getState());
+        assertEquals(0.0, health.getFailureRate(), 1e-9);
+        assertTrue(health.tryAcquirePermission());
+    }
+
+    @Test
+    void testFailedOrSlowProbeReopensCircuit() {
+        // 测试半开状态下试探失败或过慢时重新熔断
+        LLMProviderHealth health = new LLMProviderHealth("test", settings(0, 1));
+        open(health);
+
+        assertTrue(health.tryAcquirePermission());
+        health.recordFailure(100);
+        assertEquals(LLMProviderHealth.CircuitState.OPEN, health.getState());
+
+        assertTrue(health.tryAcquirePermission());
+        assertEquals(LLMProviderHealth.CircuitState.HALF_OPEN, health.getState());
+        health.recordSuccess(1500);
+        assertEquals(LLMProviderHealth.CircuitState.OPEN, health.getState());
+    }
+
+    @Test
+    void testReleasedProbeDoesNotCount() {
+        // 测试被取消的试探归还名额且不计入统计，之后的试探仍可决定状态
+        LLMProviderHealth health = new LLMProviderHealth("test", settings(0, 1));
+        open(health);
+
+        assertTrue(health.tryAcquirePermission());
+        assertFalse(health.tryAcquirePermission());
+        health.releasePermission();
+        assertEquals(LLMProviderHealth.CircuitState.HALF_OPEN, health.getState());
+
+        assertTrue(health.tryAcquirePermission());
+        health.recordSuccess(100);
+        assertEquals(LLMProviderHealth.CircuitState.CLOSED, health.getState());
+    }
+
+    /**
+     * 窗口4次调用、最少4次、失败率和慢调用率阈值均为0.5、慢调用阈值1秒
+     */
+    private LLMProviderHealth.Settings settings(long openDurationMillis, int halfOpenCalls) {
+        return new LLMProviderHealth.Settings(4, 4, 0.5, 1000, 0.5, openDurationMillis, halfOpenCalls);
+    }
+
+    private void open(LLMProviderHealth health) {
+        for (int i = 0; i < 4; i++) {
+            health.recordFailure(100);
+        }
+        assertEquals(LLMProviderHealth.CircuitState.OPEN, health.getState());
+    }
+}
@@ -0,0 +1,78 @@
+package com.airebate.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LLMProviderLimiterTests {
+
+    @Test
+    void testQueuedCallAdmittedOnRelease() throws Exception {
+        // 测试并发上限已满时排队，前一个调用归还许可后放行；排队超时或队列已满时拒绝
+        LLMProviderLimiter limiter = new LLMProviderLimiter("test",
+                new LLMProviderLimiter.Settings(1, 1, 4, 1000, 0.5, 200, 1), 0, 0);
+
+        assertTrue(limiter.acquire(100).block());
+        CompletableFuture<Boolean> queued = limiter.acquire(100).toFuture();
+        assertEquals(1, limiter.getQueueDepth());
+        assertFalse(limiter.acquire(100).block());
+
+        limiter.release();
+        assertTrue(queued.get(1, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(1, limiter.getInFlight());
+
+        assertFalse(limiter.acquire(100).block());
+        limiter.release();
+    }
+
+    @Test
+    void testAdditiveIncreaseMultiplicativeDecrease() {
+        // 测试并发量接近上限时成功调用增加上限，失败或过慢的调用按比例减小上限
+        LLMProviderLimiter limiter = new LLMProviderLimiter("test",
+                new LLMProviderLimiter.Settings(2, 1, 4, 1000, 0.5, 0, 10), 0, 0);
+
+        assertTrue(limiter.acquire(100).block());
+        assertTrue(limiter.acquire(100).block());
+        limiter.recordSample(true, 100);
+        assertEquals(2.5, limiter.getLimit(), 1e-9);
+        limiter.recordSample(true, 5000);
+        assertEquals(1.25, limiter.getLimit(), 1e-9);
+        limiter.recordSample(false, 100);
+        assertEquals(1.0, limiter.getLimit(), 1e-9);
+    }
+
+    @Test
+    void testRequestsPerMinuteRejectsBeyondQueueTimeout() {
+        // 测试每分钟请求数用尽后，预计等待超过排队期限的调用直接拒绝
+        LLMProviderLimiter limiter = new LLMProviderLimiter("test",
+                new LLMProviderLimiter.Settings(10, 1, 10, 1000, 0.5, 100, 10), 2, 0);
+
+        assertTrue(Mono.zip(limiter.acquire(1), limiter.acquire(1), Boolean::logicalAnd).block());
+        assertFalse(limiter.acquire(1).block());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void testRejectedCallsRefundRateQuota() {
+        // 测试因队列已满或排队超时被拒绝、以及排队中被取消的调用归还预约的速率配额
+        LLMProviderLimiter limiter = new LLMProviderLimiter("test",
+                new LLMProviderLimiter.Settings(1, 1, 1, 1000, 0.5, 50, 1), 3, 0);
+
+        assertTrue(limiter.acquire(1).block());
+        assertFalse(limiter.acquire(1).block());
+        limiter.acquire(1).subscribe().dispose();
+        assertEquals(0, limiter.getQueueDepth());
+        CompletableFuture<Boolean> queued = limiter.acquire(1).toFuture();
+        assertFalse(limiter.acquire(1).block());
+        assertFalse(queued.join());
+
+        limiter.release();
+        assertTrue(limiter.acquire(1).block());
+        assertEquals(1, limiter.getInFlight());
+    }
+}
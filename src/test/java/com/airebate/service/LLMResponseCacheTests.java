@@ -0,0 +1,103 @@
+package com.airebate.service;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.dto.LLMRecommendationResponse;
+import com.airebate.model.Currency;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LLMResponseCacheTests {
+
+    @Test
+    void testSimilarCustomersShareEntry() {
+        // 测试特征量化后相同的请求命中同一条目并得到副本，货币或风险等级区间不同时未命中
+        LLMResponseCache cache = new LLMResponseCache(true, 3600, 10, new SimpleMeterRegistry());
+        LLMRecommendationResponse response = LLMRecommendationResponse.success(new BigDecimal("0.12"), "交易量稳定");
+
+        cache.put(request("CUST_A", Currency.USD, 1.0, "0.0312"), response);
+
+        LLMRecommendationResponse cached = cache.get(request("CUST_B", Currency.USD, 1.2, "0.0298"));
+        assertNotSame(response, cached);
+        assertEquals(response.getRecommendedSpread(), cached.getRecommendedSpread());
+        assertEquals("交易量稳定", cached.getReasoning());
+        assertNull(cache.get(request("CUST_A", Currency.EUR, 1.0, "0.0312")));
+        assertNull(cache.get(request("CUST_A", Currency.USD, 1.8, "0.0312")));
+
+        LLMResponseCache.CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+    }
+
+    @Test
+    void testIncompleteResponsesNotStored() {
+        // 测试失败响应、解析回退的默认值和流式调用提前返回的响应不缓存
+        LLMResponseCache cache = new LLMResponseCache(true, 3600, 10, new SimpleMeterRegistry());
+        LLMRecommendationResponse fallback = LLMRecommendationResponse.success(new BigDecimal("0.10"), "默认值");
+        fallback.setParseFallback(true);
+
+        cache.put(request("CUST_A", Currency.USD, 1.0, "0.03"), fallback);
+        cache.put(request("CUST_A", Currency.USD, 1.0, "0.03"), LLMRecommendationResponse.error("服务不可用"));
+        LLMRecommendationResponse early = LLMRecommendationResponse.success(new BigDecimal("0.12"), null);
+        early.setCompletion(Mono.just(LLMRecommendationResponse.success(new BigDecimal("0.12"), "交易量稳定")));
+        cache.put(request("CUST_A", Currency.USD, 1.0, "0.03"), early);
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get(request("CUST_A", Currency.USD, 1.0, "0.03")));
+    }
+
+    @Test
+    void testExpiredEntryRemovedOnLookup() {
+        // 测试TTL为0时条目写入即过期，查找时移除并计入过期淘汰
+        LLMResponseCache cache = new LLMResponseCache(true, 0, 10, new SimpleMeterRegistry());
+
+        cache.put(request("CUST_A", Currency.USD, 1.0, "0.03"),
+                LLMRecommendationResponse.success(new BigDecimal("0.12"), "交易量稳定"));
+        assertEquals(1, cache.size());
+
+        assertNull(cache.get(request("CUST_A", Currency.USD, 1.0, "0.03")));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getStats().getExpirations());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryEvicted() {
+        // 测试超出容量时淘汰最久未使用的条目，最近访问过的条目保留
+        LLMResponseCache cache = new LLMResponseCache(true, 3600, 2, new SimpleMeterRegistry());
+        LLMRecommendationRequest usd = request("CUST_A", Currency.USD, 1.0, "0.03");
+        LLMRecommendationRequest eur = request("CUST_A", Currency.EUR, 1.0, "0.03");
+        LLMRecommendationRequest gbp = request("CUST_A", Currency.GBP, 1.0, "0.03");
+
+        cache.put(usd, LLMRecommendationResponse.success(new BigDecimal("0.12"), "USD"));
+        cache.put(eur, LLMRecommendationResponse.success(new BigDecimal("0.13"), "EUR"));
+        assertNotNull(cache.get(usd));
+        cache.put(gbp, LLMRecommendationResponse.success(new BigDecimal("0.14"), "GBP"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStats().getEvictions());
+        assertNotNull(cache.get(usd));
+        assertNotNull(cache.get(gbp));
+        assertNull(cache.get(eur));
+    }
+
+    private LLMRecommendationRequest request(String customerCode, Currency currency,
+                                             double riskLevel, String volatility) {
+        LLMRecommendationRequest request = new LLMRecommendationRequest();
+        request.setCustomerCode(customerCode);
+        request.setCurrency(currency);
+        request.setCustomerRiskLevel(riskLevel);
+        request.setCustomerTradingVolume(20000.0);
+        request.setMarketVolatility(new BigDecimal(volatility));
+        request.setAvgLiquidityScore(new BigDecimal("7.2"));
+        request.setAvgProfitMargin(new BigDecimal("0.021"));
+        request.setAvgTransactionVolume(new BigDecimal("150000"));
+        request.setMinSpread(new BigDecimal("0.05"));
+        request.setMaxSpread(new BigDecimal("0.30"));
+        request.setDefaultSpread(new BigDecimal("0.10"));
+        return request;
+    }
+}
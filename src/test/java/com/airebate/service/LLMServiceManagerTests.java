@@ -0,0 +1,285 @@
+package com.airebate.service;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.dto.LLMRecommendationResponse;
+import com.airebate.model.Currency;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LLMServiceManagerTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testParseFallbackCountsAsFailure() {
+        // 测试服务持续输出无法解析的内容时，解析回退的响应仍返回给调用方，但对熔断器和准入控制计为失败
+        StubLLMService openai = new StubLLMService("openai", 0, () -> {
+            LLMRecommendationResponse response = LLMRecommendationResponse.success(new BigDecimal("0.10"), "默认值");
+            response.setParseFallback(true);
+            return response;
+        });
+        LLMServiceManager manager = manager("sequential", openai);
+
+        for (int i = 0; i < 2; i++) {
+            LLMRecommendationResponse response = manager.generateRecommendationAsync(request()).block();
+            assertTrue(response.isSuccess());
+            assertTrue(response.isParseFallback());
+        }
+
+        assertEquals(2, callCount("openai", "parse_fallback"));
+        LLMServiceManager.ServiceStatus status = manager.getServiceStatus().get(0);
+        assertEquals("OPEN", status.getCircuitState());
+        assertEquals(1.0, status.getFailureRate(), 1e-9);
+        assertTrue(meterRegistry.get("ai.llm.limiter.limit").tag("provider", "openai").gauge().value() < 10);
+    }
+
+    @Test
+    void testHedgedCallCancelsSlowPrimary() throws Exception {
+        // 测试对冲模式：主服务超过对冲延迟未响应时调用备用服务，备用服务先成功后取消主服务调用，
+        // 被取消的调用归还准入许可，只记为cancelled，不计入熔断器统计
+        StubLLMService slow = new StubLLMService("openai", 2000, () -> success("openai"));
+        StubLLMService fast = new StubLLMService("anthropic", 20, () -> success("anthropic"));
+        LLMServiceManager manager = manager("hedged", slow, fast);
+        ReflectionTestUtils.setField(manager, "hedgeDelayDefault", 50L);
+
+        LLMRecommendationResponse response = manager.generateRecommendationAsync(request()).block(Duration.ofSeconds(1));
+
+        assertEquals("anthropic", response.getReasoning());
+        assertLoserCancelled(manager, slow, fast);
+    }
+
+    @Test
+    void testRaceCancelsSlowerService() throws Exception {
+        // 测试竞速模式：同时调用全部远程服务，取最先成功的响应，较慢的调用被取消且不计为失败
+        StubLLMService slow = new StubLLMService("openai", 2000, () -> success("openai"));
+        StubLLMService fast = new StubLLMService("anthropic", 20, () -> success("anthropic"));
+        LLMServiceManager manager = manager("race", slow, fast);
+
+        LLMRecommendationResponse response = manager.generateRecommendationAsync(request()).block(Duration.ofSeconds(1));
+
+        assertEquals("anthropic", response.getReasoning());
+        assertLoserCancelled(manager, slow, fast);
+    }
+
+    @Test
+    void testStreamedResponseCachedOnlyAfterCompletion() {
+        // 测试流式调用提前返回的响应不缓存，输出结束后缓存完整解析的响应；
+        // 特征相近的客户命中缓存时得到不含completion的副本，不会订阅其他客户的输出
+        Sinks.One<LLMRecommendationResponse> output = Sinks.one();
+        Mono<LLMRecommendationResponse> completion = output.asMono().cache();
+        AtomicInteger calls = new AtomicInteger();
+        StubLLMService streaming = new StubLLMService("openai", 0, () -> {
+            calls.incrementAndGet();
+            LLMRecommendationResponse early = LLMRecommendationResponse.success(new BigDecimal("0.12"), null);
+            early.setCompletion(completion);
+            return early;
+        });
+        LLMResponseCache cache = new LLMResponseCache(true, 3600, 100, meterRegistry);
+        LLMServiceManager manager = manager("sequential", cache, streaming);
+
+        LLMRecommendationResponse first = manager.generateRecommendationAsync(request("CUST_A")).block();
+        assertNotNull(first.getCompletion());
+        assertEquals(0, cache.size());
+
+        LLMRecommendationResponse full = success("CUST_A的推荐理由");
+        full.setKeyFactors(List.of("交易量"));
+        output.tryEmitValue(full);
+        assertEquals(1, cache.size());
+
+        LLMRecommendationResponse cached = manager.generateRecommendationAsync(request("CUST_B")).block();
+        assertEquals(1, calls.get());
+        assertNotSame(full, cached);
+        assertNull(cached.getCompletion());
+        assertEquals("CUST_A的推荐理由", cached.getReasoning());
+        assertEquals(List.of("交易量"), cached.getKeyFactors());
+    }
+
+    @Test
+    void testFailedStreamedResponseNotCached() {
+        // 测试流式调用提前返回后输出中断时不缓存，相似客户重新调用服务
+        AtomicInteger calls = new AtomicInteger();
+        StubLLMService streaming = new StubLLMService("openai", 0, () -> {
+            calls.incrementAndGet();
+            LLMRecommendationResponse early = LLMRecommendationResponse.success(new BigDecimal("0.12"), null);
+            early.setCompletion(Mono.error(new IllegalStateException("LLM流式输出中断")));
+            return early;
+        });
+        LLMResponseCache cache = new LLMResponseCache(true, 3600, 100, meterRegistry);
+        LLMServiceManager manager = manager("sequential", cache, streaming);
+
+        manager.generateRecommendationAsync(request("CUST_A")).block();
+        manager.generateRecommendationAsync(request("CUST_B")).block();
+
+        assertEquals(0, cache.size());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testUnreachableServiceDoesNotBlockProbeScheduler() throws Exception {
+        // 测试健康检查超时：无法连接的服务检查超时后记为不可用，其他服务照常记录；
+        // 定时任务只发起探测，不等待挂起的检查，上一轮未结束时跳过
+        CountDownLatch release = new CountDownLatch(1);
+        StubLLMService hanging = new StubLLMService("openai", 0, () -> success("openai")) {
+            @Override
+            public boolean isAvailable() {
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        };
+        StubLLMService healthy = new StubLLMService("anthropic", 0, () -> success("anthropic"));
+        LLMServiceManager manager = manager("sequential", hanging, healthy);
+
+        List<LLMServiceManager.ServiceStatus> statuses = manager.getServiceStatus();
+        assertFalse(statuses.get(0).isAvailable());
+        assertTrue(statuses.get(1).isAvailable());
+
+        long start = System.nanoTime();
+        manager.probeServices();
+        manager.probeServices();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+        release.countDown();
+    }
+
+    private void assertLoserCancelled(LLMServiceManager manager, StubLLMService loser, StubLLMService winner)
+            throws InterruptedException {
+        assertTrue(loser.cancelled.get());
+        assertFalse(winner.cancelled.get());
+        assertEquals(1, callCount(loser.getProviderKey(), "cancelled"));
+        assertEquals(0, callCount(loser.getProviderKey(), "failure"));
+        assertEquals(1, callCount(winner.getProviderKey(), "success"));
+        for (StubLLMService service : List.of(loser, winner)) {
+            assertEquals(0, awaitInFlight(service.getProviderKey()));
+        }
+        for (LLMServiceManager.ServiceStatus status : manager.getServiceStatus()) {
+            assertEquals("CLOSED", status.getCircuitState());
+            assertEquals(0.0, status.getFailureRate(), 1e-9);
+        }
+    }
+
+    /**
+     * 成功的调用在响应发出后才归还准入许可，等待进行中的调用数归零，最多1秒
+     */
+    private double awaitInFlight(String provider) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+        double inFlight = meterRegistry.get("ai.llm.limiter.in-flight").tag("provider", provider).gauge().value();
+        while (inFlight > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+            inFlight = meterRegistry.get("ai.llm.limiter.in-flight").tag("provider", provider).gauge().value();
+        }
+        return inFlight;
+    }
+
+    /**
+     * 熔断器窗口4次调用、最少2次、失败率阈值0.5；准入控制初始并发上限10
+     */
+    private LLMServiceManager manager(String routingMode, LLMService... services) {
+        return manager(routingMode, new LLMResponseCache(false, 3600, 100, meterRegistry), services);
+    }
+
+    private LLMServiceManager manager(String routingMode, LLMResponseCache responseCache, LLMService... services) {
+        LLMServiceManager manager = new LLMServiceManager(List.of(services),
+                responseCache, new ProviderRateLimiter(2.0),
+                new RecommendationMetrics(meterRegistry), new MockEnvironment(),
+                services[0].getProviderKey(), routingMode,
+                4, 2, 0.5, 20000, 0.8, 30000, 1,
+                true, 10, 1, 50, 10000, 0.9, 2000, 100);
+        ReflectionTestUtils.setField(manager, "llmEnabled", true);
+        ReflectionTestUtils.setField(manager, "fallbackEnabled", true);
+        ReflectionTestUtils.setField(manager, "estimatedTokensPerRequest", 1500);
+        ReflectionTestUtils.setField(manager, "probeTimeout", 200L);
+        manager.probeAll().block();
+        return manager;
+    }
+
+    private long callCount(String provider, String outcome) {
+        Timer timer = meterRegistry.find("ai.llm.calls").tag("provider", provider).tag("outcome", outcome).timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+    private LLMRecommendationResponse success(String reasoning) {
+        return LLMRecommendationResponse.success(new BigDecimal("0.12"), reasoning);
+    }
+
+    private LLMRecommendationRequest request() {
+        return request("CUST_A");
+    }
+
+    private LLMRecommendationRequest request(String customerCode) {
+        LLMRecommendationRequest request = new LLMRecommendationRequest();
+        request.setCustomerCode(customerCode);
+        request.setCurrency(Currency.USD);
+        request.setMinSpread(new BigDecimal("0.05"));
+        request.setMaxSpread(new BigDecimal("0.30"));
+        request.setDefaultSpread(new BigDecimal("0.10"));
+        return request;
+    }
+
+    /**
+     * 按固定延迟返回响应的远程服务，记录调用是否被取消
+     */
+    private static class StubLLMService implements LLMService {
+        private final String providerKey;
+        private final long delayMillis;
+        private final Supplier<LLMRecommendationResponse> response;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private StubLLMService(String providerKey, long delayMillis, Supplier<LLMRecommendationResponse> response) {
+            this.providerKey = providerKey;
+            this.delayMillis = delayMillis;
+            this.response = response;
+        }
+
+        @Override
+        public LLMRecommendationResponse generateRecommendation(LLMRecommendationRequest request) {
+            return generateRecommendationAsync(request).block();
+        }
+
+        @Override
+        public Mono<LLMRecommendationResponse> generateRecommendationAsync(LLMRecommendationRequest request) {
+            return Mono.delay(Duration.ofMillis(delayMillis))
+                    .map(tick -> response.get())
+                    .doOnCancel(() -> cancelled.set(true));
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public String getModelName() {
+            return providerKey + "-model";
+        }
+
+        @Override
+        public String getProvider() {
+            return providerKey.toUpperCase();
+        }
+
+        @Override
+        public String getProviderKey() {
+            return providerKey;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.airebate.service.impl;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.dto.LLMRecommendationResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchResponseParserTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<LLMRecommendationRequest> requests = List.of(request("CUST_A"), request("CUST_B"), request("CUST_C"));
+
+    @Test
+    void testEntriesMatchedByIndexOrPosition() {
+        // 测试按index对应请求，缺少index的元素按数组位置对应；spread限制在请求的约束范围内
+        List<LLMRecommendationResponse> responses = parse("""
+            ```json
+            [
+                {"index": 3, "recommendedSpread": 0.5, "confidenceScore": 0.7, "reasoning": "C", "keyFactors": ["交易量"]},
+                {"recommendedSpread": "0.12", "confidenceScore": 0.8, "reasoning": "B"},
+                {"index": 1, "recommendedSpread": 0.01, "confidenceScore": 0.9, "reasoning": "A"}
+            ]
+            ```
+            """);
+
+        assertEquals("A", responses.get(0).getReasoning());
+        assertEquals(new BigDecimal("0.05"), responses.get(0).getRecommendedSpread());
+        assertEquals("B", responses.get(1).getReasoning());
+        assertEquals(new BigDecimal("0.12"), responses.get(1).getRecommendedSpread());
+        assertEquals("C", responses.get(2).getReasoning());
+        assertEquals(new BigDecimal("0.30"), responses.get(2).getRecommendedSpread());
+        assertEquals(List.of("交易量"), responses.get(2).getKeyFactors());
+        assertEquals("test-model", responses.get(2).getModelUsed());
+    }
+
+    @Test
+    void testDuplicateIndexKeepsFirstValidEntry() {
+        // 测试同一序号出现多次时使用第一个有效的元素，之后的忽略；第一个无效时使用之后的有效元素
+        List<LLMRecommendationResponse> responses = parse("""
+            [
+                {"index": 1, "recommendedSpread": 0.10, "confidenceScore": 0.9, "reasoning": "first"},
+                {"index": 1, "recommendedSpread": 0.20, "confidenceScore": 0.9, "reasoning": "second"},
+                {"index": 2, "recommendedSpread": 0.10, "reasoning": "no confidence"},
+                {"index": 2, "recommendedSpread": 0.15, "confidenceScore": 0.6, "reasoning": "valid"}
+            ]
+            """);
+
+        assertEquals("first", responses.get(0).getReasoning());
+        assertEquals("valid", responses.get(1).getReasoning());
+        assertNull(responses.get(2));
+    }
+
+    @Test
+    void testOutOfRangeIndexAndInvalidConfidenceIgnored() {
+        // 测试序号超出范围的元素被忽略，置信度不在0到1之间的元素解析为null
+        List<LLMRecommendationResponse> responses = parse("""
+            [
+                {"index": 0, "recommendedSpread": 0.10, "confidenceScore": 0.9},
+                {"index": 4, "recommendedSpread": 0.10, "confidenceScore": 0.9},
+                {"index": 1, "recommendedSpread": 0.10, "confidenceScore": 1.2},
+                {"index": 2, "recommendedSpread": 0.10, "confidenceScore": -0.1},
+                {"index": 3, "recommendedSpread": 0.10, "confidenceScore": 1}
+            ]
+            """);
+
+        assertNull(responses.get(0));
+        assertNull(responses.get(1));
+        assertEquals(new BigDecimal("1"), responses.get(2).getConfidenceScore());
+    }
+
+    @Test
+    void testNonArrayReplyParsesToNulls() {
+        // 测试输出不是JSON数组或无法解析时全部项为null
+        assertEquals(3, parse("{\"index\": 1, \"recommendedSpread\": 0.1, \"confidenceScore\": 0.9}").size());
+        assertTrue(parse("{\"index\": 1, \"recommendedSpread\": 0.1, \"confidenceScore\": 0.9}").stream()
+                .allMatch(response -> response == null));
+        assertTrue(parse("{\"recommendedSpread\": 0.1, \"keyFactors\": [\"交易量\", \"波动率\"]}").stream()
+                .allMatch(response -> response == null));
+        assertTrue(parse("无法给出建议").stream().allMatch(response -> response == null));
+        assertTrue(parse("[{\"index\": 1, \"recommendedSpread\": 0.1,").stream().allMatch(response -> response == null));
+    }
+
+    @Test
+    void testCompleteIndividuallyOnlyForMissingEntries() {
+        // 测试只对为null的项调用单个请求接口，已解析的项原样保留且顺序不变
+        LLMRecommendationResponse parsed = LLMRecommendationResponse.success(new BigDecimal("0.12"), "batch");
+        List<LLMRecommendationResponse> responses = new ArrayList<>();
+        responses.add(null);
+        responses.add(parsed);
+        responses.add(null);
+        List<String> called = new ArrayList<>();
+
+        List<LLMRecommendationResponse> completed = BatchResponseParser.completeIndividually(responses, requests,
+                request -> {
+                    called.add(request.getCustomerCode());
+                    return Mono.just(LLMRecommendationResponse.success(new BigDecimal("0.10"), request.getCustomerCode()));
+                }).block();
+
+        assertEquals(List.of("CUST_A", "CUST_C"), called);
+        assertEquals("CUST_A", completed.get(0).getReasoning());
+        assertSame(parsed, completed.get(1));
+        assertEquals("CUST_C", completed.get(2).getReasoning());
+    }
+
+    private List<LLMRecommendationResponse> parse(String content) {
+        return BatchResponseParser.parse(objectMapper, content, requests, "test-model");
+    }
+
+    private static LLMRecommendationRequest request(String customerCode) {
+        LLMRecommendationRequest request = new LLMRecommendationRequest();
+        request.setCustomerCode(customerCode);
+        request.setMinSpread(new BigDecimal("0.05"));
+        request.setMaxSpread(new BigDecimal("0.30"));
+        request.setDefaultSpread(new BigDecimal("0.10"));
+        return request;
+    }
+}
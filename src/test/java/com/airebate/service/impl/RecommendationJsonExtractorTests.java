@@ -0,0 +1,50 @@
+package com.airebate.service.impl;
+
+import com.airebate.dto.LLMRecommendationResponse;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecommendationJsonExtractorTests {
+
+    @Test
+    void testFencedObjectWithNestedFields() {
+        // 测试代码块中的对象：多层嵌套的未知字段被跳过，字符串形式的数值也能绑定
+        LLMRecommendationResponse response = RecommendationJsonExtractor.extract("""
+            分析如下 {注意：以下为JSON}
+            ```json
+            {
+                "recommendedSpread": "0.125",
+                "details": {"volatility": {"usd": [0.1, {"window": 30}]}},
+                "confidenceScore": 0.82,
+                "reasoning": "交易量稳定增长",
+                "riskAssessment": "中等风险",
+                "marketAnalysis": "区间震荡",
+                "keyFactors": ["交易量", "波动率"]
+            }
+            ```
+            """);
+
+        assertNotNull(response);
+        assertEquals(new BigDecimal("0.125"), response.getRecommendedSpread());
+        assertEquals(new BigDecimal("0.82"), response.getConfidenceScore());
+        assertEquals("交易量稳定增长", response.getReasoning());
+        assertEquals(List.of("交易量", "波动率"), response.getKeyFactors());
+        RecommendationJsonExtractor.requireFields(response);
+    }
+
+    @Test
+    void testIncompleteOrMissingObject() {
+        // 测试没有完整对象时返回null，缺少必需字段时校验失败
+        assertNull(RecommendationJsonExtractor.extract("建议spread为0.125左右"));
+        assertNull(RecommendationJsonExtractor.extract("{\"recommendedSpread\": 0.1, \"reasoning\": \"输出被截"));
+
+        LLMRecommendationResponse response = RecommendationJsonExtractor.extract(
+                "结果 {\"recommendedSpread\": 0.1, \"confidenceScore\": 0.6} 仅供参考");
+        assertNotNull(response);
+        assertThrows(IllegalArgumentException.class, () -> RecommendationJsonExtractor.requireFields(response));
+    }
+}
@@ -0,0 +1,32 @@
+package com.airebate.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecommendationOutputSchemaTests {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSchemaDerivedFromResponseFields() {
+        // 测试Schema的属性类型由LLMRecommendationResponse字段类型得出，且全部字段必需
+        Map<String, Object> schema = RecommendationOutputSchema.jsonSchema();
+        Map<String, Object> properties = (Map<String, Object>) schema.get("properties");
+
+        assertEquals("object", schema.get("type"));
+        assertEquals(false, schema.get("additionalProperties"));
+        assertEquals(Map.of("type", "number"), properties.get("recommendedSpread"));
+        assertEquals(Map.of("type", "number"), properties.get("confidenceScore"));
+        assertEquals(Map.of("type", "string"), properties.get("reasoning"));
+        assertEquals(Map.of("type", "array", "items", Map.of("type", "string")), properties.get("keyFactors"));
+        assertEquals(List.copyOf(properties.keySet()), schema.get("required"));
+
+        Map<String, Object> jsonSchema = (Map<String, Object>)
+                RecommendationOutputSchema.openAIResponseFormat().get("json_schema");
+        assertEquals(true, jsonSchema.get("strict"));
+        assertSame(schema, jsonSchema.get("schema"));
+    }
+}
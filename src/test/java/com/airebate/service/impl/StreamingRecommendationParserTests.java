@@ -0,0 +1,73 @@
+package com.airebate.service.impl;
+
+import com.airebate.dto.LLMRecommendationRequest;
+import com.airebate.dto.LLMRecommendationResponse;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingRecommendationParserTests {
+
+    @Test
+    void testNumbersSplitAcrossDeltas() {
+        // 测试数值被拆分到两段时，只在数值之后出现其他字符后才视为完整
+        StreamingRecommendationParser parser = new StreamingRecommendationParser();
+        assertFalse(parser.append("```json\n{\"recommendedSpread\": 0.1"));
+        assertNull(parser.getRecommendedSpread());
+        assertFalse(parser.append("25, \"confidence"));
+        assertEquals(new BigDecimal("0.125"), parser.getRecommendedSpread());
+        assertFalse(parser.append("Score\": 0.8"));
+        assertTrue(parser.append(", \"reasoning\": \"波动"));
+        assertEquals(new BigDecimal("0.8"), parser.getConfidenceScore());
+        assertFalse(parser.append("正常\"}"));
+    }
+
+    @Test
+    void testEarlyReturnBeforeNarrative() {
+        // 测试提前返回：数值字段出现后即返回，完整响应在输出结束后由completion发出
+        LLMRecommendationRequest request = new LLMRecommendationRequest();
+        request.setMinSpread(BigDecimal.valueOf(0.01));
+        request.setMaxSpread(BigDecimal.valueOf(0.5));
+        Sinks.Many<String> deltas = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicReference<String> parsedText = new AtomicReference<>();
+
+        deltas.tryEmitNext("{\"recommendedSpread\": 0.9, \"confidenceScore\": 0.7,");
+        deltas.tryEmitNext(" \"reasoning\": \"");
+        LLMRecommendationResponse early = StreamingRecommendationParser.collect(
+                deltas.asFlux(), request, "test-model", true, text -> {
+                    parsedText.set(text);
+                    return LLMRecommendationResponse.success(BigDecimal.valueOf(0.5), "完整理由");
+                })
+            .block();
+
+        assertEquals(BigDecimal.valueOf(0.5), early.getRecommendedSpread());
+        assertEquals(new BigDecimal("0.7"), early.getConfidenceScore());
+        assertNull(early.getReasoning());
+        assertNotNull(early.getCompletion());
+        assertNull(parsedText.get());
+
+        deltas.tryEmitNext("完整理由\"}");
+        deltas.tryEmitComplete();
+        assertEquals("完整理由", early.getCompletion().block().getReasoning());
+        assertTrue(parsedText.get().endsWith("完整理由\"}"));
+    }
+
+    @Test
+    void testNoEarlyFieldsReturnsFullResponse() {
+        // 测试输出中没有可提前解析的数值时返回完整解析的响应
+        LLMRecommendationRequest request = new LLMRecommendationRequest();
+        LLMRecommendationResponse response = StreamingRecommendationParser.collect(
+                Flux.just("无法", "解析"), request, "test-model", true,
+                text -> LLMRecommendationResponse.error(text))
+            .block();
+
+        assertFalse(response.isSuccess());
+        assertEquals("无法解析", response.getErrorMessage());
+        assertNull(response.getCompletion());
+    }
+}